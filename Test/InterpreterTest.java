@@ -1,18 +1,78 @@
 package Tests;
 
+import Lexor.BatchRunner;
+import Lexor.CaseRunner;
+import Lexor.Coordinator;
+import Lexor.Daemon;
+import Lexor.LexorEngine;
+import Lexor.ScriptScheduler;
+import Lexor.cache.AstCache;
+import Lexor.cache.AstCodec;
+import Lexor.cache.Fingerprint;
+import Lexor.cache.ProgramCache;
+import Lexor.cache.ResultCache;
 import Lexor.err.ErrorManager;
+import Lexor.err.ErrorType;
+import Lexor.interpreter.FlatInterpreter;
 import Lexor.interpreter.Interpreter;
+import Lexor.interpreter.Limits;
+import Lexor.io.ChannelSink;
+import Lexor.io.InputSource;
+import Lexor.io.MemorySink;
+import Lexor.io.OutputSink;
+import Lexor.io.StreamSink;
 import Lexor.lexer.Lexer;
+import Lexor.lexer.Position;
 import Lexor.lexer.Token;
+import Lexor.parser.IncrementalParser;
 import Lexor.parser.Parser;
+import Lexor.parser.ast.AstInterner;
+import Lexor.parser.ast.Expr;
+import Lexor.parser.ast.FlatAst;
+import Lexor.parser.ast.InternedProgram;
 import Lexor.parser.ast.Stmt;
+import Lexor.script.LexorScriptEngineFactory;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
 import java.io.PrintStream;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptException;
+import javax.script.SimpleScriptContext;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -624,6 +684,23 @@ class InterpreterTest {
         assertEquals("TRUE", outContent.toString());
     }
 
+    @Test
+    public void testOperatorPrecedenceAndAssociativity() {
+        String code = """
+                SCRIPT AREA
+                START SCRIPT
+                DECLARE INT a, b
+                a = b = 100 - 20 - 5 * 2 / 5 % 7
+                PRINT: a & " " & (b < 70 AND NOT (b == 78) OR b < 0) & " " & -2 * -3
+                END SCRIPT
+                """;
+
+        runScript(code);
+
+        assertFalse(errorManager.hadError());
+        assertEquals("1 TRUE 6", outContent.toString());
+    }
+
     // ==========================================
     // 4. PRINT STATEMENT ADVANCED
     // ==========================================
@@ -906,4 +983,1891 @@ class InterpreterTest {
             System.setIn(originalIn);
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testParserReportsEveryErrorInOnePass() {
+        String code = """
+                SCRIPT AREA
+                START SCRIPT
+                DECLARE INT x = 5
+                PRINT: x +
+                x = 5 y
+                IF (x >)
+                START IF
+                    PRINT: "skipped"
+                END IF
+                ELSE
+                START IF
+                    PRINT: "also skipped"
+                END IF
+                REPEAT WHEN (x > 0)
+                START REPEAT
+                    x = x - 1
+                    PRINT: (x
+                END REPEAT
+                DECLARE INT late
+                END SCRIPT
+                """;
+
+        List<Stmt> statements = new Parser(new Lexer(code, errorManager).scanTokens(), errorManager).parse();
+
+        assertTrue(errorManager.hadError());
+        assertEquals(5, errorManager.getErrors().size(), "Each broken statement should be reported exactly once.");
+        assertEquals(2, statements.size(), "The partial AST keeps the statements that parsed.");
+    }
+
+    // ==========================================
+    // 8. INCREMENTAL PARSING
+    // ==========================================
+
+    @Test
+    public void testIncrementalEditReusesUnchangedStatements() {
+        String code = """
+                SCRIPT AREA
+                START SCRIPT
+                DECLARE INT x = 1
+                PRINT: x
+                x = x + 1
+                PRINT: "done"
+                END SCRIPT
+                """;
+        IncrementalParser document = new IncrementalParser(code, errorManager);
+
+        List<Stmt> statements = document.edit(code.indexOf("x + 1") + 4, 1, "41");
+
+        assertFalse(errorManager.hadError());
+        assertEquals(3, document.reusedStatements(), "Only the edited statement should be re-parsed.");
+        assertEquals(new Lexer(document.source(), new ErrorManager()).scanTokens(), document.tokens());
+        assertTrue(document.relexedTokens() < document.tokens().size() / 2);
+
+        new Interpreter(errorManager).interpret(statements);
+        assertEquals("1done", outContent.toString());
+    }
+
+    @Test
+    public void testIncrementalEditShiftsTheLinesAfterIt() {
+        String code = """
+                SCRIPT AREA
+                START SCRIPT
+                DECLARE INT x = 1, zero = 0
+                PRINT: x
+                x = x + 1
+                PRINT: x / zero
+                END SCRIPT
+                """;
+        IncrementalParser document = new IncrementalParser(code, errorManager);
+        List<Stmt> original = document.statements();
+        int assignment = code.indexOf("x = x + 1");
+
+        // A line inserted in the middle: the statements above it are kept, the ones below move down.
+        List<Stmt> inserted = document.edit(assignment, 0, "PRINT: x & $\n");
+        assertFalse(errorManager.hadError());
+        assertEquals(5, inserted.size());
+        assertEquals(4, document.reusedStatements(), "The statements below the new line should be reused too.");
+        for (int i = 0; i < 2; i++) assertSame(original.get(i), inserted.get(i));
+        assertEquals(new Lexer(document.source(), new ErrorManager()).scanTokens(), document.tokens());
+        assertEquals(7, divisionErrorLine(inserted));
+
+        // Deleted again, and then two lines at once: the lines below move back up.
+        List<Stmt> deleted = document.edit(assignment, "PRINT: x & $\n".length(), "");
+        assertEquals(4, deleted.size());
+        assertEquals(new Lexer(document.source(), new ErrorManager()).scanTokens(), document.tokens());
+        assertEquals(6, divisionErrorLine(deleted));
+
+        List<Stmt> shortened = document.edit(code.indexOf("PRINT: x\n"), "PRINT: x\nx = x + 1\n".length(), "");
+        assertEquals(2, shortened.size());
+        assertSame(original.getFirst(), shortened.getFirst());
+        assertEquals(new Lexer(document.source(), new ErrorManager()).scanTokens(), document.tokens());
+        assertEquals(4, divisionErrorLine(shortened));
+    }
+
+    private static int divisionErrorLine(List<Stmt> statements) {
+        ErrorManager errors = new ErrorManager(null);
+        new Interpreter(errors, new InputSource(InputStream.nullInputStream()), new MemorySink()).interpret(statements);
+        assertTrue(errors.hadRuntimeError());
+        return errors.getErrors().getFirst().line();
+    }
+
+    @Test
+    public void testIncrementalEditReportsAndRecoversFromErrors() {
+        String code = """
+                SCRIPT AREA
+                START SCRIPT
+                DECLARE INT x = 1
+                PRINT: x
+                END SCRIPT
+                """;
+        IncrementalParser document = new IncrementalParser(code, errorManager);
+        int offset = code.indexOf("PRINT");
+
+        List<Stmt> partial = document.edit(offset, 0, "(\n");
+        assertTrue(errorManager.hadError());
+        assertEquals(4, errorManager.getErrors().getFirst().line());
+        assertEquals(2, partial.size(), "The statements around the broken line should still parse.");
+        assertTrue(partial.get(1) instanceof Stmt.Print);
+
+        assertNotNull(document.edit(offset, 2, ""));
+        assertFalse(errorManager.hadError());
+        assertEquals(2, document.statements().size());
+    }
+
+    @Test
+    public void testIncrementalEditsMatchAFullParse() {
+        String code = """
+                SCRIPT AREA
+                START SCRIPT
+                DECLARE INT x = 1, y = 2
+                PRINT: x
+                IF (x < y)
+                START IF
+                    PRINT: "less"
+                END IF
+                y = x * 3
+                PRINT: x & y
+                END SCRIPT
+                """;
+        IncrementalParser document = new IncrementalParser(code, errorManager);
+        assertMatchesFullParse(document);
+
+        String[][] edits = {
+                // {text to find, text to replace it with}
+                {"PRINT: x\n", "PRINT: x\nPRINT: y\n\n"},
+                {"y = x * 3", "y = x * (3"},
+                {"PRINT: \"less\"", "PRINT: \"less"},
+                {"PRINT: y\n\n", ""},
+                {"y = x * (3", "y = x * 3"},
+                {"PRINT: \"less", "PRINT: \"less\" # 'ab'"},
+                {"DECLARE INT x = 1, y = 2\n", "DECLARE INT x = 1, y = 2\nDECLARE CHAR c = 'c'\n"},
+                {" # 'ab'", ""},
+                {"PRINT: x & y", "PRINT: x & y & c"},
+        };
+        for (String[] edit : edits) {
+            int offset = document.source().indexOf(edit[0]);
+            assertTrue(offset >= 0, edit[0]);
+            document.edit(offset, edit[0].length(), edit[1]);
+            assertMatchesFullParse(document);
+        }
+        assertFalse(errorManager.hadError());
+        assertTrue(document.reusedStatements() > 0);
+    }
+
+    private void assertMatchesFullParse(IncrementalParser document) {
+        ErrorManager errors = new ErrorManager(null);
+        List<Token> tokens = new Lexer(document.source(), errors).scanTokens();
+        List<Stmt> statements = new Parser(tokens, errors).parse();
+        assertEquals(tokens, document.tokens());
+        assertArrayEquals(AstCodec.encode(statements), AstCodec.encode(document.statements()), document.source());
+        assertEquals(errors.getErrors(), errorManager.getErrors(), document.source());
+    }
+
+    // ==========================================
+    // 9. LAZY BLOCK PARSING
+    // ==========================================
+
+    private void runScriptLazily(String sourceCode) {
+        List<Token> tokens = new Lexer(sourceCode, errorManager).scanTokens();
+        List<Stmt> statements = new Parser(tokens, errorManager, true).parse();
+        if (errorManager.hadError() || statements == null) return;
+        new Interpreter(errorManager).interpret(statements);
+    }
+
+    @Test
+    public void testLazyParsingSkipsUntakenBranch() {
+        String code = """
+                SCRIPT AREA
+                START SCRIPT
+                DECLARE INT x = 5
+                IF (x > 10)
+                START IF
+                    PRINT: (x +
+                END IF
+                ELSE
+                START IF
+                    FOR (x = 0, x < 3, x = x + 1)
+                    START FOR
+                        PRINT: x
+                    END FOR
+                END IF
+                END SCRIPT
+                """;
+
+        runScriptLazily(code);
+
+        assertFalse(errorManager.hadError(), "The broken branch is never entered.");
+        assertEquals("012", outContent.toString());
+    }
+
+    @Test
+    public void testLazyParsingReportsErrorWhenBranchIsEntered() {
+        String code = """
+                SCRIPT AREA
+                START SCRIPT
+                DECLARE INT x = 5
+                PRINT: x
+                IF (x > 1)
+                START IF
+                    PRINT: (x +
+                END IF
+                END SCRIPT
+                """;
+
+        runScriptLazily(code);
+
+        assertTrue(errorManager.hadError());
+        assertEquals("5", outContent.toString());
+    }
+
+    @Test
+    public void testLazyParsingReportsErrorToTheRunThatEntersTheBranch() {
+        String code = """
+                SCRIPT AREA
+                START SCRIPT
+                DECLARE INT x = 5
+                IF (x > 1)
+                START IF
+                    PRINT: (x +
+                END IF
+                END SCRIPT
+                """;
+        ErrorManager parsing = new ErrorManager(null);
+        List<Stmt> statements = new Parser(new Lexer(code, parsing).scanTokens(), parsing, true).parse();
+        assertFalse(parsing.hadError());
+
+        for (int run = 0; run < 2; run++) {
+            ErrorManager errors = new ErrorManager(null);
+            new Interpreter(errors, new InputSource(InputStream.nullInputStream()), new MemorySink()).interpret(statements);
+            assertEquals(1, errors.getErrors().size(), "Every run should report the error as its own.");
+            assertEquals(ErrorType.SYNTAX, errors.getErrors().getFirst().errorType());
+            assertEquals(6, errors.getErrors().getFirst().line());
+        }
+        assertFalse(parsing.hadError());
+
+        try (LexorEngine engine = new LexorEngine(true, null)) {
+            LexorEngine.Result result = engine.run(code, InputStream.nullInputStream(), new ByteArrayOutputStream());
+            assertEquals(65, result.exitCode());
+            assertEquals(1, result.errors().size());
+        }
+    }
+
+    @Test
+    public void testLazyParsingStillChecksBlockBalance() {
+        String code = """
+                SCRIPT AREA
+                START SCRIPT
+                DECLARE INT x = 5
+                IF (x > 10)
+                START IF
+                    REPEAT WHEN (x > 0)
+                    START REPEAT
+                        x = x - 1
+                    END IF
+                END IF
+                END SCRIPT
+                """;
+
+        runScriptLazily(code);
+
+        assertTrue(errorManager.hadError(), "Mismatched END inside a skipped body must still be reported.");
+        assertEquals("", outContent.toString());
+    }
+
+    // ==========================================
+    // 10. AST CACHE
+    // ==========================================
+
+    @Test
+    public void testAstCodecRoundTripRunsTheSame() {
+        String code = """
+                SCRIPT AREA
+                START SCRIPT
+                DECLARE INT x = -3, y
+                DECLARE FLOAT f = 2.5
+                DECLARE CHAR c = 'z'
+                DECLARE BOOL b = "TRUE"
+                FOR (y = 0, y < 2, y = y + 1)
+                START FOR
+                    IF (b AND NOT (y == 1))
+                    START IF
+                        PRINT: x * f & c & [#] & $
+                    END IF
+                    ELSE
+                    START IF
+                        PRINT: "done"
+                    END IF
+                END FOR
+                END SCRIPT
+                """;
+        List<Stmt> parsed = new Parser(new Lexer(code, errorManager).scanTokens(), errorManager).parse();
+
+        byte[] encoded = AstCodec.encode(parsed);
+        List<Stmt> decoded = AstCodec.decode(ByteBuffer.wrap(encoded));
+        new Interpreter(errorManager).interpret(decoded);
+
+        assertFalse(errorManager.hadError());
+        assertEquals("-7.5z#\ndone", outContent.toString().replace("\r\n", "\n"));
+    }
+
+    @Test
+    public void testAstCacheIsKeyedBySource(@TempDir Path directory) throws IOException {
+        String code = """
+                SCRIPT AREA
+                START SCRIPT
+                PRINT: "cached"
+                END SCRIPT
+                """;
+        AstCache cache = new AstCache(directory);
+        assertNull(cache.load(code));
+
+        cache.store(code, new Parser(new Lexer(code, errorManager).scanTokens(), errorManager).parse());
+
+        List<Stmt> loaded = cache.load(code);
+        assertNotNull(loaded);
+        assertNull(cache.load(code.replace("cached", "edited")), "A changed source must miss the cache.");
+        new Interpreter(errorManager).interpret(loaded);
+        assertEquals("cached", outContent.toString());
+    }
+
+    // ==========================================
+    // 11. FLAT AST
+    // ==========================================
+
+    private static final String FLAT_PROGRAM = """
+            SCRIPT AREA
+            START SCRIPT
+            DECLARE INT i, total = 0
+            DECLARE BOOL seen = "FALSE"
+            FOR (i = 1, i <= 5, i = i + 1)
+            START FOR
+                IF (i % 2 == 0 OR seen)
+                START IF
+                    total = total + i * 10
+                END IF
+                ELSE
+                START IF
+                    total = total - i
+                    seen = NOT seen
+                END IF
+            END FOR
+            PRINT: total & " " & seen & " " & 7 / 2.0
+            END SCRIPT
+            """;
+
+    @Test
+    public void testFlatInterpreterMatchesTreeInterpreter() {
+        List<Stmt> statements = new Parser(new Lexer(FLAT_PROGRAM, errorManager).scanTokens(), errorManager).parse();
+
+        new Interpreter(errorManager).interpret(statements);
+        String expected = outContent.toString();
+        outContent.reset();
+        new FlatInterpreter(errorManager).interpret(FlatAst.from(statements));
+
+        assertFalse(errorManager.hadError());
+        assertEquals("139 TRUE 3.5", expected);
+        assertEquals(expected, outContent.toString());
+    }
+
+    @Test
+    public void testFlatAstConvertsBackToObjectAst() {
+        List<Stmt> statements = new Parser(new Lexer(FLAT_PROGRAM, errorManager).scanTokens(), errorManager).parse();
+
+        FlatAst flat = FlatAst.from(statements);
+        assertEquals(flat.size(), FlatAst.from(flat.toStatements()).size());
+
+        new Interpreter(errorManager).interpret(flat.toStatements());
+        assertEquals("139 TRUE 3.5", outContent.toString());
+    }
+
+    @Test
+    public void testFlatInterpreterReportsErrorPosition() {
+        String code = """
+                SCRIPT AREA
+                START SCRIPT
+                DECLARE INT x = 1
+                x = x + "one"
+                END SCRIPT
+                """;
+        List<Stmt> statements = new Parser(new Lexer(code, errorManager).scanTokens(), errorManager).parse();
+
+        new FlatInterpreter(errorManager).interpret(FlatAst.from(statements));
+
+        assertTrue(errorManager.hadRuntimeError());
+        assertEquals(4, errorManager.getErrors().getFirst().line());
+    }
+
+    // ==========================================
+    // 12. SHARED (INTERNED) ASTs
+    // ==========================================
+
+    @Test
+    public void testInternerSharesIdenticalExpressionsAcrossPrograms() {
+        String first = """
+                SCRIPT AREA
+                START SCRIPT
+                DECLARE INT x = 2
+                PRINT: x * (x + 1) & $
+                END SCRIPT
+                """;
+        String second = """
+                SCRIPT AREA
+                START SCRIPT
+                %% same expression, different line and column
+                DECLARE INT x = 2
+                    PRINT:   x * (x + 1) & $
+                END SCRIPT
+                """;
+        AstInterner interner = new AstInterner();
+
+        InternedProgram a = interner.intern(new Parser(new Lexer(first, errorManager).scanTokens(), errorManager).parse());
+        int size = interner.size();
+        InternedProgram b = interner.intern(new Parser(new Lexer(second, errorManager).scanTokens(), errorManager).parse());
+
+        assertEquals(size, interner.size(), "The second program should not add any expression.");
+        assertSame(((Stmt.Print) a.statements().get(1)).expression, ((Stmt.Print) b.statements().get(1)).expression);
+
+        new Interpreter(errorManager).interpret(b);
+        assertEquals("6\n", outContent.toString());
+    }
+
+    @Test
+    public void testInternedProgramReportsOriginalErrorPosition() {
+        String code = """
+                SCRIPT AREA
+                START SCRIPT
+                DECLARE INT x = 1
+                PRINT: x
+                PRINT: x + y
+                END SCRIPT
+                """;
+        InternedProgram program = new AstInterner().intern(
+                new Parser(new Lexer(code, errorManager).scanTokens(), errorManager).parse());
+
+        new Interpreter(errorManager).interpret(program);
+
+        assertTrue(errorManager.hadRuntimeError());
+        assertEquals(5, errorManager.getErrors().getFirst().line());
+        assertEquals(12, errorManager.getErrors().getFirst().column());
+    }
+
+    @Test
+    public void testInternedProgramLocatesRepeatedOperators() {
+        // Each fails at a later one of several equal operators or names; the interned run must
+        // report the same place as the plain one.
+        String[] lines = {"PRINT: 1/1 & 1/0", "PRINT: 2 + 2 & 1 + z", "PRINT: (1 > 0) & -x & -1", "PRINT: x & x + 1 & y"};
+        for (String line : lines) {
+            String code = "SCRIPT AREA\nSTART SCRIPT\nDECLARE BOOL x = \"TRUE\"\n" + line + "\nEND SCRIPT\n";
+            for (Interpreter.Dispatch dispatch : Interpreter.Dispatch.values()) {
+                ErrorManager plain = new ErrorManager(null);
+                new Interpreter(plain, dispatch).interpret(new Parser(new Lexer(code, plain).scanTokens(), plain).parse());
+                ErrorManager interned = new ErrorManager(null);
+                new Interpreter(interned, dispatch).interpret(
+                        new AstInterner().intern(new Parser(new Lexer(code, interned).scanTokens(), interned).parse()));
+
+                assertTrue(plain.hadRuntimeError(), line);
+                assertEquals(plain.getErrors(), interned.getErrors(), line + " " + dispatch);
+            }
+        }
+        ErrorManager division = new ErrorManager(null);
+        new Interpreter(division).interpret(new AstInterner().intern(new Parser(new Lexer(
+                "SCRIPT AREA\nSTART SCRIPT\nPRINT: 1/1 & 1/0\nEND SCRIPT\n", division).scanTokens(), division).parse()));
+        assertEquals(3, division.getErrors().getFirst().line());
+        assertEquals(15, division.getErrors().getFirst().column());
+    }
+
+    // ==========================================
+    // 13. PACKED POSITIONS
+    // ==========================================
+
+    @Test
+    public void testExpressionsShareOneStringPerName() {
+        String code = """
+                SCRIPT AREA
+                START SCRIPT
+                DECLARE INT count = 1
+                count = count + count
+                END SCRIPT
+                """;
+        List<Stmt> statements = new Parser(new Lexer(code, errorManager).scanTokens(), errorManager).parse();
+
+        Expr.Assign assign = (Expr.Assign) ((Stmt.Expression) statements.get(1)).expression;
+        Expr.Binary sum = (Expr.Binary) assign.value;
+        assertSame(assign.name, ((Expr.Variable) sum.left).name);
+        assertSame(assign.name, ((Expr.Variable) sum.right).name);
+        assertEquals(4, Position.line(sum.position));
+        assertEquals(15, Position.column(sum.position));
+    }
+
+    @Test
+    public void testRuntimeErrorAtOperatorUsesPackedPosition() {
+        String code = """
+                SCRIPT AREA
+                START SCRIPT
+                DECLARE INT x = 4
+                PRINT: x / 0
+                END SCRIPT
+                """;
+        runScript(code);
+
+        assertTrue(errorManager.hadRuntimeError());
+        assertEquals(4, errorManager.getErrors().getFirst().line());
+        assertEquals(10, errorManager.getErrors().getFirst().column());
+        assertTrue(errContent.toString().contains("at '/'"));
+    }
+
+    // ==========================================
+    // 14. SWITCH DISPATCH
+    // ==========================================
+
+    @Test
+    public void testSwitchDispatchMatchesVisitorDispatch() {
+        String code = """
+                SCRIPT AREA
+                START SCRIPT
+                DECLARE INT i = 0, sum = 0
+                DECLARE BOOL done = "FALSE"
+                REPEAT WHEN (NOT done)
+                START REPEAT
+                    sum = sum + i * (i % 3)
+                    i = i + 1
+                    IF (i >= 10 OR sum > 100)
+                    START IF
+                        done = "TRUE"
+                    END IF
+                END REPEAT
+                PRINT: sum & $ & i & $ & -sum
+                END SCRIPT
+                """;
+        List<Stmt> statements = new Parser(new Lexer(code, errorManager).scanTokens(), errorManager).parse();
+
+        new Interpreter(errorManager, Interpreter.Dispatch.VISITOR).interpret(statements);
+        String visitor = outContent.toString();
+        outContent.reset();
+        new Interpreter(errorManager, Interpreter.Dispatch.SWITCH).interpret(statements);
+
+        assertFalse(errorManager.hadError());
+        assertEquals("42\n10\n-42", visitor.replace("\r\n", "\n"));
+        assertEquals(visitor, outContent.toString());
+    }
+
+    // ==========================================
+    // 15. DEEP NESTING
+    // ==========================================
+
+    private static String deeplyNestedProgram() {
+        StringBuilder code = new StringBuilder("SCRIPT AREA\nSTART SCRIPT\nDECLARE INT x = 0\nPRINT: ");
+        code.append("(1 + ".repeat(50000)).append('0').append(")".repeat(50000)).append('\n');
+        for (int i = 0; i < 3000; i++) code.append("IF (x == ").append(i).append(")\nSTART IF\nx = x + 1\n");
+        code.append("END IF\n".repeat(3000));
+        code.append("IF (x == 0)\nSTART IF\nEND IF\n");
+        for (int i = 1; i < 10000; i++) code.append("ELSE IF (x == ").append(-i).append(")\nSTART IF\nEND IF\n");
+        code.append("ELSE\nSTART IF\nPRINT: \" \" & x\nEND IF\n");
+        code.append("PRINT: \" \" & ").append("- ".repeat(20001)).append("1\nEND SCRIPT\n");
+        return code.toString();
+    }
+
+    @Test
+    public void testDeeplyNestedProgramDoesNotOverflowTheStack() {
+        List<Stmt> statements = new Parser(new Lexer(deeplyNestedProgram(), errorManager).scanTokens(), errorManager).parse();
+        assertFalse(errorManager.hadError());
+
+        new Interpreter(errorManager).interpret(statements);
+        String recursive = outContent.toString();
+        outContent.reset();
+        new Interpreter(errorManager, Interpreter.Dispatch.STACK).interpret(statements);
+
+        assertFalse(errorManager.hadError());
+        assertEquals("50000 3000 -1", recursive);
+        assertEquals(recursive, outContent.toString());
+    }
+
+    // Runs the task on a thread with a small stack, so that a walker that still recurses once
+    // per nesting level overflows whatever the default stack size is.
+    private static <T> T onSmallStack(Callable<T> task) throws Exception {
+        FutureTask<T> future = new FutureTask<>(task);
+        new Thread(null, future, "small-stack", 512 * 1024).start();
+        return future.get();
+    }
+
+    @Test
+    public void testDeeplyNestedProgramSurvivesTheAstWalkers(@TempDir Path directory) throws Exception {
+        String code = deeplyNestedProgram();
+        List<Stmt> statements = new Parser(new Lexer(code, errorManager).scanTokens(), errorManager).parse();
+        AstCache cache = new AstCache(directory);
+
+        List<Stmt> loaded = onSmallStack(() -> {
+            cache.store(code, statements);
+            return cache.load(code);
+        });
+        FlatAst flat = onSmallStack(() -> FlatAst.from(statements));
+        List<Stmt> unflattened = onSmallStack(flat::toStatements);
+        InternedProgram interned = onSmallStack(() -> new AstInterner().intern(statements));
+        new Interpreter(errorManager).interpret(loaded);
+        new Interpreter(errorManager).interpret(unflattened);
+        new Interpreter(errorManager).interpret(interned);
+
+        assertFalse(errorManager.hadError());
+        assertEquals("50000 3000 -1".repeat(3), outContent.toString());
+        assertEquals(flat.size(), FlatAst.from(unflattened).size());
+    }
+
+    @Test
+    public void testCachedEngineRunsDeeplyNestedProgram(@TempDir Path directory) throws Exception {
+        String code = deeplyNestedProgram();
+        LexorEngine engine = new LexorEngine(false, new AstCache(directory));
+        for (int run = 0; run < 2; run++) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            LexorEngine.Result result = onSmallStack(() -> engine.run(code, InputStream.nullInputStream(), out));
+            assertEquals(0, result.exitCode());
+            assertEquals("50000 3000 -1", out.toString());
+        }
+    }
+
+    @Test
+    public void testStackDispatchRestoresScopeAfterRuntimeError() {
+        String code = """
+                SCRIPT AREA
+                START SCRIPT
+                DECLARE INT x = 1
+                IF (x == 1)
+                START IF
+                    REPEAT WHEN (x < 5)
+                    START REPEAT
+                        x = x + 1
+                        PRINT: x / (x - 3)
+                    END REPEAT
+                END IF
+                END SCRIPT
+                """;
+        List<Stmt> statements = new Parser(new Lexer(code, errorManager).scanTokens(), errorManager).parse();
+        Interpreter interpreter = new Interpreter(errorManager, Interpreter.Dispatch.STACK);
+
+        interpreter.interpret(statements);
+        assertTrue(errorManager.hadRuntimeError());
+        assertEquals(9, errorManager.getErrors().getFirst().line());
+        assertEquals("-2", outContent.toString());
+
+        outContent.reset();
+        interpreter.interpret(new Parser(new Lexer("SCRIPT AREA\nSTART SCRIPT\nPRINT: x\nEND SCRIPT\n", errorManager).scanTokens(), errorManager).parse());
+        assertEquals("3", outContent.toString());
+    }
+
+    // ==========================================
+    // 16. LEXOR ENGINE
+    // ==========================================
+
+    @Test
+    public void testEngineRunsScriptsConcurrentlyWithSeparateState() throws Exception {
+        List<CompletableFuture<LexorEngine.Result>> results = new ArrayList<>();
+        List<ByteArrayOutputStream> outputs = new ArrayList<>();
+        try (LexorEngine engine = new LexorEngine()) {
+            for (int i = 0; i < 2000; i++) {
+                String code = "SCRIPT AREA\nSTART SCRIPT\nDECLARE INT x = " + i + "\n"
+                        + (i % 100 == 0 ? "PRINT: y\n" : "PRINT: x * 2\n") + "END SCRIPT\n";
+                ByteArrayOutputStream output = new ByteArrayOutputStream();
+                outputs.add(output);
+                results.add(engine.submit(code, InputStream.nullInputStream(), output));
+            }
+            for (int i = 0; i < results.size(); i++) {
+                LexorEngine.Result result = results.get(i).get();
+                if (i % 100 == 0) {
+                    assertTrue(result.hadRuntimeError());
+                    assertEquals(1, result.errors().size());
+                    assertEquals("", outputs.get(i).toString());
+                } else {
+                    assertEquals(0, result.exitCode());
+                    assertEquals(String.valueOf(i * 2), outputs.get(i).toString());
+                }
+            }
+        }
+        assertEquals("", outContent.toString());
+        assertEquals("", errContent.toString());
+    }
+
+    @Test
+    public void testEngineScanBlocksOnlyItsOwnVirtualThread() throws Exception {
+        CountDownLatch typed = new CountDownLatch(1);
+        InputStream keyboard = new InputStream() {
+            private final byte[] line = "41\n".getBytes();
+            private int next = 0;
+
+            @Override
+            public int read() throws IOException {
+                try {
+                    typed.await();
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                }
+                return next < line.length ? line[next++] : -1;
+            }
+        };
+        String scanning = """
+                SCRIPT AREA
+                START SCRIPT
+                DECLARE INT n
+                SCAN: n
+                PRINT: n + 1
+                END SCRIPT
+                """;
+        String printing = "SCRIPT AREA\nSTART SCRIPT\nPRINT: \"done\"\nEND SCRIPT\n";
+
+        try (LexorEngine engine = new LexorEngine()) {
+            ByteArrayOutputStream scanned = new ByteArrayOutputStream();
+            var waiting = engine.submit(scanning, keyboard, scanned);
+            for (int i = 0; i < 200; i++) {
+                ByteArrayOutputStream output = new ByteArrayOutputStream();
+                assertEquals(0, engine.submit(printing, InputStream.nullInputStream(), output)
+                        .get(10, TimeUnit.SECONDS).exitCode());
+                assertEquals("done", output.toString());
+            }
+            assertFalse(waiting.isDone());
+
+            typed.countDown();
+            assertEquals(0, waiting.get(10, TimeUnit.SECONDS).exitCode());
+            assertEquals("42", scanned.toString());
+        }
+    }
+
+    // ==========================================
+    // 17. OUTPUT SINKS
+    // ==========================================
+
+    @Test
+    public void testSinkFormatsValuesLikeStringify() {
+        String source = """
+                SCRIPT AREA
+                START SCRIPT
+                DECLARE INT i = -2147483647
+                DECLARE FLOAT x = 0.1, y = 0.2, big = 12345678.0, half = -2.5
+                DECLARE CHAR c = 'z'
+                DECLARE BOOL b = "TRUE"
+                PRINT: (i - 1) & $ & (x + y) & $ & big & $ & half & $ & (x * 10) & $ & c & $ & b & $ & (NOT b)
+                PRINT: $
+                PRINT: i - 1
+                PRINT: $
+                PRINT: x + y
+                PRINT: $
+                PRINT: big
+                PRINT: $
+                PRINT: half
+                PRINT: $
+                PRINT: x * 10
+                PRINT: $
+                PRINT: c
+                PRINT: $
+                PRINT: b
+                PRINT: $
+                PRINT: NOT b
+                END SCRIPT
+                """;
+        MemorySink sink = new MemorySink(32);
+        LexorEngine.Result result = new LexorEngine().run(source, InputStream.nullInputStream(), sink, null);
+
+        assertEquals(0, result.exitCode());
+        // The concatenation goes through stringify, the separate PRINTs write straight to the sink.
+        String values = "-2147483648\n0.30000000000000004\n1.2345678E7\n-2.5\n1\nz\nTRUE\nFALSE";
+        assertEquals(values + "\n" + values, sink.toString());
+    }
+
+    @Test
+    public void testSinkFlushPolicies() {
+        ByteArrayOutputStream target = new ByteArrayOutputStream();
+        OutputSink exit = new StreamSink(target, 64, OutputSink.FlushPolicy.ON_EXIT);
+        exit.write("abc");
+        exit.write(12);
+        assertEquals("", target.toString());
+        exit.flush();
+        assertEquals("abc12", target.toString());
+
+        target.reset();
+        OutputSink every = new StreamSink(target, 64, OutputSink.FlushPolicy.everyBytes(4));
+        every.write("ab");
+        assertEquals("", target.toString());
+        every.write(1.5);
+        assertEquals("ab1.5", target.toString());
+
+        target.reset();
+        OutputSink small = new StreamSink(target, 32, OutputSink.FlushPolicy.ON_EXIT);
+        String text = "x".repeat(100);
+        small.write(text);
+        small.flush();
+        assertEquals(text, target.toString());
+    }
+
+    @Test
+    public void testSinkFlushesPromptBeforeScan() {
+        ByteArrayOutputStream target = new ByteArrayOutputStream();
+        InputStream keyboard = new InputStream() {
+            private final byte[] line = "6\n".getBytes();
+            private int next = 0;
+
+            @Override
+            public int read() {
+                // The prompt must be on screen by the time the program waits for input.
+                assertEquals("Number? ", target.toString());
+                return next < line.length ? line[next++] : -1;
+            }
+        };
+        String source = """
+                SCRIPT AREA
+                START SCRIPT
+                DECLARE INT n
+                PRINT: "Number? "
+                SCAN: n
+                PRINT: n * 7
+                END SCRIPT
+                """;
+        OutputSink sink = new StreamSink(target, 1024, OutputSink.FlushPolicy.ON_SCAN);
+
+        assertEquals(0, new LexorEngine().run(source, keyboard, sink, null).exitCode());
+        assertEquals("Number? 42", target.toString());
+    }
+
+    @Test
+    public void testChannelSinkWritesFile() throws Exception {
+        Path file = Files.createTempFile("lexor", ".out");
+        try {
+            String source = """
+                    SCRIPT AREA
+                    START SCRIPT
+                    DECLARE INT i = 0
+                    REPEAT WHEN (i < 3000)
+                    START REPEAT
+                        PRINT: i & "é" & $
+                        i = i + 1
+                    END REPEAT
+                    END SCRIPT
+                    """;
+            try (ChannelSink sink = ChannelSink.open(file)) {
+                assertEquals(0, new LexorEngine().run(source, InputStream.nullInputStream(), sink, null).exitCode());
+            }
+            StringBuilder expected = new StringBuilder();
+            for (int i = 0; i < 3000; i++) expected.append(i).append("é\n");
+            assertEquals(expected.toString(), Files.readString(file));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    // ==========================================
+    // 18. BUFFERED INPUT
+    // ==========================================
+
+    @Test
+    public void testScanParsesFieldsForDeclaredTypes() {
+        String source = """
+                SCRIPT AREA
+                START SCRIPT
+                DECLARE INT n
+                DECLARE FLOAT f, g
+                DECLARE CHAR c, d
+                DECLARE BOOL b
+                DECLARE STRING s, t
+                SCAN: n, f, g, c, d, b, s, t
+                PRINT: n & $ & f & $ & g & $ & c & d & $ & b & $ & s & $ & t
+                END SCRIPT
+                """;
+        byte[] line = "-12, 2.25 7 'x' y \"FALSE\" \"a, b[n]c\" word\n".getBytes();
+        MemorySink sink = new MemorySink();
+        LexorEngine.Result result = new LexorEngine().run(source, new ByteArrayInputStream(line), sink, null);
+
+        assertEquals(0, result.exitCode(), result.errors().toString());
+        assertEquals("-12\n2.25\n7\nxy\nFALSE\na, b\nc\nword", sink.toString());
+    }
+
+    @Test
+    public void testScanReadsManyLinesFromOneBuffer() {
+        String source = """
+                SCRIPT AREA
+                START SCRIPT
+                DECLARE INT i = 0, n, sum = 0
+                REPEAT WHEN (i < 5000)
+                START REPEAT
+                    SCAN: n
+                    sum = sum + n
+                    i = i + 1
+                END REPEAT
+                PRINT: sum
+                END SCRIPT
+                """;
+        StringBuilder input = new StringBuilder();
+        int expected = 0;
+        for (int i = 0; i < 5000; i++) {
+            int value = i % 2 == 0 ? i : -i / 2;
+            expected += value;
+            input.append(value).append(i % 3 == 0 ? "\r\n" : "\n");
+        }
+        MemorySink sink = new MemorySink();
+        InputStream in = new ByteArrayInputStream(input.toString().getBytes());
+        new Interpreter(errorManager, new InputSource(in, 16), sink)
+                .interpret(new Parser(new Lexer(source, errorManager).scanTokens(), errorManager).parse());
+
+        assertFalse(errorManager.hadRuntimeError());
+        assertEquals(String.valueOf(expected), sink.toString());
+    }
+
+    @Test
+    public void testScanRejectsFieldOfWrongType() {
+        String source = """
+                SCRIPT AREA
+                START SCRIPT
+                DECLARE INT n
+                DECLARE FLOAT f
+                SCAN: f, n
+                END SCRIPT
+                """;
+        InputStream in = new ByteArrayInputStream("3, 4.5\n".getBytes());
+        LexorEngine.Result result = new LexorEngine().run(source, in, new MemorySink(), null);
+
+        assertTrue(result.hadRuntimeError());
+        assertEquals("Type mismatch: Cannot assign '4.5' to variable of type INT_TYPE", result.errors().getFirst().message());
+        assertEquals(5, result.errors().getFirst().line());
+    }
+
+    // ==========================================
+    // 19. STRING CONCATENATION
+    // ==========================================
+
+    private static final String SHARED_BUILDERS = """
+            SCRIPT AREA
+            START SCRIPT
+            DECLARE INT i = 0
+            DECLARE STRING s = "", t, u
+            REPEAT WHEN (i < 3)
+            START REPEAT
+                s = s & i & "-"
+                i = i + 1
+            END REPEAT
+            t = s
+            s = s & "x"
+            u = t & "y"
+            t = t & t
+            PRINT: s & $ & t & $ & u & $ & (t == "0-1-2-0-1-2-") & $ & (s <> u) & $ & 1 & (2 & 3) & 'c' & 4.5
+            END SCRIPT
+            """;
+
+    @Test
+    public void testConcatenationKeepsValuesIndependent() {
+        runScript(SHARED_BUILDERS);
+
+        assertFalse(errorManager.hadRuntimeError());
+        assertEquals("0-1-2-x\n0-1-2-0-1-2-\n0-1-2-y\nTRUE\nTRUE\n123c4.5", outContent.toString());
+    }
+
+    @Test
+    public void testConcatenationMatchesAcrossEvaluators() {
+        List<Stmt> statements = new Parser(new Lexer(SHARED_BUILDERS, errorManager).scanTokens(), errorManager).parse();
+        new Interpreter(errorManager, Interpreter.Dispatch.STACK).interpret(statements);
+        String stack = outContent.toString();
+        outContent.reset();
+        new FlatInterpreter(errorManager).interpret(FlatAst.from(statements));
+
+        assertFalse(errorManager.hadRuntimeError());
+        assertEquals("0-1-2-x\n0-1-2-0-1-2-\n0-1-2-y\nTRUE\nTRUE\n123c4.5", stack);
+        assertEquals(stack, outContent.toString());
+    }
+
+    @Test
+    public void testLongConcatenationChain() {
+        StringBuilder chain = new StringBuilder("\"\"");
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            chain.append(" & ").append(i % 10);
+            expected.append(i % 10);
+        }
+        runScript("SCRIPT AREA\nSTART SCRIPT\nDECLARE STRING s = " + chain + "\nPRINT: s\nEND SCRIPT\n");
+
+        assertFalse(errorManager.hadError() || errorManager.hadRuntimeError());
+        assertEquals(expected.toString(), outContent.toString());
+    }
+
+    // ==========================================
+    // 20. RESOURCE LIMITS
+    // ==========================================
+
+    private static final String ENDLESS_LOOP = """
+            SCRIPT AREA
+            START SCRIPT
+            DECLARE INT i = 0
+            REPEAT WHEN ("TRUE")
+            START REPEAT
+                i = i + 1
+            END REPEAT
+            END SCRIPT
+            """;
+
+    private static LexorEngine.Result runLimited(String source, Limits limits, OutputSink output) {
+        return new LexorEngine(false, null, limits).run(source, InputStream.nullInputStream(), output, null);
+    }
+
+    @Test
+    public void testStepLimitStopsEndlessLoop() {
+        LexorEngine.Result result = runLimited(ENDLESS_LOOP, Limits.NONE.withSteps(10_000), new MemorySink());
+
+        assertTrue(result.hadLimitError());
+        assertEquals(75, result.exitCode());
+        assertEquals(ErrorType.LIMIT, result.errors().getFirst().errorType());
+        assertEquals("Step limit of 10000 exceeded.", result.errors().getFirst().message());
+    }
+
+    @Test
+    public void testTimeLimitStopsEndlessLoop() {
+        long start = System.nanoTime();
+        LexorEngine.Result result = runLimited(ENDLESS_LOOP, Limits.NONE.withTimeout(Duration.ofMillis(200)), new MemorySink());
+
+        assertTrue(result.hadLimitError());
+        assertTrue(System.nanoTime() - start < 5_000_000_000L, "The run should stop soon after its deadline.");
+    }
+
+    @Test
+    public void testStepLimitAppliesToStackDispatch() {
+        List<Stmt> statements = new Parser(new Lexer(ENDLESS_LOOP, errorManager).scanTokens(), errorManager).parse();
+        new Interpreter(errorManager, new InputSource(InputStream.nullInputStream()), new MemorySink(),
+                Interpreter.Dispatch.STACK, Limits.NONE.withSteps(5000)).interpret(statements);
+
+        assertTrue(errorManager.hadLimitError());
+    }
+
+    @Test
+    public void testLimitsApplyToFlatInterpreter() {
+        List<Stmt> statements = new Parser(new Lexer(ENDLESS_LOOP, errorManager).scanTokens(), errorManager).parse();
+        new FlatInterpreter(errorManager, new InputSource(InputStream.nullInputStream()), new MemorySink(),
+                Limits.NONE.withSteps(5000)).interpret(FlatAst.from(statements));
+        assertTrue(errorManager.hadLimitError());
+        assertEquals("Step limit of 5000 exceeded.", errorManager.getErrors().getFirst().message());
+
+        ErrorManager timed = new ErrorManager(null);
+        new FlatInterpreter(timed, new InputSource(InputStream.nullInputStream()), new MemorySink(),
+                Limits.NONE.withTimeout(Duration.ofMillis(200))).interpret(FlatAst.from(statements));
+        assertTrue(timed.hadLimitError());
+    }
+
+    @Test
+    public void testTimeLimitStopsScanWaitingForInput() throws IOException {
+        Limits limits = Limits.NONE.withTimeout(Duration.ofMillis(300));
+        try (PipedOutputStream keyboard = new PipedOutputStream(); PipedOutputStream other = new PipedOutputStream()) {
+            long start = System.nanoTime();
+            LexorEngine.Result result = new LexorEngine(false, null, limits)
+                    .run(DOUBLING, new PipedInputStream(keyboard), new MemorySink(), null);
+            assertEquals(75, result.exitCode());
+            assertEquals("Time limit of 300 ms exceeded.", result.errors().getFirst().message());
+
+            List<Stmt> statements = new Parser(new Lexer(DOUBLING, errorManager).scanTokens(), errorManager).parse();
+            new FlatInterpreter(errorManager, new InputSource(new PipedInputStream(other)), new MemorySink(), limits)
+                    .interpret(FlatAst.from(statements));
+            assertTrue(errorManager.hadLimitError());
+            assertTrue(System.nanoTime() - start < 5_000_000_000L, "SCAN should give up at the deadline.");
+        }
+
+        // Input that comes in time is read as usual.
+        MemorySink output = new MemorySink();
+        LexorEngine.Result result = new LexorEngine(false, null, Limits.NONE.withTimeout(Duration.ofSeconds(30)))
+                .run(DOUBLING, new ByteArrayInputStream("21\n".getBytes()), output, null);
+        assertEquals(0, result.exitCode());
+        assertEquals("42", output.toString());
+    }
+
+    @Test
+    public void testOutputAndStringLimits() {
+        String printing = """
+                SCRIPT AREA
+                START SCRIPT
+                DECLARE INT i = 0
+                REPEAT WHEN (i < 100)
+                START REPEAT
+                    PRINT: i & $
+                    i = i + 1
+                END REPEAT
+                END SCRIPT
+                """;
+        MemorySink output = new MemorySink();
+        LexorEngine.Result printed = runLimited(printing, Limits.NONE.withOutputBytes(20), output);
+        assertTrue(printed.hadLimitError());
+        assertEquals("0\n1\n2\n3\n4\n5\n6\n7\n8\n9\n", output.toString());
+        assertEquals("Output limit of 20 bytes exceeded.", printed.errors().getFirst().message());
+
+        // One PRINT far past the cap still stops at it, also in a sink that drains as it goes.
+        String shouting = """
+                SCRIPT AREA
+                START SCRIPT
+                DECLARE STRING s = "é"
+                DECLARE INT i = 0
+                REPEAT WHEN (i < 14)
+                START REPEAT
+                    s = s & s
+                    i = i + 1
+                END REPEAT
+                PRINT: s
+                END SCRIPT
+                """;
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        LexorEngine.Result shouted = runLimited(shouting, Limits.NONE.withOutputBytes(1001),
+                new StreamSink(stream, 64, OutputSink.FlushPolicy.ON_EXIT, StandardCharsets.UTF_8));
+        assertTrue(shouted.hadLimitError());
+        assertEquals("é".repeat(500), stream.toString(StandardCharsets.UTF_8));
+
+        String growing = """
+                SCRIPT AREA
+                START SCRIPT
+                DECLARE STRING s = "x"
+                REPEAT WHEN ("TRUE")
+                START REPEAT
+                    s = s & s
+                END REPEAT
+                END SCRIPT
+                """;
+        LexorEngine.Result grown = runLimited(growing, Limits.NONE.withStringLength(1 << 16), new MemorySink());
+        assertTrue(grown.hadLimitError());
+        assertEquals("String length limit of 65536 exceeded.", grown.errors().getFirst().message());
+    }
+
+    @Test
+    public void testVariableLimitCountsLiveVariables() {
+        String declaring = """
+                SCRIPT AREA
+                START SCRIPT
+                DECLARE INT i = 0
+                DECLARE FLOAT a, b
+                REPEAT WHEN (i < 1000)
+                START REPEAT
+                    i = i + 1
+                END REPEAT
+                PRINT: i
+                END SCRIPT
+                """;
+        MemorySink output = new MemorySink();
+        assertEquals(0, runLimited(declaring, Limits.NONE.withVariables(3), output).exitCode());
+        assertEquals("1000", output.toString());
+
+        LexorEngine.Result result = runLimited(declaring, Limits.NONE.withVariables(2), new MemorySink());
+        assertTrue(result.hadLimitError());
+        assertEquals("Variable limit of 2 exceeded.", result.errors().getFirst().message());
+    }
+
+    @Test
+    public void testInterruptStopsRun() throws Exception {
+        try (LexorEngine engine = new LexorEngine()) {
+            ExecutorService runner = Executors.newSingleThreadExecutor();
+            try {
+                var running = runner.submit(() -> engine.run(ENDLESS_LOOP, InputStream.nullInputStream(), new MemorySink(), null));
+                Thread.sleep(100);
+                running.cancel(true);
+                runner.shutdown();
+                assertTrue(runner.awaitTermination(10, TimeUnit.SECONDS), "The interrupted run should end.");
+            } finally {
+                runner.shutdownNow();
+            }
+        }
+    }
+
+    // ==========================================
+    // 21. SCHEDULER
+    // ==========================================
+
+    private static final String LONG_LOOP = """
+            SCRIPT AREA
+            START SCRIPT
+            DECLARE INT i = 0
+            REPEAT WHEN (i < 5000000)
+            START REPEAT
+                i = i + 1
+            END REPEAT
+            PRINT: i
+            END SCRIPT
+            """;
+
+    private static String printing(String text) {
+        return "SCRIPT AREA\nSTART SCRIPT\nPRINT: \"" + text + "\"\nEND SCRIPT\n";
+    }
+
+    @Test
+    public void testSchedulerLetsShortScriptsPassLongLoop() {
+        try (ScriptScheduler scheduler = new ScriptScheduler(new LexorEngine(), 1, Duration.ofMillis(1))) {
+            var heavy = scheduler.submit(LONG_LOOP, InputStream.nullInputStream(), new MemorySink());
+            List<MemorySink> outputs = new ArrayList<>();
+            List<CompletableFuture<LexorEngine.Result>> shorts = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                MemorySink output = new MemorySink();
+                outputs.add(output);
+                shorts.add(scheduler.submit(printing("short " + i), InputStream.nullInputStream(), output));
+            }
+            CompletableFuture.allOf(shorts.toArray(CompletableFuture[]::new)).join();
+
+            assertFalse(heavy.isDone(), "The short scripts should not wait for the long loop to finish.");
+            for (int i = 0; i < 20; i++) assertEquals("short " + i, outputs.get(i).toString());
+            assertEquals(0, heavy.join().exitCode());
+        }
+    }
+
+    @Test
+    public void testSchedulerServesHigherPriorityFirst() {
+        List<String> finished = Collections.synchronizedList(new ArrayList<>());
+        // The loop keeps the only slot until both are queued, however slowly they are submitted.
+        try (ScriptScheduler scheduler = new ScriptScheduler(new LexorEngine(), 1, Duration.ofDays(1))) {
+            var heavy = scheduler.submit(LONG_LOOP, InputStream.nullInputStream(), new MemorySink());
+            var low = scheduler.submit(printing("low"), InputStream.nullInputStream(), new MemorySink(), 0)
+                    .thenRun(() -> finished.add("low"));
+            var high = scheduler.submit(printing("high"), InputStream.nullInputStream(), new MemorySink(), 5)
+                    .thenRun(() -> finished.add("high"));
+            CompletableFuture.allOf(low, high, heavy).join();
+        }
+        assertEquals(List.of("high", "low"), finished);
+    }
+
+    @Test
+    public void testSchedulerFreesSlotWhileScanWaits() throws Exception {
+        CountDownLatch typed = new CountDownLatch(1);
+        InputStream keyboard = new InputStream() {
+            private final byte[] line = "5\n".getBytes();
+            private int next = 0;
+
+            @Override
+            public int read() throws IOException {
+                try {
+                    typed.await();
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                }
+                return next < line.length ? line[next++] : -1;
+            }
+        };
+        String scanning = "SCRIPT AREA\nSTART SCRIPT\nDECLARE INT n\nSCAN: n\nPRINT: n * 2\nEND SCRIPT\n";
+        try (ScriptScheduler scheduler = new ScriptScheduler(new LexorEngine(), 1, Duration.ofMillis(1))) {
+            MemorySink scanned = new MemorySink();
+            var waitingForInput = scheduler.submit(scanning, keyboard, scanned);
+            MemorySink other = new MemorySink();
+            assertEquals(0, scheduler.submit(printing("meanwhile"), InputStream.nullInputStream(), other)
+                    .get(10, TimeUnit.SECONDS).exitCode());
+            assertEquals("meanwhile", other.toString());
+            assertFalse(waitingForInput.isDone());
+
+            typed.countDown();
+            assertEquals(0, waitingForInput.get(10, TimeUnit.SECONDS).exitCode());
+            assertEquals("10", scanned.toString());
+        }
+    }
+
+    // ==========================================
+    // 22. BATCH
+    // ==========================================
+
+    private static final String DOUBLING = "SCRIPT AREA\nSTART SCRIPT\nDECLARE INT n\nSCAN: n\nPRINT: n * 2\nEND SCRIPT\n";
+
+    @Test
+    public void testBatchGradesEachScriptOnItsOwn(@TempDir Path directory) throws Exception {
+        Files.writeString(directory.resolve("right.lxr"), DOUBLING);
+        Files.writeString(directory.resolve("right.in"), "21\n");
+        Files.writeString(directory.resolve("right.out"), "42\r\n");
+        Files.writeString(directory.resolve("wrong.lxr"), DOUBLING);
+        Files.writeString(directory.resolve("wrong.in"), "20\n");
+        Files.writeString(directory.resolve("wrong.out"), "42\n");
+        Files.writeString(directory.resolve("broken.lxr"), "SCRIPT AREA\nSTART SCRIPT\nPRINT: missing\nEND SCRIPT\n");
+        Files.writeString(directory.resolve("free.lxr"), printing("no expectations"));
+
+        List<BatchRunner.Job> jobs = BatchRunner.jobs(directory);
+        assertEquals(4, jobs.size());
+        List<String> lines = Collections.synchronizedList(new ArrayList<>());
+        List<BatchRunner.Outcome> outcomes;
+        try (LexorEngine engine = new LexorEngine()) {
+            outcomes = new BatchRunner(engine, 2).run(jobs, outcome -> lines.add(outcome.toJson()));
+        }
+
+        // In path order: broken, free, right, wrong.
+        assertEquals(List.of("error", "ok", "pass", "fail"), outcomes.stream().map(BatchRunner.Outcome::status).toList());
+        assertNotEquals(0, outcomes.get(0).exitCode());
+        assertTrue(outcomes.get(0).errors().get(0).contains("missing"));
+        assertNotEquals(outcomes.get(2).digest(), outcomes.get(3).digest());
+        assertEquals(4, lines.size());
+        assertTrue(lines.stream().anyMatch(line -> line.contains("\"status\":\"ok\"") && line.contains("\"bytes\":15")));
+    }
+
+    @Test
+    public void testBatchReadsAListOfScripts(@TempDir Path directory) throws Exception {
+        Files.createDirectories(directory.resolve("a"));
+        Files.writeString(directory.resolve("a/one.lxr"), DOUBLING);
+        Files.writeString(directory.resolve("a/one.in"), "4");
+        Files.writeString(directory.resolve("a/one.out"), "8");
+        Files.writeString(directory.resolve("list.txt"), "# submissions\na/one.lxr\n\nmissing.lxr\n");
+
+        List<BatchRunner.Outcome> outcomes;
+        try (LexorEngine engine = new LexorEngine()) {
+            outcomes = new BatchRunner(engine, 1).run(BatchRunner.jobs(directory.resolve("list.txt")), outcome -> {});
+        }
+        assertEquals("pass", outcomes.get(0).status());
+        assertEquals("crash", outcomes.get(1).status());
+    }
+
+    // ==========================================
+    // 23. TEST CASE FAN-OUT
+    // ==========================================
+
+    @Test
+    public void testCasesShareOnePreparedProgram() {
+        List<CaseRunner.Case> cases = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            cases.add(new CaseRunner.Case("case " + i, i + "\n", i == 7 ? "wrong" : String.valueOf(i * 2)));
+        }
+        try (LexorEngine engine = new LexorEngine()) {
+            LexorEngine.Program program = engine.prepare(DOUBLING);
+            assertFalse(program.hadError());
+            List<CaseRunner.Outcome> outcomes = new CaseRunner(engine, 4).run(program, cases, false);
+
+            assertEquals(40, outcomes.size());
+            for (int i = 0; i < 40; i++) {
+                assertEquals("case " + i, outcomes.get(i).name());
+                assertEquals(String.valueOf(i * 2), outcomes.get(i).output());
+                assertEquals(i == 7 ? "fail" : "pass", outcomes.get(i).status());
+            }
+        }
+    }
+
+    @Test
+    public void testCasesStopAtFirstFailureWhenAsked() {
+        List<CaseRunner.Case> cases = List.of(
+                new CaseRunner.Case("first", "1", "2"),
+                new CaseRunner.Case("second", "x", "4"),
+                new CaseRunner.Case("third", "3", "6"));
+        try (LexorEngine engine = new LexorEngine()) {
+            List<CaseRunner.Outcome> outcomes = new CaseRunner(engine, 1).run(engine.prepare(DOUBLING), cases, true);
+
+            assertEquals(List.of("pass", "error", "skipped"), outcomes.stream().map(CaseRunner.Outcome::status).toList());
+            assertTrue(outcomes.get(1).errors().get(0).contains("Type mismatch"));
+        }
+    }
+
+    @Test
+    public void testFailFastReturnsWhatItStreamed() {
+        // Every case fails at once: the first to report wins and the list agrees with the stream.
+        List<CaseRunner.Case> cases = new ArrayList<>();
+        for (int i = 0; i < 64; i++) cases.add(new CaseRunner.Case("case " + i, i + "\n", "wrong"));
+        try (LexorEngine engine = new LexorEngine()) {
+            for (int round = 0; round < 20; round++) {
+                List<CaseRunner.Outcome> streamed = new ArrayList<>();
+                List<CaseRunner.Outcome> outcomes = new CaseRunner(engine, 8)
+                        .run(engine.prepare(DOUBLING), cases, true, streamed::add);
+
+                assertEquals(1, streamed.size());
+                assertEquals(streamed, outcomes.stream().filter(outcome -> !outcome.status().equals("skipped")).toList());
+            }
+        }
+    }
+
+    @Test
+    public void testPreparedProgramWithSyntaxErrorsDoesNotRun() {
+        try (LexorEngine engine = new LexorEngine()) {
+            LexorEngine.Program program = engine.prepare("SCRIPT AREA\nSTART SCRIPT\nPRINT: (1 +\nEND SCRIPT\n");
+            assertTrue(program.hadError());
+            MemorySink output = new MemorySink();
+            LexorEngine.Result result = engine.run(program, InputStream.nullInputStream(), output);
+            assertEquals(65, result.exitCode());
+            assertEquals(program.errors(), result.errors());
+            assertEquals("", output.toString());
+        }
+    }
+
+    // ==========================================
+    // 24. COORDINATOR
+    // ==========================================
+
+    @Test
+    public void testCoordinatorSurvivesAWorkerCrash(@TempDir Path directory) throws Exception {
+        for (int i = 0; i < 6; i++) {
+            Files.writeString(directory.resolve("s" + i + ".lxr"), DOUBLING);
+            Files.writeString(directory.resolve("s" + i + ".in"), String.valueOf(i));
+            Files.writeString(directory.resolve("s" + i + ".out"), String.valueOf(i * 2));
+        }
+        // Runs its worker out of memory.
+        Files.writeString(directory.resolve("s3.lxr"), """
+                SCRIPT AREA
+                START SCRIPT
+                DECLARE STRING s = "xxxxxxxxxxxxxxxx"
+                REPEAT WHEN ("TRUE")
+                START REPEAT
+                    s = s & s
+                END REPEAT
+                END SCRIPT
+                """);
+        List<String> command = new ArrayList<>(Coordinator.localWorkerCommand());
+        command.addAll(1, List.of("--enable-preview", "-Xmx64m"));
+        command.add("--worker");
+
+        List<BatchRunner.Outcome> outcomes = new Coordinator(command, 2).run(BatchRunner.jobs(directory), outcome -> {});
+
+        assertEquals(List.of("pass", "pass", "pass", "crash", "pass", "pass"),
+                outcomes.stream().map(BatchRunner.Outcome::status).toList());
+        assertTrue(outcomes.get(3).errors().get(0).startsWith("Worker exited"));
+    }
+
+    @Test
+    public void testCoordinatorKillsAWorkerThatDoesNotAnswer(@TempDir Path directory) throws Exception {
+        for (int i = 0; i < 3; i++) {
+            Files.writeString(directory.resolve("s" + i + ".lxr"), DOUBLING);
+            Files.writeString(directory.resolve("s" + i + ".in"), String.valueOf(i));
+            Files.writeString(directory.resolve("s" + i + ".out"), String.valueOf(i * 2));
+        }
+        // Never ends, and the worker has no --timeout to stop it.
+        Files.writeString(directory.resolve("s1.lxr"), ENDLESS_LOOP);
+        List<String> command = new ArrayList<>(Coordinator.localWorkerCommand());
+        command.add(1, "--enable-preview");
+        command.add("--worker");
+
+        long start = System.nanoTime();
+        List<BatchRunner.Outcome> outcomes = new Coordinator(command, 1, Duration.ofSeconds(3))
+                .run(BatchRunner.jobs(directory), outcome -> {});
+
+        assertEquals(List.of("pass", "crash", "pass"), outcomes.stream().map(BatchRunner.Outcome::status).toList());
+        assertTrue(outcomes.get(1).errors().get(0).startsWith("Worker did not answer"));
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(60));
+    }
+
+    // ==========================================
+    // 25. DAEMON
+    // ==========================================
+
+    @Test
+    public void testDaemonServesSessionsBackToBack() throws Exception {
+        String requests = "source " + DOUBLING.length() + "\n" + DOUBLING + "input 3\n21\nrun\n"
+                + "source " + DOUBLING.length() + "\n" + DOUBLING + "input 5\nnope\nrun\n"
+                + "source " + LONG_LOOP.length() + "\n" + LONG_LOOP + "limit steps 100\nrun\n";
+        ByteArrayOutputStream replies = new ByteArrayOutputStream();
+        try (LexorEngine engine = new LexorEngine()) {
+            new Daemon(engine).serve(new ByteArrayInputStream(requests.getBytes()), replies);
+        }
+        String[] sessions = replies.toString().split("(?<=exit \\d{1,3}\n)");
+
+        assertEquals(3, sessions.length);
+        assertEquals("out 2\n42exit 0\n", sessions[0]);
+        assertTrue(sessions[1].startsWith("err ") && sessions[1].contains("Type mismatch") && sessions[1].endsWith("exit 65\n"));
+        assertTrue(sessions[2].contains("Step limit of 100 exceeded") && sessions[2].endsWith("exit 75\n"));
+    }
+
+    @Test
+    public void testDaemonRejectsMalformedRequests() throws Exception {
+        ByteArrayOutputStream replies = new ByteArrayOutputStream();
+        try (LexorEngine engine = new LexorEngine()) {
+            new Daemon(engine).serve(new ByteArrayInputStream("source many\nrun\n".getBytes()), replies);
+        }
+        assertTrue(replies.toString().endsWith("exit 64\n"));
+    }
+
+    @Test
+    public void testDaemonKeepsItsOwnLimitsAndScriptDirectory(@TempDir Path directory) throws Exception {
+        Path scripts = Files.createDirectory(directory.resolve("scripts"));
+        Files.writeString(scripts.resolve("double.lxr"), DOUBLING);
+        Files.writeString(directory.resolve("secret.lxr"), DOUBLING);
+        String requests = "source " + LONG_LOOP.length() + "\n" + LONG_LOOP + "limit steps 9223372036854775807\nrun\n"
+                + "path 10\ndouble.lxrinput 1\n4run\n"
+                + "path 13\n../secret.lxrinput 1\n4run\n"
+                + "path " + directory.resolve("secret.lxr").toString().length() + "\n" + directory.resolve("secret.lxr") + "run\n";
+        ByteArrayOutputStream replies = new ByteArrayOutputStream();
+        try (LexorEngine engine = new LexorEngine(false, null, Limits.NONE.withSteps(100))) {
+            new Daemon(engine, scripts).serve(new ByteArrayInputStream(requests.getBytes()), replies);
+        }
+        String[] sessions = replies.toString().split("(?<=exit \\d{1,3}\n)");
+
+        assertEquals(4, sessions.length);
+        assertTrue(sessions[0].contains("Step limit of 100 exceeded") && sessions[0].endsWith("exit 75\n"));
+        assertEquals("out 1\n8exit 0\n", sessions[1]);
+        assertTrue(sessions[2].contains("Cannot read ../secret.lxr.") && sessions[2].endsWith("exit 66\n"));
+        assertTrue(sessions[3].endsWith("exit 66\n"));
+
+        // Without a script directory every path is refused.
+        replies.reset();
+        try (LexorEngine engine = new LexorEngine()) {
+            new Daemon(engine).serve(new ByteArrayInputStream("path 10\ndouble.lxrrun\n".getBytes()), replies);
+        }
+        assertTrue(replies.toString().endsWith("exit 66\n"));
+    }
+
+    @Test
+    public void testDaemonAnswersOnUnixSocket(@TempDir Path directory) throws Exception {
+        Path socket = directory.resolve("lexor.sock");
+        try (LexorEngine engine = new LexorEngine()) {
+            Daemon daemon = new Daemon(engine);
+            Thread listener = Thread.ofVirtual().start(() -> {
+                try {
+                    daemon.listen(socket);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            try {
+                assertTrue(daemon.warmUp(Duration.ofMillis(50)) > 0);
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                ByteArrayOutputStream err = new ByteArrayOutputStream();
+                int status = -1;
+                for (int attempt = 0; status < 0; attempt++) {
+                    try {
+                        status = Daemon.request(socket, DOUBLING, "8".getBytes(), List.of(), out, err);
+                    } catch (IOException e) {
+                        // Not listening yet.
+                        if (attempt == 200) throw e;
+                        Thread.sleep(10);
+                    }
+                }
+                assertEquals(0, status);
+                assertEquals("16", out.toString());
+                assertEquals(75, Daemon.request(socket, LONG_LOOP, null, List.of("limit steps 10"), out, err));
+                assertTrue(err.toString().contains("LIMIT ERROR"));
+            } finally {
+                daemon.close();
+                listener.join();
+            }
+        }
+        assertFalse(Files.exists(socket));
+    }
+
+    // ==========================================
+    // 26. SCRIPT ENGINE
+    // ==========================================
+
+    private static final String BOUND = """
+            SCRIPT AREA
+            START SCRIPT
+            DECLARE INT count = 1, doubled
+            DECLARE FLOAT rate = 0.5
+            DECLARE CHAR grade = 'C'
+            DECLARE STRING label = "none"
+            doubled = count * 2
+            label = label & ":" & grade
+            PRINT: doubled & " " & rate
+            END SCRIPT
+            """;
+
+    @Test
+    public void testCompiledScriptTakesAndReturnsTypedBindings() throws Exception {
+        ScriptEngine engine = new LexorScriptEngineFactory().getScriptEngine();
+        CompiledScript script = ((Compilable) engine).compile(BOUND);
+
+        for (long count : new long[]{20, 7}) {
+            Bindings bindings = engine.createBindings();
+            bindings.put("count", count);
+            bindings.put("rate", 2);
+            bindings.put("grade", "A");
+            StringWriter output = new StringWriter();
+            ScriptContext context = new SimpleScriptContext();
+            context.setBindings(bindings, ScriptContext.ENGINE_SCOPE);
+            context.setWriter(output);
+
+            assertNull(script.eval(context));
+            assertEquals(count * 2 + " 2", output.toString());
+            assertEquals((int) count * 2, bindings.get("doubled"));
+            assertEquals(2.0, bindings.get("rate"));
+            assertEquals('A', bindings.get("grade"));
+            assertEquals("none:A", bindings.get("label"));
+        }
+    }
+
+    @Test
+    public void testCompiledScriptEvaluatesConcurrentlyInOneContext() throws Exception {
+        ScriptEngine engine = new LexorScriptEngineFactory().getScriptEngine();
+        assertEquals("MULTITHREADED", engine.getFactory().getParameter("THREADING"));
+        CompiledScript script = ((Compilable) engine).compile(BOUND);
+        engine.getContext().setWriter(Writer.nullWriter());
+        engine.put("count", 3L);
+
+        List<Callable<Object>> evals = new ArrayList<>();
+        for (int i = 0; i < 400; i++) evals.add(script::eval);
+        try (ExecutorService threads = Executors.newFixedThreadPool(8)) {
+            for (Future<Object> eval : threads.invokeAll(evals)) assertNull(eval.get());
+        }
+        Bindings bindings = engine.getBindings(ScriptContext.ENGINE_SCOPE);
+        assertEquals(6, bindings.get("doubled"));
+        assertEquals(3, bindings.get("count"));
+        // Each run appends to the label the runs before it left; how many it saw depends on timing.
+        assertTrue(((String) bindings.get("label")).matches("none(:C)+"));
+        assertEquals(5, bindings.size());
+    }
+
+    @Test
+    public void testScriptEngineReportsErrorsWithLines() throws Exception {
+        ScriptEngine engine = new LexorScriptEngineFactory().getScriptEngine();
+        engine.put("count", 1L << 40);
+        ScriptException tooBig = assertThrows(ScriptException.class, () -> engine.eval(BOUND));
+        assertEquals(3, tooBig.getLineNumber());
+        assertTrue(tooBig.getMessage().contains("Type mismatch"));
+
+        ScriptException syntax = assertThrows(ScriptException.class,
+                () -> engine.eval("SCRIPT AREA\nSTART SCRIPT\nPRINT: (1 +\nEND SCRIPT\n"));
+        assertEquals(3, syntax.getLineNumber());
+    }
+
+    @Test
+    public void testScriptEngineOutputStatementPrintsItsText() throws Exception {
+        ScriptEngine engine = new LexorScriptEngineFactory().getScriptEngine();
+        StringWriter output = new StringWriter();
+        engine.getContext().setWriter(output);
+        String text = "say \"[hi]\"\n\tbye";
+        engine.eval(engine.getFactory().getProgram(engine.getFactory().getOutputStatement(text)));
+        assertEquals(text, output.toString());
+        assertNull(engine.getFactory().getMethodCallSyntax("label", "length"));
+    }
+
+    // ==========================================
+    // 27. PROGRAM CACHE
+    // ==========================================
+
+    @Test
+    public void testProgramCacheParsesEachSourceOnceUnderContention() throws Exception {
+        try (LexorEngine engine = new LexorEngine()) {
+            ProgramCache cache = new ProgramCache(engine, 1 << 20);
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<LexorEngine.Program>> programs = new ArrayList<>();
+            try (ExecutorService threads = Executors.newFixedThreadPool(8)) {
+                for (int i = 0; i < 32; i++) {
+                    programs.add(threads.submit(() -> {
+                        start.await();
+                        return cache.get(BOUND);
+                    }));
+                }
+                start.countDown();
+            }
+            LexorEngine.Program first = programs.get(0).get();
+            for (Future<LexorEngine.Program> program : programs) assertSame(first, program.get());
+
+            ProgramCache.Stats stats = cache.stats();
+            assertEquals(1, stats.misses());
+            assertEquals(31, stats.hits());
+            assertEquals(first.nodes(), stats.nodes());
+        }
+    }
+
+    @Test
+    public void testProgramCacheCountsNodesWithoutFlattening() throws Exception {
+        String code = deeplyNestedProgram();
+        int flattened = FlatAst.from(new Parser(new Lexer(code, errorManager).scanTokens(), errorManager).parse()).size();
+        try (LexorEngine engine = new LexorEngine()) {
+            ProgramCache cache = new ProgramCache(engine, Long.MAX_VALUE);
+            LexorEngine.Program program = onSmallStack(() -> cache.get(code));
+            assertEquals(flattened, program.nodes());
+            assertEquals(flattened, cache.stats().nodes());
+            List<Stmt> flat = new Parser(new Lexer(FLAT_PROGRAM, errorManager).scanTokens(), errorManager).parse();
+            assertEquals(FlatAst.from(flat).size(), engine.prepare(FLAT_PROGRAM).nodes());
+        }
+    }
+
+    @Test
+    public void testProgramCacheEvictsLeastRecentlyUsedByNodes() {
+        try (LexorEngine engine = new LexorEngine()) {
+            String a = "SCRIPT AREA\nSTART SCRIPT\nPRINT: 1 + 2\nEND SCRIPT\n";
+            String b = "SCRIPT AREA\nSTART SCRIPT\nPRINT: 3 + 4\nEND SCRIPT\n";
+            String c = "SCRIPT AREA\nSTART SCRIPT\nPRINT: 5 + 6\nEND SCRIPT\n";
+            int size = engine.prepare(a).nodes();
+            ProgramCache cache = new ProgramCache(engine, 2L * size);
+
+            LexorEngine.Program cachedA = cache.get(a);
+            cache.get(b);
+            assertSame(cachedA, cache.get(a));
+            cache.get(c);
+
+            assertSame(cachedA, cache.get(a), "The most recently used program should stay.");
+            ProgramCache.Stats stats = cache.stats();
+            assertEquals(1, stats.evictions());
+            assertEquals(2, stats.programs());
+            cache.get(b);
+            assertEquals(4, cache.stats().misses(), "The least recently used program should have been parsed again.");
+        }
+    }
+
+    // ==========================================
+    // 28. RESULT MEMOIZATION
+    // ==========================================
+
+    private static List<Stmt> parsed(String code) {
+        ErrorManager errorManager = new ErrorManager(null);
+        return new Parser(new Lexer(code, errorManager).scanTokens(), errorManager).parse();
+    }
+
+    @Test
+    public void testFingerprintIgnoresLayoutCommentsAndNames() {
+        String original = "SCRIPT AREA\nSTART SCRIPT\nDECLARE INT n, total = 0\nSCAN: n\ntotal = (n * 2) + 1\nPRINT: total\nEND SCRIPT\n";
+        String renamed = "SCRIPT AREA\nSTART SCRIPT\n%% mine\nDECLARE INT   x,sum=0\nSCAN: x\n\nsum = x * 2 + 1\nPRINT: sum\nEND SCRIPT\n";
+        String swapped = "SCRIPT AREA\nSTART SCRIPT\nDECLARE INT n, total = 0\nSCAN: total\ntotal = (n * 2) + 1\nPRINT: total\nEND SCRIPT\n";
+        String changed = original.replace("+ 1", "+ 2");
+
+        byte[] fingerprint = Fingerprint.of(parsed(original));
+        assertArrayEquals(fingerprint, Fingerprint.of(parsed(renamed)));
+        assertFalse(Arrays.equals(fingerprint, Fingerprint.of(parsed(swapped))));
+        assertFalse(Arrays.equals(fingerprint, Fingerprint.of(parsed(changed))));
+    }
+
+    @Test
+    public void testBatchServesRenamedScriptsFromResultCache(@TempDir Path directory) throws Exception {
+        Path store = directory.resolve("results");
+        ResultCache results = new ResultCache(store);
+        String renamed = "SCRIPT AREA\nSTART SCRIPT\nDECLARE INT value\nSCAN: value\nPRINT: value * 2\nEND SCRIPT\n";
+        Files.writeString(directory.resolve("a.lxr"), DOUBLING);
+        Files.writeString(directory.resolve("a.in"), "21\n");
+        Files.writeString(directory.resolve("b.lxr"), renamed);
+        Files.writeString(directory.resolve("b.in"), "21\n");
+        Files.writeString(directory.resolve("c.lxr"), "SCRIPT AREA\nSTART SCRIPT\nPRINT: 1 / 0\nEND SCRIPT\n");
+
+        try (LexorEngine engine = new LexorEngine()) {
+            List<BatchRunner.Outcome> outcomes = new BatchRunner(engine, 1, results)
+                    .run(BatchRunner.jobs(directory), outcome -> {});
+            assertEquals(outcomes.get(0).digest(), outcomes.get(1).digest());
+            assertEquals("error", outcomes.get(2).status());
+        }
+        // One entry for both spellings; none for the runtime error, whose message has a line.
+        try (Stream<Path> entries = Files.list(store)) {
+            assertEquals(1, entries.count());
+        }
+
+        // A stored result is returned as it is, without running the script.
+        String key = ResultCache.key(parsed(renamed), "21\n".getBytes(), Limits.NONE);
+        results.store(key, new ResultCache.Result(0, "memo".getBytes(), List.of()));
+        Files.writeString(directory.resolve("b.out"), "memo");
+        try (LexorEngine engine = new LexorEngine()) {
+            List<BatchRunner.Outcome> outcomes = new BatchRunner(engine, 1, results)
+                    .run(List.of(BatchRunner.job(directory.resolve("b.lxr"))), outcome -> {});
+            assertEquals("pass", outcomes.get(0).status());
+        }
+        assertNull(ResultCache.key(parsed(renamed), null, Limits.NONE.withTimeout(Duration.ofSeconds(1))));
+    }
+
+    @Test
+    public void testResultCacheKeysDeeplyNestedProgram(@TempDir Path directory) throws Exception {
+        List<Stmt> deep = parsed(deeplyNestedProgram());
+        assertNotNull(onSmallStack(() -> ResultCache.key(deep, new byte[0], Limits.NONE)));
+
+        Files.writeString(directory.resolve("deep.lxr"), deeplyNestedProgram());
+        Files.writeString(directory.resolve("deep.out"), "50000 3000 -1");
+        try (LexorEngine engine = new LexorEngine()) {
+            List<BatchRunner.Outcome> outcomes = new BatchRunner(engine, 1, new ResultCache(directory.resolve("results")))
+                    .run(List.of(BatchRunner.job(directory.resolve("deep.lxr"))), outcome -> {});
+            assertEquals("pass", outcomes.getFirst().status());
+        }
+    }
+
+    // ==========================================
+    // 29. RESUMING FROM A SNAPSHOT
+    // ==========================================
+
+    private static final String PREFIXED = """
+            SCRIPT AREA
+            START SCRIPT
+            DECLARE INT i = 0, n
+            DECLARE STRING row = "#"
+            REPEAT WHEN (i < 50)
+            START REPEAT
+            row = row & i
+            i = i + 1
+            END REPEAT
+            PRINT: "ready" & $
+            SCAN: n
+            row = row & ":" & n
+            i = i + n
+            PRINT: row & " " & i
+            END SCRIPT
+            """;
+
+    @Test
+    public void testResumedRunsMatchFullRuns() throws Exception {
+        try (LexorEngine engine = new LexorEngine()) {
+            LexorEngine.Program program = engine.prepare(PREFIXED);
+            LexorEngine.Start start = engine.start(program);
+            assertNotNull(start);
+            assertEquals(4, start.skipped());
+
+            // Forks on many threads append to the same STRING and must not see each other's text.
+            List<Callable<String[]>> runs = new ArrayList<>();
+            for (int k = 0; k < 32; k++) {
+                String input = k + "\n";
+                runs.add(() -> {
+                    MemorySink resumed = new MemorySink();
+                    MemorySink whole = new MemorySink();
+                    engine.run(start, new ByteArrayInputStream(input.getBytes()), resumed);
+                    engine.run(program, new ByteArrayInputStream(input.getBytes()), whole);
+                    return new String[]{resumed.toString(), whole.toString()};
+                });
+            }
+            try (ExecutorService pool = Executors.newFixedThreadPool(8)) {
+                for (Future<String[]> run : pool.invokeAll(runs)) {
+                    String[] outputs = run.get();
+                    assertEquals(outputs[1], outputs[0]);
+                }
+            }
+            MemorySink output = new MemorySink();
+            engine.run(start, new ByteArrayInputStream("7\n".getBytes()), output);
+            assertTrue(output.toString().startsWith("ready\n#0123"));
+            assertTrue(output.toString().endsWith("4849:7 57"));
+        }
+    }
+
+    @Test
+    public void testResumedRunsCountTheSharedSteps() {
+        // Enough steps for the loop but not for the rest: a resumed run fails just like a whole one.
+        try (LexorEngine engine = new LexorEngine(false, null, Limits.NONE.withSteps(155))) {
+            LexorEngine.Program program = engine.prepare(PREFIXED);
+            LexorEngine.Start start = engine.start(program);
+            assertNotNull(start);
+            LexorEngine.Result whole = engine.run(program, new ByteArrayInputStream("1\n".getBytes()), new MemorySink());
+            LexorEngine.Result resumed = engine.run(start, new ByteArrayInputStream("1\n".getBytes()), new MemorySink());
+            assertEquals(75, whole.exitCode());
+            assertEquals(whole.exitCode(), resumed.exitCode());
+            assertEquals(whole.errors(), resumed.errors());
+        }
+        // A program that fails before its first input is not started; it runs whole.
+        try (LexorEngine engine = new LexorEngine()) {
+            assertNull(engine.start(engine.prepare("SCRIPT AREA\nSTART SCRIPT\nPRINT: 1 / 0\nEND SCRIPT\n")));
+        }
+    }
+
+    @Test
+    public void testCasesStartDeeplyNestedProgram() throws Exception {
+        try (LexorEngine engine = new LexorEngine()) {
+            LexorEngine.Program program = engine.prepare(deeplyNestedProgram());
+            List<CaseRunner.Case> cases = List.of(new CaseRunner.Case("deep", "", "50000 3000 -1"));
+            List<CaseRunner.Outcome> outcomes = onSmallStack(() -> new CaseRunner(engine, 1).run(program, cases, false));
+            assertTrue(outcomes.getFirst().passed());
+        }
+    }
+
+    @Test
+    public void testResumedRunsCountTheSharedTime() {
+        // The loop after SCAN never ends, so every run times out. A resumed one must do so once
+        // what the shared part left of the timeout has passed, not a whole timeout later.
+        String loops = """
+                SCRIPT AREA
+                START SCRIPT
+                DECLARE INT i = 0, n
+                REPEAT WHEN (i < 2000000)
+                START REPEAT
+                i = i + 1
+                END REPEAT
+                SCAN: n
+                REPEAT WHEN (i > 0)
+                START REPEAT
+                i = i + 1
+                END REPEAT
+                END SCRIPT
+                """;
+        // Timed under a timeout too, as checking the deadline has its own cost.
+        long shortest = Long.MAX_VALUE;
+        try (LexorEngine engine = new LexorEngine(false, null, Limits.NONE.withTimeout(Duration.ofHours(1)))) {
+            LexorEngine.Program program = engine.prepare(loops);
+            for (int run = 0; run < 10; run++) {
+                long start = System.nanoTime();
+                engine.start(program);
+                shortest = Math.min(shortest, System.nanoTime() - start);
+            }
+        }
+        long timeout = shortest * 2;
+        try (LexorEngine engine = new LexorEngine(false, null, Limits.NONE.withTimeout(Duration.ofNanos(timeout)))) {
+            LexorEngine.Program program = engine.prepare(loops);
+            LexorEngine.Start start = null;
+            long shared = 0;
+            // The first tries may still be compiling the interpreter and run out of time early.
+            for (int attempt = 0; start == null && attempt < 5; attempt++) {
+                long begin = System.nanoTime();
+                start = engine.start(program);
+                shared = System.nanoTime() - begin;
+            }
+            assertNotNull(start);
+            long begin = System.nanoTime();
+            LexorEngine.Result resumed = engine.run(start, new ByteArrayInputStream("1\n".getBytes()), new MemorySink());
+            long own = System.nanoTime() - begin;
+            assertTrue(resumed.hadLimitError());
+            assertTrue(resumed.errors().getFirst().message().startsWith("Time limit"));
+            assertTrue(own < timeout - shared / 2, "Ran " + own + " ns of a " + timeout + " ns timeout after " + shared + " ns shared.");
+        }
+    }
+}
@@ -0,0 +1,272 @@
+package Lexor;
+
+import Lexor.cache.ResultCache;
+import Lexor.err.Error;
+import Lexor.err.ErrorManager;
+import Lexor.io.MemorySink;
+import Lexor.parser.ast.Stmt;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Runs many scripts in one JVM on a fork/join pool, each with its own input, output capture and
+ * errors. A script {@code name.lxr} reads SCAN input from {@code name.in} and is graded against
+ * {@code name.out} when those files are next to it. Every outcome is handed to the caller as
+ * soon as its script finishes, e.g. to print it as one line of NDJSON. With a
+ * {@link ResultCache}, a script that does what an earlier one did, renamed or not, on the same
+ * input, gets that earlier run's output without being run.
+ */
+public class BatchRunner {
+    private final LexorEngine engine;
+    private final int parallelism;
+    private final ResultCache results;
+
+    /** {@code input} and {@code expected} may be null. */
+    public record Job(Path script, Path input, Path expected) {}
+
+    /**
+     * How one script went. {@code status} is {@code pass} or {@code fail} when there was expected
+     * output to compare with, otherwise {@code ok}; {@code error} when the script exits with a
+     * non-zero code, and {@code crash} when it could not be read or broke the interpreter itself.
+     */
+    public record Outcome(Path script, String status, int exitCode, String digest, int outputBytes,
+                          double parseMillis, double runMillis, List<String> errors) {
+        public boolean passed() {
+            return status.equals("pass") || status.equals("ok");
+        }
+
+        public String toJson() {
+            StringBuilder json = new StringBuilder(160);
+            json.append("{\"script\":").append(quote(script.toString()))
+                    .append(",\"status\":").append(quote(status))
+                    .append(",\"exit\":").append(exitCode)
+                    .append(",\"digest\":").append(digest == null ? "null" : quote(digest))
+                    .append(",\"bytes\":").append(outputBytes)
+                    .append(",\"parseMs\":").append(String.format(Locale.ROOT, "%.3f", parseMillis))
+                    .append(",\"runMs\":").append(String.format(Locale.ROOT, "%.3f", runMillis))
+                    .append(",\"errors\":[");
+            for (int i = 0; i < errors.size(); i++) {
+                if (i > 0) json.append(',');
+                json.append(quote(errors.get(i)));
+            }
+            return json.append("]}").toString();
+        }
+    }
+
+    public BatchRunner(LexorEngine engine, int parallelism) {
+        this(engine, parallelism, null);
+    }
+
+    /** {@code results} may be null. */
+    public BatchRunner(LexorEngine engine, int parallelism, ResultCache results) {
+        if (parallelism < 1) throw new IllegalArgumentException("A batch needs at least one worker.");
+        this.engine = engine;
+        this.parallelism = parallelism;
+        this.results = results;
+    }
+
+    /**
+     * The jobs for every {@code .lxr} file under a directory, in path order, or for every script
+     * named in a list file, one path per line relative to the list; blank lines and lines starting
+     * with {@code #} are skipped.
+     */
+    public static List<Job> jobs(Path directoryOrList) throws IOException {
+        List<Path> scripts;
+        if (Files.isDirectory(directoryOrList)) {
+            try (Stream<Path> files = Files.walk(directoryOrList)) {
+                scripts = files.filter(file -> file.toString().toLowerCase().endsWith(".lxr") && Files.isRegularFile(file))
+                        .sorted()
+                        .toList();
+            }
+        } else {
+            Path base = directoryOrList.toAbsolutePath().getParent();
+            scripts = Files.readAllLines(directoryOrList).stream()
+                    .map(String::strip)
+                    .filter(line -> !line.isEmpty() && !line.startsWith("#"))
+                    .map(base::resolve)
+                    .toList();
+        }
+        List<Job> jobs = new ArrayList<>(scripts.size());
+        for (Path script : scripts) jobs.add(job(script));
+        return jobs;
+    }
+
+    /** The job for {@code script}, with the {@code .in} and {@code .out} files next to it that exist. */
+    public static Job job(Path script) {
+        String name = script.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        String stem = dot > 0 ? name.substring(0, dot) : name;
+        Path input = script.resolveSibling(stem + ".in");
+        Path expected = script.resolveSibling(stem + ".out");
+        return new Job(script, Files.isRegularFile(input) ? input : null, Files.isRegularFile(expected) ? expected : null);
+    }
+
+    /**
+     * Runs every job and returns the outcomes in job order. {@code results} sees each outcome as
+     * its script finishes, one at a time, in no particular order.
+     */
+    public List<Outcome> run(List<Job> jobs, Consumer<Outcome> results) {
+        Outcome[] outcomes = new Outcome[jobs.size()];
+        if (jobs.isEmpty()) return List.of();
+        try (ForkJoinPool pool = new ForkJoinPool(parallelism)) {
+            pool.invoke(new Slice(jobs, outcomes, results, 0, jobs.size()));
+        }
+        return Arrays.asList(outcomes);
+    }
+
+    // Halves its range until one job is left, so idle workers steal the larger unsplit halves.
+    private final class Slice extends RecursiveAction {
+        private final List<Job> jobs;
+        private final Outcome[] outcomes;
+        private final Consumer<Outcome> results;
+        private final int from;
+        private final int to;
+
+        Slice(List<Job> jobs, Outcome[] outcomes, Consumer<Outcome> results, int from, int to) {
+            this.jobs = jobs;
+            this.outcomes = outcomes;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                Outcome outcome = grade(jobs.get(from));
+                outcomes[from] = outcome;
+                synchronized (results) {
+                    results.accept(outcome);
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new Slice(jobs, outcomes, results, from, middle), new Slice(jobs, outcomes, results, middle, to));
+        }
+    }
+
+    Outcome grade(Job job) {
+        String source;
+        String expected;
+        byte[] input;
+        try {
+            source = Files.readString(job.script());
+            expected = job.expected() == null ? null : Files.readString(job.expected());
+            input = job.input() == null ? null : Files.readAllBytes(job.input());
+        } catch (IOException e) {
+            return crash(job.script(), e.toString(), 0, 0);
+        }
+        return grade(job.script(), source, input, expected);
+    }
+
+    /** Runs one script from memory; {@code input} and {@code expected} may be null. */
+    Outcome grade(Path script, String source, byte[] input, String expected) {
+        long start = System.nanoTime();
+        long parsed = start;
+        try {
+            ErrorManager errorManager = new ErrorManager(null);
+            // Only a fully parsed program has a fingerprint.
+            List<Stmt> statements = engine.parse(source, errorManager, results == null && engine.lazyParsing());
+            parsed = System.nanoTime();
+            String key = results == null || errorManager.hadError() ? null : ResultCache.key(statements, input, engine.limits());
+            ResultCache.Result result = key == null ? null : results.load(key);
+            if (result == null) {
+                MemorySink output = new MemorySink();
+                if (!errorManager.hadError()) {
+                    engine.execute(statements, errorManager,
+                            input == null ? InputStream.nullInputStream() : new ByteArrayInputStream(input), output, null);
+                }
+                result = new ResultCache.Result(LexorEngine.result(errorManager).exitCode(), output.toByteArray(),
+                        errorManager.getErrors());
+                if (key != null && !Thread.currentThread().isInterrupted()) remember(key, result);
+            }
+            long ran = System.nanoTime();
+            String printed = new String(result.output(), StandardCharsets.UTF_8);
+            return new Outcome(script, status(result.exitCode(), printed, expected), result.exitCode(),
+                    digest(result.output()), result.output().length, millis(parsed - start), millis(ran - parsed),
+                    messages(result.errors()));
+        } catch (RuntimeException | StackOverflowError e) {
+            // Confined to this script: the rest of the batch carries on.
+            String reason = e instanceof StackOverflowError ? "Stack overflow" : e.toString();
+            return crash(script, reason, millis(parsed - start), millis(System.nanoTime() - parsed));
+        }
+    }
+
+    private void remember(String key, ResultCache.Result result) {
+        try {
+            results.store(key, result);
+        } catch (IOException e) {
+            // Not fatal: the script is just run again next time.
+        }
+    }
+
+    static Outcome crash(Path script, String reason, double parseMillis, double runMillis) {
+        return new Outcome(script, "crash", 70, null, 0, parseMillis, runMillis, List.of(reason));
+    }
+
+    // Line endings and trailing blank space are not graded.
+    static String status(int exitCode, String output, String expected) {
+        if (exitCode != 0) return "error";
+        if (expected == null) return "ok";
+        return normalized(output).equals(normalized(expected)) ? "pass" : "fail";
+    }
+
+    private static String normalized(String text) {
+        return text.replace("\r\n", "\n").stripTrailing();
+    }
+
+    static List<String> messages(List<Error> errors) {
+        List<String> messages = new ArrayList<>(errors.size());
+        for (Error error : errors) {
+            messages.add("[line " + error.line() + "] " + error.errorType() + " ERROR: " + error.message());
+        }
+        return messages;
+    }
+
+    static String digest(byte[] output) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(output));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+
+    static String quote(String text) {
+        StringBuilder quoted = new StringBuilder(text.length() + 2).append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '"' -> quoted.append("\\\"");
+                case '\\' -> quoted.append("\\\\");
+                case '\n' -> quoted.append("\\n");
+                case '\r' -> quoted.append("\\r");
+                case '\t' -> quoted.append("\\t");
+                default -> {
+                    if (c < 0x20) quoted.append(String.format("\\u%04x", (int) c));
+                    else quoted.append(c);
+                }
+            }
+        }
+        return quoted.append('"').toString();
+    }
+}
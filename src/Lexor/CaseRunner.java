@@ -0,0 +1,156 @@
+package Lexor;
+
+import Lexor.io.MemorySink;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Runs one prepared program against many test cases at once. The program is parsed once and its
+ * AST shared by every case; each case gets its own input, output capture, errors and variables.
+ * What the program does before it first reads input is the same for every case, so it is run
+ * once and each case resumes from there (see {@link LexorEngine#start}).
+ * With {@code failFast} the first case that does not pass cancels the rest, interrupting those
+ * already running, and they come back {@code skipped}.
+ */
+public class CaseRunner {
+    private final LexorEngine engine;
+    private final int parallelism;
+
+    /** SCAN input for one run of the program and, unless null, the output it should print. */
+    public record Case(String name, String input, String expected) {}
+
+    /** Same statuses as {@link BatchRunner.Outcome}, plus {@code skipped}. */
+    public record Outcome(String name, String status, int exitCode, String output, double runMillis, List<String> errors) {
+        public boolean passed() {
+            return status.equals("pass") || status.equals("ok");
+        }
+
+        public String toJson() {
+            StringBuilder json = new StringBuilder(160);
+            json.append("{\"case\":").append(BatchRunner.quote(name))
+                    .append(",\"status\":").append(BatchRunner.quote(status))
+                    .append(",\"exit\":").append(exitCode)
+                    .append(",\"digest\":").append(output == null ? "null"
+                            : BatchRunner.quote(BatchRunner.digest(output.getBytes(StandardCharsets.UTF_8))))
+                    .append(",\"runMs\":").append(String.format(Locale.ROOT, "%.3f", runMillis))
+                    .append(",\"errors\":[");
+            for (int i = 0; i < errors.size(); i++) {
+                if (i > 0) json.append(',');
+                json.append(BatchRunner.quote(errors.get(i)));
+            }
+            return json.append("]}").toString();
+        }
+    }
+
+    public CaseRunner(LexorEngine engine, int parallelism) {
+        if (parallelism < 1) throw new IllegalArgumentException("Cases need at least one worker.");
+        this.engine = engine;
+        this.parallelism = parallelism;
+    }
+
+    /** A case for every {@code name.in} in {@code directory}, in name order, expecting {@code name.out} if it exists. */
+    public static List<Case> cases(Path directory) throws IOException {
+        List<Path> inputs;
+        try (Stream<Path> files = Files.list(directory)) {
+            inputs = files.filter(file -> file.getFileName().toString().endsWith(".in")).sorted().toList();
+        }
+        List<Case> cases = new ArrayList<>(inputs.size());
+        for (Path input : inputs) {
+            String name = input.getFileName().toString();
+            name = name.substring(0, name.length() - 3);
+            Path expected = input.resolveSibling(name + ".out");
+            cases.add(new Case(name, Files.readString(input), Files.isRegularFile(expected) ? Files.readString(expected) : null));
+        }
+        return cases;
+    }
+
+    public List<Outcome> run(LexorEngine.Program program, List<Case> cases, boolean failFast) {
+        return run(program, cases, failFast, outcome -> {});
+    }
+
+    /**
+     * Runs every case and returns the outcomes in case order. {@code results} sees each outcome,
+     * skipped ones excepted, as its case finishes, one at a time, in no particular order.
+     */
+    public List<Outcome> run(LexorEngine.Program program, List<Case> cases, boolean failFast, Consumer<Outcome> results) {
+        List<Future<Outcome>> futures = new ArrayList<>(cases.size());
+        // What results saw, by case; guarded by futures, like stopped.
+        Outcome[] reported = new Outcome[cases.size()];
+        boolean[] stopped = {false};
+        LexorEngine.Start start = engine.start(program);
+        try (ExecutorService pool = Executors.newFixedThreadPool(parallelism)) {
+            for (int i = 0; i < cases.size(); i++) {
+                int index = i;
+                Case testCase = cases.get(i);
+                Future<Outcome> submitted = pool.submit(() -> {
+                    Outcome outcome = runCase(program, start, testCase);
+                    synchronized (futures) {
+                        // Finished after the first failure: skipped, even if it was not interrupted in time.
+                        if (stopped[0]) return null;
+                        reported[index] = outcome;
+                        results.accept(outcome);
+                        if (failFast && !outcome.passed()) {
+                            stopped[0] = true;
+                            for (int j = 0; j < futures.size(); j++) {
+                                if (reported[j] == null) futures.get(j).cancel(true);
+                            }
+                        }
+                    }
+                    return outcome;
+                });
+                synchronized (futures) {
+                    futures.add(submitted);
+                    if (stopped[0]) submitted.cancel(true);
+                }
+            }
+        }
+        List<Outcome> outcomes = new ArrayList<>(cases.size());
+        for (int i = 0; i < cases.size(); i++) {
+            outcomes.add(reported[i] != null ? reported[i] : outcome(futures.get(i), cases.get(i)));
+        }
+        return outcomes;
+    }
+
+    // Without a start the program failed before its first input, and each case runs it whole to fail the same way.
+    private Outcome runCase(LexorEngine.Program program, LexorEngine.Start resumable, Case testCase) {
+        long start = System.nanoTime();
+        try {
+            MemorySink output = new MemorySink();
+            ByteArrayInputStream input = new ByteArrayInputStream(testCase.input().getBytes(StandardCharsets.UTF_8));
+            LexorEngine.Result result = resumable == null ? engine.run(program, input, output) : engine.run(resumable, input, output);
+            String printed = output.toString();
+            return new Outcome(testCase.name(), BatchRunner.status(result.exitCode(), printed, testCase.expected()),
+                    result.exitCode(), printed, BatchRunner.millis(System.nanoTime() - start),
+                    BatchRunner.messages(result.errors()));
+        } catch (RuntimeException | StackOverflowError e) {
+            String reason = e instanceof StackOverflowError ? "Stack overflow" : e.toString();
+            return new Outcome(testCase.name(), "crash", 70, null, BatchRunner.millis(System.nanoTime() - start), List.of(reason));
+        }
+    }
+
+    // A case that never reported was skipped, unless it crashed outside runCase.
+    private static Outcome outcome(Future<Outcome> future, Case testCase) {
+        try {
+            if (!future.isCancelled()) future.get();
+        } catch (ExecutionException e) {
+            return new Outcome(testCase.name(), "crash", 70, null, 0, List.of(e.getCause().toString()));
+        } catch (CancellationException | InterruptedException e) {
+            // Reported as skipped.
+        }
+        return new Outcome(testCase.name(), "skipped", 0, null, 0, List.of());
+    }
+}
@@ -0,0 +1,338 @@
+package Lexor;
+
+import Lexor.BatchRunner.Job;
+import Lexor.BatchRunner.Outcome;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Runs a batch across worker processes, so a script that brings down a JVM, for instance by
+ * running it out of memory, only costs its own result. A worker is {@code lexor --worker}
+ * started by a command that may as well run it on another host (through ssh, say): jobs,
+ * sources included, go to its standard input and outcomes come back on its standard output, so
+ * workers need no shared file system. Jobs are dealt out to one queue per worker, and a worker
+ * whose queue runs dry steals from the back of the longest other queue. A worker that dies is
+ * restarted, and the job it was running is tried once more before it is reported as a crash.
+ * So is a worker that does not answer a job within the coordinator's timeout: it is killed.
+ */
+public class Coordinator {
+    private static final int ATTEMPTS = 2;
+    // A worker that keeps dying without finishing a job is given up; the others take its queue.
+    private static final int MAX_FAILURES = 5;
+
+    private final List<String> workerCommand;
+    private final int workers;
+    private final Duration timeout;
+
+    /** {@code workerCommand} starts one worker, e.g. {@link #localWorkerCommand()} followed by {@code --worker}. */
+    public Coordinator(List<String> workerCommand, int workers) {
+        this(workerCommand, workers, null);
+    }
+
+    /** Gives a worker {@code timeout} to answer each job, or as long as it takes when it is null. */
+    public Coordinator(List<String> workerCommand, int workers, Duration timeout) {
+        if (workers < 1) throw new IllegalArgumentException("A coordinator needs at least one worker.");
+        if (timeout != null && !timeout.isPositive()) throw new IllegalArgumentException("Timeout must be positive.");
+        this.workerCommand = List.copyOf(workerCommand);
+        this.workers = workers;
+        this.timeout = timeout;
+    }
+
+    /** Starts {@link Lexor} on this machine with the same Java, JVM options and class path as this one. */
+    public static List<String> localWorkerCommand() {
+        List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        for (String option : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+            // A debugger agent would clash over its port.
+            if (!option.startsWith("-agentlib:jdwp") && !option.startsWith("-Xrunjdwp")) command.add(option);
+        }
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(Lexor.class.getName());
+        return command;
+    }
+
+    /**
+     * Runs every job and returns the outcomes in job order, like {@link BatchRunner#run}:
+     * {@code results} sees each outcome as its script finishes, one at a time.
+     */
+    public List<Outcome> run(List<Job> jobs, Consumer<Outcome> results) {
+        Outcome[] outcomes = new Outcome[jobs.size()];
+        Queues queues = new Queues(jobs.size());
+        try (ExecutorService slots = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < workers; i++) {
+                slots.submit(new Slot(i, jobs, queues, outcomes, results));
+            }
+        }
+        // Only when every worker was given up.
+        for (int i = 0; i < outcomes.length; i++) {
+            if (outcomes[i] == null) {
+                outcomes[i] = BatchRunner.crash(jobs.get(i).script(), "No worker left to run it", 0, 0);
+                synchronized (results) {
+                    results.accept(outcomes[i]);
+                }
+            }
+        }
+        return Arrays.asList(outcomes);
+    }
+
+    private final class Queues {
+        private final List<ArrayDeque<Integer>> queues = new ArrayList<>();
+        private final int[] attempts;
+
+        Queues(int jobs) {
+            for (int i = 0; i < workers; i++) queues.add(new ArrayDeque<>());
+            for (int job = 0; job < jobs; job++) queues.get(job % workers).add(job);
+            attempts = new int[jobs];
+        }
+
+        // The next job from the worker's own queue, else the last one of the longest other queue.
+        synchronized Integer take(int worker) {
+            Integer job = queues.get(worker).pollFirst();
+            if (job != null) return job;
+            ArrayDeque<Integer> longest = null;
+            for (ArrayDeque<Integer> queue : queues) {
+                if (longest == null || queue.size() > longest.size()) longest = queue;
+            }
+            return longest.pollLast();
+        }
+
+        synchronized void retry(int worker, int job) {
+            queues.get(worker).addFirst(job);
+        }
+
+        // Counts a failed attempt at the job; false once it has had all of them.
+        synchronized boolean failed(int job) {
+            return ++attempts[job] < ATTEMPTS;
+        }
+    }
+
+    private final class Slot implements Runnable {
+        private final int index;
+        private final List<Job> jobs;
+        private final Queues queues;
+        private final Outcome[] outcomes;
+        private final Consumer<Outcome> results;
+        private Process process;
+        private DataOutputStream requests;
+        private DataInputStream replies;
+        // Set when the current exchange ran out of time and its worker was killed.
+        private volatile boolean expired;
+
+        Slot(int index, List<Job> jobs, Queues queues, Outcome[] outcomes, Consumer<Outcome> results) {
+            this.index = index;
+            this.jobs = jobs;
+            this.queues = queues;
+            this.outcomes = outcomes;
+            this.results = results;
+        }
+
+        @Override
+        public void run() {
+            int failures = 0;
+            try {
+                Integer next;
+                while (failures < MAX_FAILURES && (next = queues.take(index)) != null) {
+                    int job = next;
+                    Job files = jobs.get(job);
+                    byte[] source;
+                    byte[] input;
+                    byte[] expected;
+                    try {
+                        source = Files.readAllBytes(files.script());
+                        input = files.input() == null ? null : Files.readAllBytes(files.input());
+                        expected = files.expected() == null ? null : Files.readAllBytes(files.expected());
+                    } catch (IOException e) {
+                        deliver(job, BatchRunner.crash(files.script(), e.toString(), 0, 0));
+                        continue;
+                    }
+                    try {
+                        if (process == null) start();
+                    } catch (IOException e) {
+                        failures++;
+                        queues.retry(index, job);
+                        continue;
+                    }
+                    try {
+                        deliver(job, exchange(job, files, source, input, expected));
+                        failures = 0;
+                    } catch (IOException e) {
+                        failures++;
+                        int status = stop();
+                        if (queues.failed(job)) {
+                            queues.retry(index, job);
+                        } else {
+                            String reason = expired ? "Worker did not answer within " + timeout.toMillis() + " ms"
+                                    : "Worker exited with status " + status;
+                            deliver(job, BatchRunner.crash(files.script(), reason, 0, 0));
+                        }
+                    }
+                }
+            } finally {
+                stop();
+            }
+        }
+
+        private void start() throws IOException {
+            process = new ProcessBuilder(workerCommand).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+            requests = new DataOutputStream(new BufferedOutputStream(process.getOutputStream()));
+            replies = new DataInputStream(new BufferedInputStream(process.getInputStream()));
+        }
+
+        private Outcome exchange(int job, Job files, byte[] source, byte[] input, byte[] expected) throws IOException {
+            expired = false;
+            Thread watchdog = timeout == null ? null : Thread.ofVirtual().start(() -> watch(process));
+            try {
+                requests.writeInt(job);
+                writeBytes(requests, source);
+                writeBytes(requests, input);
+                writeBytes(requests, expected);
+                requests.flush();
+                if (replies.readInt() != job) throw new IOException("Worker replied out of turn");
+                return readOutcome(replies, files.script());
+            } finally {
+                if (watchdog != null) {
+                    watchdog.interrupt();
+                    joinUninterruptibly(watchdog);
+                    // Killed just as it answered: the answer stands, but the next job needs a new worker.
+                    if (expired) stop();
+                }
+            }
+        }
+
+        // Kills the worker once the exchange has taken too long; closing its pipes fails the
+        // blocked read or write, and the job goes the way of any other that lost its worker.
+        private void watch(Process worker) {
+            try {
+                Thread.sleep(timeout);
+            } catch (InterruptedException e) {
+                return;
+            }
+            expired = true;
+            worker.destroyForcibly();
+        }
+
+        // Ends the worker, which exits by itself once its input is closed; returns its exit status.
+        private int stop() {
+            if (process == null) return 0;
+            try {
+                requests.close();
+            } catch (IOException e) {
+                // Already gone.
+            }
+            try {
+                if (!process.waitFor(5, TimeUnit.SECONDS)) process.destroyForcibly().waitFor();
+                return process.exitValue();
+            } catch (InterruptedException e) {
+                process.destroyForcibly();
+                Thread.currentThread().interrupt();
+                return -1;
+            } finally {
+                process = null;
+            }
+        }
+
+        private void deliver(int job, Outcome outcome) {
+            outcomes[job] = outcome;
+            synchronized (results) {
+                results.accept(outcome);
+            }
+        }
+    }
+
+    /** The worker side: grades jobs from {@code in} one at a time, replying on {@code out}, until {@code in} ends. */
+    static void serve(BatchRunner runner, InputStream in, OutputStream out) throws IOException {
+        DataInputStream requests = new DataInputStream(new BufferedInputStream(in));
+        DataOutputStream replies = new DataOutputStream(new BufferedOutputStream(out));
+        while (true) {
+            int job;
+            try {
+                job = requests.readInt();
+            } catch (EOFException e) {
+                return;
+            }
+            byte[] source = readBytes(requests);
+            byte[] input = readBytes(requests);
+            byte[] expected = readBytes(requests);
+            Outcome outcome = runner.grade(Path.of("job-" + job + ".lxr"), new String(source, StandardCharsets.UTF_8), input,
+                    expected == null ? null : new String(expected, StandardCharsets.UTF_8));
+            replies.writeInt(job);
+            writeOutcome(replies, outcome);
+            replies.flush();
+        }
+    }
+
+    private static void writeOutcome(DataOutputStream out, Outcome outcome) throws IOException {
+        out.writeUTF(outcome.status());
+        out.writeInt(outcome.exitCode());
+        out.writeUTF(outcome.digest() == null ? "" : outcome.digest());
+        out.writeInt(outcome.outputBytes());
+        out.writeDouble(outcome.parseMillis());
+        out.writeDouble(outcome.runMillis());
+        out.writeInt(outcome.errors().size());
+        for (String error : outcome.errors()) writeBytes(out, error.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Outcome readOutcome(DataInputStream in, Path script) throws IOException {
+        String status = in.readUTF();
+        int exitCode = in.readInt();
+        String digest = in.readUTF();
+        int outputBytes = in.readInt();
+        double parseMillis = in.readDouble();
+        double runMillis = in.readDouble();
+        List<String> errors = new ArrayList<>();
+        for (int i = in.readInt(); i > 0; i--) errors.add(new String(readBytes(in), StandardCharsets.UTF_8));
+        return new Outcome(script, status, exitCode, digest.isEmpty() ? null : digest, outputBytes, parseMillis, runMillis, errors);
+    }
+
+    private static void joinUninterruptibly(Thread thread) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                thread.join();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+
+    // Length-prefixed, -1 for null.
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        if (bytes == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) return null;
+        byte[] bytes = in.readNBytes(length);
+        if (bytes.length != length) throw new EOFException();
+        return bytes;
+    }
+}
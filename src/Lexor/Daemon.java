@@ -0,0 +1,320 @@
+package Lexor;
+
+import Lexor.cache.ProgramCache;
+import Lexor.interpreter.Limits;
+import Lexor.io.MemorySink;
+import Lexor.io.OutputSink;
+import Lexor.io.StreamSink;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Keeps one warmed-up engine resident and runs scripts for clients, so that a run costs a
+ * connection rather than a JVM start. Clients talk to it over a Unix domain socket, or to its
+ * standard input and output, in sessions of ASCII header lines, some followed by a body of as
+ * many bytes as the header says. A request is
+ * <pre>
+ * source &lt;n&gt;            the script, or
+ * path &lt;n&gt;              the path of a script under the daemon's script directory
+ * input &lt;n&gt;             SCAN input (optional)
+ * limit &lt;name&gt; &lt;value&gt;  steps, timeout (ms), output, variables or string (optional, repeatable)
+ * run
+ * </pre>
+ * and the reply is the output as it is flushed, the diagnostics and the exit status:
+ * <pre>
+ * out &lt;n&gt;
+ * err &lt;n&gt;
+ * exit &lt;status&gt;
+ * </pre>
+ * A requested limit can only tighten the daemon's own, and {@code path} is refused unless the
+ * daemon was given a script directory, outside which it reads nothing.
+ * Any number of sessions may follow each other on one connection. Scripts are parsed once and
+ * then served from a {@link ProgramCache}, so a grader sending the same script again only pays
+ * for running it.
+ */
+public class Daemon implements AutoCloseable {
+    // Thousands of typical scripts.
+    private static final long PROGRAM_CACHE_NODES = 1 << 20;
+
+    private final LexorEngine engine;
+    private final ProgramCache programs;
+    // The directory path requests may read from, or null to refuse them.
+    private final Path scripts;
+    private volatile ServerSocketChannel server;
+
+    public Daemon(LexorEngine engine) {
+        this(engine, (Path) null);
+    }
+
+    /** Also serves {@code path} requests for scripts under {@code scripts}, if it is not null. */
+    public Daemon(LexorEngine engine, Path scripts) {
+        this(engine, new ProgramCache(engine, PROGRAM_CACHE_NODES), scripts);
+    }
+
+    public Daemon(LexorEngine engine, ProgramCache programs) {
+        this(engine, programs, null);
+    }
+
+    public Daemon(LexorEngine engine, ProgramCache programs, Path scripts) {
+        this.engine = engine;
+        this.programs = programs;
+        this.scripts = scripts;
+    }
+
+    public ProgramCache.Stats programStats() {
+        return programs.stats();
+    }
+
+    /** Runs the training script over and over for up to {@code budget}, so that the JIT has compiled the interpreter. */
+    public int warmUp(Duration budget) {
+        long end = System.nanoTime() + budget.toNanos();
+        int runs = 0;
+        MemorySink output = new MemorySink();
+        while (System.nanoTime() - end < 0) {
+            byte[] input = String.valueOf(20 + runs % 50).getBytes(StandardCharsets.US_ASCII);
+            engine.run(Training.SCRIPT, new ByteArrayInputStream(input), output, null);
+            output.reset();
+            runs++;
+        }
+        return runs;
+    }
+
+    /** Serves connections on a Unix domain socket at {@code socket}, each on a virtual thread, until {@link #close}d. */
+    public void listen(Path socket) throws IOException {
+        Files.deleteIfExists(socket);
+        try (ServerSocketChannel channel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+             ExecutorService connections = Executors.newVirtualThreadPerTaskExecutor()) {
+            channel.bind(UnixDomainSocketAddress.of(socket));
+            server = channel;
+            while (true) {
+                SocketChannel client;
+                try {
+                    client = channel.accept();
+                } catch (AsynchronousCloseException e) {
+                    return;
+                }
+                connections.submit(() -> {
+                    try (client) {
+                        serve(Channels.newInputStream(client), Channels.newOutputStream(client));
+                    }
+                    return null;
+                });
+            }
+        } finally {
+            Files.deleteIfExists(socket);
+        }
+    }
+
+    /** Stops {@link #listen}ing; sessions under way finish first. */
+    @Override
+    public void close() throws IOException {
+        ServerSocketChannel channel = server;
+        if (channel != null) channel.close();
+    }
+
+    /** Serves the sessions on {@code in} until it ends, replying on {@code out}. */
+    public void serve(InputStream in, OutputStream out) throws IOException {
+        BufferedInputStream requests = new BufferedInputStream(in);
+        BufferedOutputStream replies = new BufferedOutputStream(out);
+        String line;
+        while ((line = readLine(requests)) != null) {
+            String source = null;
+            String problem = null;
+            byte[] input = null;
+            Limits limits = engine.limits();
+            while (!line.equals("run")) {
+                String[] words = line.split(" ");
+                try {
+                    switch (words[0]) {
+                        case "source" -> source = new String(readBody(requests, words), StandardCharsets.UTF_8);
+                        case "path" -> {
+                            String path = new String(readBody(requests, words), StandardCharsets.UTF_8);
+                            try {
+                                source = read(path);
+                            } catch (IOException | InvalidPathException e) {
+                                problem = "Cannot read " + path + ".";
+                            }
+                        }
+                        case "input" -> input = readBody(requests, words);
+                        case "limit" -> limits = limit(limits, engine.limits(), words);
+                        default -> throw new IllegalArgumentException("Unknown request line: " + line);
+                    }
+                } catch (IllegalArgumentException e) {
+                    // The rest of the stream cannot be trusted to line up.
+                    frame(replies, "err", (e.getMessage() + System.lineSeparator()).getBytes(StandardCharsets.UTF_8));
+                    finish(replies, 64);
+                    return;
+                }
+                line = readLine(requests);
+                if (line == null) return;
+            }
+            if (source == null) {
+                frame(replies, "err", ((problem == null ? "No source given." : problem) + System.lineSeparator())
+                        .getBytes(StandardCharsets.UTF_8));
+                finish(replies, problem == null ? 64 : 66);
+                continue;
+            }
+            OutputSink output = new StreamSink(new Frames(replies, "out"), OutputSink.DEFAULT_CAPACITY,
+                    OutputSink.FlushPolicy.ON_SCAN, StandardCharsets.UTF_8);
+            PrintStream diagnostics = new PrintStream(new Frames(replies, "err"), false, StandardCharsets.UTF_8);
+            InputStream scanned = input == null ? InputStream.nullInputStream() : new ByteArrayInputStream(input);
+            LexorEngine.Program program = programs.get(source);
+            // Parsed again to report its errors as they were found, with their places.
+            LexorEngine.Result result = program.hadError()
+                    ? engine.run(source, scanned, output, diagnostics, null, limits)
+                    : engine.run(program, scanned, output, diagnostics, null, limits);
+            diagnostics.flush();
+            finish(replies, result.exitCode());
+        }
+    }
+
+    /**
+     * The client side: runs {@code source} on the daemon at {@code socket}, copying its output
+     * and diagnostics to {@code out} and {@code err}, and returns its exit status.
+     * {@code limits} are request lines such as {@code limit steps 1000}.
+     */
+    public static int request(Path socket, String source, byte[] input, List<String> limits,
+                              OutputStream out, OutputStream err) throws IOException {
+        try (SocketChannel channel = SocketChannel.open(UnixDomainSocketAddress.of(socket))) {
+            ByteArrayOutputStream request = new ByteArrayOutputStream();
+            frame(request, "source", source.getBytes(StandardCharsets.UTF_8));
+            if (input != null) frame(request, "input", input);
+            for (String limit : limits) request.write((limit + "\n").getBytes(StandardCharsets.US_ASCII));
+            request.write("run\n".getBytes(StandardCharsets.US_ASCII));
+            OutputStream toDaemon = Channels.newOutputStream(channel);
+            toDaemon.write(request.toByteArray());
+            toDaemon.flush();
+
+            BufferedInputStream replies = new BufferedInputStream(Channels.newInputStream(channel));
+            String line;
+            while ((line = readLine(replies)) != null) {
+                String[] words = line.split(" ");
+                switch (words[0]) {
+                    case "out" -> out.write(readBody(replies, words));
+                    case "err" -> err.write(readBody(replies, words));
+                    case "exit" -> {
+                        out.flush();
+                        err.flush();
+                        return Integer.parseInt(words[1]);
+                    }
+                    default -> throw new IOException("Unknown reply line: " + line);
+                }
+            }
+            throw new EOFException("The daemon closed the connection before the script ended.");
+        }
+    }
+
+    // A script under the script directory, symbolic links resolved.
+    private String read(String path) throws IOException {
+        if (scripts == null) throw new IOException("No script directory");
+        Path root = scripts.toRealPath();
+        Path file = root.resolve(path).toRealPath();
+        if (!file.startsWith(root) || !Files.isRegularFile(file)) throw new IOException("Outside the script directory");
+        return Files.readString(file);
+    }
+
+    // Sets one limit, no looser than the daemon's own.
+    private static Limits limit(Limits limits, Limits ceiling, String[] words) {
+        if (words.length != 3) throw new IllegalArgumentException("Expected: limit <name> <value>");
+        long value;
+        try {
+            value = Long.parseLong(words[2]);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not a number: " + words[2]);
+        }
+        if (value < 0) throw new IllegalArgumentException("Limits cannot be negative.");
+        return switch (words[1]) {
+            case "steps" -> limits.withSteps(Math.min(value, ceiling.maxSteps()));
+            case "timeout" -> limits.withTimeout(ceiling.timeout() == null || ceiling.timeout().toMillis() > value
+                    ? Duration.ofMillis(value) : ceiling.timeout());
+            case "output" -> limits.withOutputBytes(Math.min(value, ceiling.maxOutputBytes()));
+            case "variables" -> limits.withVariables((int) Math.min(value, ceiling.maxVariables()));
+            case "string" -> limits.withStringLength((int) Math.min(value, ceiling.maxStringLength()));
+            default -> throw new IllegalArgumentException("Unknown limit: " + words[1]);
+        };
+    }
+
+    private static void finish(OutputStream replies, int status) throws IOException {
+        replies.write(("exit " + status + "\n").getBytes(StandardCharsets.US_ASCII));
+        replies.flush();
+    }
+
+    private static void frame(OutputStream out, String kind, byte[] body) throws IOException {
+        out.write((kind + " " + body.length + "\n").getBytes(StandardCharsets.US_ASCII));
+        out.write(body);
+    }
+
+    // An ASCII line without its newline, or null at the end of the stream.
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int b;
+        while ((b = in.read()) != '\n') {
+            if (b < 0) return line.isEmpty() ? null : line.toString();
+            line.append((char) b);
+        }
+        return line.toString();
+    }
+
+    private static byte[] readBody(InputStream in, String[] words) throws IOException {
+        int length;
+        try {
+            length = words.length == 2 ? Integer.parseInt(words[1]) : -1;
+        } catch (NumberFormatException e) {
+            length = -1;
+        }
+        if (length < 0) throw new IllegalArgumentException("Expected: " + words[0] + " <length>");
+        byte[] body = in.readNBytes(length);
+        if (body.length != length) throw new EOFException();
+        return body;
+    }
+
+    // Sends every block written to it as one frame of the given kind.
+    private static final class Frames extends OutputStream {
+        private final OutputStream replies;
+        private final String kind;
+
+        Frames(OutputStream replies, String kind) {
+            this.replies = replies;
+            this.kind = kind;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            if (length == 0) return;
+            replies.write((kind + " " + length + "\n").getBytes(StandardCharsets.US_ASCII));
+            replies.write(bytes, offset, length);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            replies.flush();
+        }
+    }
+}
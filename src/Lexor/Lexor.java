@@ -1,51 +1,298 @@
 package Lexor;
 
-import Lexor.err.ErrorManager;
-import Lexor.interpreter.Interpreter;
-import Lexor.lexer.Lexer;
-import Lexor.lexer.Token;
-import Lexor.parser.Parser;
-import Lexor.parser.ast.Stmt;
+import Lexor.cache.AstCache;
+import Lexor.cache.ResultCache;
+import Lexor.err.Error;
+import Lexor.interpreter.Limits;
 
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
 
 public class Lexor {
-    private static final ErrorManager errorManager = new ErrorManager();
-    private static final Interpreter interpreter = new Interpreter(errorManager);
-    static void main(String[] args) throws IOException{
-        if (args.length == 1){
-            String filePath = args[0];
+    private static boolean lazyParsing = false;
+    private static Path cacheDirectory = null;
+    private static Path resultsDirectory = null;
+    private static Limits limits = Limits.NONE;
+    private static int jobs = Runtime.getRuntime().availableProcessors();
 
-            if (!filePath.toLowerCase().endsWith(".lxr")) {
-                System.err.println("Error: Invalid file extension.");
-                System.err.println("LEXOR can only execute files ending with '.lxr'");
-                System.exit(65);
+    static void main(String[] args) throws IOException{
+        String filePath = null;
+        String batch = null;
+        String cases = null;
+        boolean failFast = false;
+        boolean worker = false;
+        int workers = 0;
+        String workerCommand = null;
+        String daemon = null;
+        boolean serve = false;
+        long warmUp = 0;
+        String connect = null;
+        String scripts = null;
+        String train = null;
+        boolean trainingRun = false;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--lazy")) {
+                lazyParsing = true;
+            } else if (args[i].equals("--cache") && i + 1 < args.length) {
+                cacheDirectory = Paths.get(args[++i]);
+            } else if (args[i].equals("--results") && i + 1 < args.length) {
+                resultsDirectory = Paths.get(args[++i]);
+            } else if (args[i].equals("--max-steps") && i + 1 < args.length) {
+                limits = limits.withSteps(number(args[++i]));
+            } else if (args[i].equals("--timeout") && i + 1 < args.length) {
+                limits = limits.withTimeout(Duration.ofMillis(number(args[++i])));
+            } else if (args[i].equals("--max-output") && i + 1 < args.length) {
+                limits = limits.withOutputBytes(number(args[++i]));
+            } else if (args[i].equals("--max-variables") && i + 1 < args.length) {
+                limits = limits.withVariables((int) Math.min(number(args[++i]), Integer.MAX_VALUE));
+            } else if (args[i].equals("--max-string") && i + 1 < args.length) {
+                limits = limits.withStringLength((int) Math.min(number(args[++i]), Integer.MAX_VALUE));
+            } else if (args[i].equals("--batch") && i + 1 < args.length) {
+                batch = args[++i];
+            } else if (args[i].equals("--cases") && i + 1 < args.length) {
+                cases = args[++i];
+            } else if (args[i].equals("--fail-fast")) {
+                failFast = true;
+            } else if (args[i].equals("--workers") && i + 1 < args.length) {
+                workers = (int) Math.max(1, Math.min(number(args[++i]), 1024));
+            } else if (args[i].equals("--worker-command") && i + 1 < args.length) {
+                workerCommand = args[++i];
+            } else if (args[i].equals("--worker")) {
+                worker = true;
+            } else if (args[i].equals("--daemon") && i + 1 < args.length) {
+                daemon = args[++i];
+            } else if (args[i].equals("--serve")) {
+                serve = true;
+            } else if (args[i].equals("--warm-up") && i + 1 < args.length) {
+                warmUp = number(args[++i]);
+            } else if (args[i].equals("--scripts") && i + 1 < args.length) {
+                scripts = args[++i];
+            } else if (args[i].equals("--connect") && i + 1 < args.length) {
+                connect = args[++i];
+            } else if (args[i].equals("--train") && i + 1 < args.length) {
+                train = args[++i];
+            } else if (args[i].equals("--training-run")) {
+                trainingRun = true;
+            } else if (args[i].equals("--jobs") && i + 1 < args.length) {
+                jobs = (int) Math.max(1, Math.min(number(args[++i]), 1024));
+            } else if (filePath == null && !args[i].startsWith("--")) {
+                filePath = args[i];
+            } else {
+                usage();
             }
-            runFile(args[0]);
-        }else{
-            System.out.println("Usage: lexor <file>");
-            System.exit(64);
         }
+        if (train != null) {
+            runTraining(Paths.get(train), filePath == null ? null : Paths.get(filePath));
+            return;
+        }
+        if (trainingRun) {
+            Training.run(filePath == null ? null : Paths.get(filePath));
+            return;
+        }
+        if ((daemon != null || serve) && filePath == null) {
+            runDaemon(daemon, warmUp, scripts);
+            return;
+        }
+        if (worker && filePath == null) {
+            try (LexorEngine engine = new LexorEngine(lazyParsing, cacheDirectory == null ? null : new AstCache(cacheDirectory), limits)) {
+                Coordinator.serve(new BatchRunner(engine, 1, results()), System.in, new FileOutputStream(FileDescriptor.out));
+            }
+            return;
+        }
+        if (batch != null && filePath == null) {
+            runBatch(batch, workers, workerCommand);
+            return;
+        }
+        if (filePath == null) usage();
+
+        if (!filePath.toLowerCase().endsWith(".lxr")) {
+            System.err.println("Error: Invalid file extension.");
+            System.err.println("LEXOR can only execute files ending with '.lxr'");
+            System.exit(65);
+        }
+        if (cases != null) {
+            runCases(filePath, cases, failFast);
+            return;
+        }
+        if (connect != null) {
+            runRemote(connect, filePath);
+            return;
+        }
+        runFile(filePath);
+    }
+
+    private static void usage() {
+        System.out.println("Usage: lexor [--lazy] [--cache <dir>] [--max-steps <n>] [--timeout <ms>]"
+                + " [--max-output <bytes>] [--max-variables <n>] [--max-string <chars>]"
+                + " [--jobs <n>] (<file> [--cases <dir> [--fail-fast]]"
+                + " | --batch <dir|list> [--results <dir>] [--workers <n> [--worker-command <command>]]"
+                + " | (--daemon <socket> | --serve) [--warm-up <ms>] [--scripts <dir>] | --connect <socket> <file>"
+                + " | --train <archive> [<corpus dir>])");
+        System.exit(64);
+    }
+
+    private static long number(String text) {
+        try {
+            long value = Long.parseLong(text);
+            if (value >= 0) return value;
+        } catch (NumberFormatException e) {
+            // Reported below.
+        }
+        usage();
+        return 0;
     }
 
     static void runFile(String filepath) throws IOException {
         Path filePath = Paths.get(filepath);
 
         String content = Files.readString(filePath);
-        run(content);
-        if(errorManager.hadError()) System.exit(65);
-        if(errorManager.hadRuntimeError()) System.exit(70);
-    }
-    static void run(String input) {
-        Lexer lexer = new Lexer(input, errorManager);
-        List<Token> tokens = lexer.scanTokens();
-        Parser parser = new Parser(tokens, errorManager);
-        List<Stmt> statements = parser.parse();
-        if(errorManager.hadError()) return;
-        interpreter.interpret(statements);
+        AstCache cache = cacheDirectory == null ? null : new AstCache(cacheDirectory);
+        try (LexorEngine engine = new LexorEngine(lazyParsing, cache, limits)) {
+            int status = engine.run(content, System.in, System.out, System.err).exitCode();
+            if (status != 0) System.exit(status);
+        }
+    }
+
+    static void runTraining(Path archive, Path corpus) throws IOException {
+        long start = System.nanoTime();
+        int status;
+        try {
+            status = Training.train(archive, corpus);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            status = 130;
+        } catch (IllegalStateException e) {
+            System.err.println(e.getMessage());
+            System.exit(64);
+            return;
+        }
+        if (status != 0 || !Files.isRegularFile(archive)) {
+            System.err.println("Training failed; no archive was written.");
+            System.exit(status != 0 ? status : 70);
+        }
+        System.err.printf("Wrote %s (%d KB) in %.1f s%n", archive, Files.size(archive) / 1024, (System.nanoTime() - start) / 1e9);
+    }
+
+    // Without a socket, serves sessions on stdin and stdout; path requests only with a script directory.
+    static void runDaemon(String socket, long warmUp, String scripts) throws IOException {
+        AstCache cache = cacheDirectory == null ? null : new AstCache(cacheDirectory);
+        try (LexorEngine engine = new LexorEngine(lazyParsing, cache, limits);
+             Daemon daemon = new Daemon(engine, scripts == null ? null : Paths.get(scripts))) {
+            if (warmUp > 0) {
+                long start = System.nanoTime();
+                int runs = daemon.warmUp(Duration.ofMillis(warmUp));
+                System.err.printf("Warmed up with %d runs in %.2f s%n", runs, (System.nanoTime() - start) / 1e9);
+            }
+            if (socket == null) {
+                daemon.serve(System.in, new FileOutputStream(FileDescriptor.out));
+            } else {
+                Path path = Paths.get(socket);
+                Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                    try {
+                        Files.deleteIfExists(path);
+                    } catch (IOException e) {
+                        // Left behind; the next daemon replaces it.
+                    }
+                }));
+                daemon.listen(path);
+            }
+        }
+    }
+
+    // Input is read up front, to the end.
+    static void runRemote(String socket, String filepath) throws IOException {
+        String content = Files.readString(Paths.get(filepath));
+        byte[] input = System.in.readAllBytes();
+        List<String> requested = new ArrayList<>();
+        if (limits.maxSteps() != Limits.NONE.maxSteps()) requested.add("limit steps " + limits.maxSteps());
+        if (limits.timeout() != null) requested.add("limit timeout " + limits.timeout().toMillis());
+        if (limits.maxOutputBytes() != Limits.NONE.maxOutputBytes()) requested.add("limit output " + limits.maxOutputBytes());
+        if (limits.maxVariables() != Limits.NONE.maxVariables()) requested.add("limit variables " + limits.maxVariables());
+        if (limits.maxStringLength() != Limits.NONE.maxStringLength()) requested.add("limit string " + limits.maxStringLength());
+        int status = Daemon.request(Paths.get(socket), content, input, requested, System.out, System.err);
+        if (status != 0) System.exit(status);
+    }
+
+    // Parses the script once, then one NDJSON line per case on stdout as it finishes, a summary on stderr.
+    static void runCases(String filepath, String directory, boolean failFast) throws IOException {
+        String content = Files.readString(Paths.get(filepath));
+        List<CaseRunner.Case> testCases = CaseRunner.cases(Paths.get(directory));
+        AstCache cache = cacheDirectory == null ? null : new AstCache(cacheDirectory);
+        long start = System.nanoTime();
+        List<CaseRunner.Outcome> outcomes;
+        try (LexorEngine engine = new LexorEngine(lazyParsing, cache, limits)) {
+            LexorEngine.Program program = engine.prepare(content);
+            if (program.hadError()) {
+                for (Error error : program.errors()) {
+                    System.err.printf("[line %d] %s ERROR: %s%n", error.line(), error.errorType(), error.message());
+                }
+                System.exit(65);
+            }
+            outcomes = new CaseRunner(engine, jobs).run(program, testCases, failFast, outcome -> System.out.println(outcome.toJson()));
+        }
+        System.out.flush();
+        long passed = outcomes.stream().filter(CaseRunner.Outcome::passed).count();
+        System.err.printf("%d cases: %d passed, %d failed or skipped, in %.2f s%n",
+                outcomes.size(), passed, outcomes.size() - passed, (System.nanoTime() - start) / 1e9);
+        if (passed != outcomes.size()) System.exit(1);
+    }
+
+    // One NDJSON line per script on stdout as it finishes, a summary on stderr.
+    // With workers, the scripts run in that many worker processes instead of this JVM.
+    static void runBatch(String path, int workers, String workerCommand) throws IOException {
+        List<BatchRunner.Job> batch = BatchRunner.jobs(Paths.get(path));
+        long start = System.nanoTime();
+        List<BatchRunner.Outcome> outcomes;
+        if (workers > 0) {
+            List<String> command = new ArrayList<>(workerCommand == null
+                    ? Coordinator.localWorkerCommand() : List.of(workerCommand.trim().split("\\s+")));
+            command.addAll(engineOptions());
+            command.add("--worker");
+            // A worker stops a script at --timeout by itself; one still silent well after that is hung.
+            Duration answerTimeout = limits.timeout() == null ? null : limits.timeout().plusSeconds(30);
+            outcomes = new Coordinator(command, workers, answerTimeout)
+                    .run(batch, outcome -> System.out.println(outcome.toJson()));
+        } else {
+            AstCache cache = cacheDirectory == null ? null : new AstCache(cacheDirectory);
+            try (LexorEngine engine = new LexorEngine(lazyParsing, cache, limits)) {
+                outcomes = new BatchRunner(engine, jobs, results()).run(batch, outcome -> System.out.println(outcome.toJson()));
+            }
+        }
+        System.out.flush();
+        long passed = outcomes.stream().filter(BatchRunner.Outcome::passed).count();
+        System.err.printf("%d scripts: %d passed, %d failed, in %.2f s%n",
+                outcomes.size(), passed, outcomes.size() - passed, (System.nanoTime() - start) / 1e9);
+        if (passed != outcomes.size()) System.exit(1);
+    }
+
+    private static ResultCache results() {
+        return resultsDirectory == null ? null : new ResultCache(resultsDirectory);
+    }
+
+    // The options that configure the engine, to pass on to workers.
+    private static List<String> engineOptions() {
+        List<String> options = new ArrayList<>();
+        if (lazyParsing) options.add("--lazy");
+        if (cacheDirectory != null) options.addAll(List.of("--cache", cacheDirectory.toString()));
+        if (resultsDirectory != null) options.addAll(List.of("--results", resultsDirectory.toString()));
+        if (limits.maxSteps() != Limits.NONE.maxSteps()) options.addAll(List.of("--max-steps", String.valueOf(limits.maxSteps())));
+        if (limits.timeout() != null) options.addAll(List.of("--timeout", String.valueOf(limits.timeout().toMillis())));
+        if (limits.maxOutputBytes() != Limits.NONE.maxOutputBytes()) {
+            options.addAll(List.of("--max-output", String.valueOf(limits.maxOutputBytes())));
+        }
+        if (limits.maxVariables() != Limits.NONE.maxVariables()) {
+            options.addAll(List.of("--max-variables", String.valueOf(limits.maxVariables())));
+        }
+        if (limits.maxStringLength() != Limits.NONE.maxStringLength()) {
+            options.addAll(List.of("--max-string", String.valueOf(limits.maxStringLength())));
+        }
+        return options;
     }
 }
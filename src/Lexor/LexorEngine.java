@@ -0,0 +1,287 @@
+package Lexor;
+
+import Lexor.cache.AstCache;
+import Lexor.err.Error;
+import Lexor.err.ErrorManager;
+import Lexor.interpreter.Interpreter;
+import Lexor.interpreter.Limits;
+import Lexor.interpreter.Snapshot;
+import Lexor.interpreter.YieldPoint;
+import Lexor.io.InputSource;
+import Lexor.io.MemorySink;
+import Lexor.io.OutputSink;
+import Lexor.io.StreamSink;
+import Lexor.lexer.Lexer;
+import Lexor.parser.Parser;
+import Lexor.parser.ast.FlatAst;
+import Lexor.parser.ast.Stmt;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs LEXOR scripts without any shared mutable state: every run gets its own error manager,
+ * input, output and global environment, so one engine can be used from any number of threads.
+ * {@link #submit} runs each script on a virtual thread of its own, where a SCAN waiting for
+ * input parks only that virtual thread.
+ */
+public class LexorEngine implements AutoCloseable {
+    private final boolean lazyParsing;
+    private final AstCache cache;
+    private final Limits limits;
+    // Made on the first submit: a one-off run never needs it.
+    private ExecutorService executor;
+
+    public record Result(List<Error> errors, boolean hadError, boolean hadRuntimeError, boolean hadLimitError) {
+        /**
+         * The CLI exit status: 75 for a run stopped by one of its {@link Limits}, 65 for a script
+         * with errors, 70 for a runtime error, else 0.
+         */
+        public int exitCode() {
+            if (hadLimitError) return 75;
+            if (hadError) return 65;
+            if (hadRuntimeError) return 70;
+            return 0;
+        }
+    }
+
+    /** A parsed script that any number of runs, on any threads, can share. */
+    public static final class Program {
+        private final List<Stmt> statements;
+        private final List<Error> errors;
+        private int nodes = -1;
+
+        private Program(List<Stmt> statements, List<Error> errors) {
+            this.statements = statements;
+            this.errors = errors;
+        }
+
+        /** Lexical and syntax errors; a program with any cannot run. */
+        public List<Error> errors() {
+            return errors;
+        }
+
+        public boolean hadError() {
+            return !errors.isEmpty();
+        }
+
+        /** How many AST nodes the program holds, a measure of the memory it keeps alive. */
+        public int nodes() {
+            // Racy but idempotent: every thread computes the same count.
+            if (nodes < 0) nodes = FlatAst.size(statements);
+            return nodes;
+        }
+    }
+
+    /**
+     * A prepared program run up to its first top-level statement that reads input, with what it
+     * printed until then. Runs resumed from it only execute the rest of the program.
+     */
+    public static final class Start {
+        private final Program program;
+        private final Snapshot snapshot;
+        private final String output;
+
+        private Start(Program program, Snapshot snapshot, String output) {
+            this.program = program;
+            this.snapshot = snapshot;
+            this.output = output;
+        }
+
+        /** How many top-level statements every resumed run skips. */
+        public int skipped() {
+            return snapshot.position();
+        }
+    }
+
+    public LexorEngine() {
+        this(false, null);
+    }
+
+    /** {@code cache} may be null; it is not consulted when parsing lazily. */
+    public LexorEngine(boolean lazyParsing, AstCache cache) {
+        this(lazyParsing, cache, Limits.NONE);
+    }
+
+    /** Every run gets its own governor enforcing {@code limits}. */
+    public LexorEngine(boolean lazyParsing, AstCache cache, Limits limits) {
+        this.lazyParsing = lazyParsing;
+        this.cache = cache;
+        this.limits = limits;
+    }
+
+    public Result run(String source, InputStream input, OutputStream output) {
+        return run(source, input, output, null);
+    }
+
+    /** Runs {@code source} to completion, also reporting its errors to {@code diagnostics} unless it is null. */
+    public Result run(String source, InputStream input, OutputStream output, PrintStream diagnostics) {
+        return run(source, input, new StreamSink(output), diagnostics);
+    }
+
+    /** Runs {@code source} to completion, printing to {@code output}, which is flushed when the script ends. */
+    public Result run(String source, InputStream input, OutputSink output, PrintStream diagnostics) {
+        return run(source, input, output, diagnostics, null);
+    }
+
+    Result run(String source, InputStream input, OutputSink output, PrintStream diagnostics, YieldPoint yieldPoint) {
+        return run(source, input, output, diagnostics, yieldPoint, limits);
+    }
+
+    /** Runs with {@code limits} in place of the engine's own. */
+    Result run(String source, InputStream input, OutputSink output, PrintStream diagnostics, YieldPoint yieldPoint, Limits limits) {
+        ErrorManager errorManager = new ErrorManager(diagnostics);
+        List<Stmt> statements = parse(source, errorManager);
+        if (!errorManager.hadError()) execute(statements, errorManager, input, output, yieldPoint, limits);
+        return result(errorManager);
+    }
+
+    void execute(List<Stmt> statements, ErrorManager errorManager, InputStream input, OutputSink output, YieldPoint yieldPoint) {
+        execute(statements, errorManager, input, output, yieldPoint, limits);
+    }
+
+    private void execute(List<Stmt> statements, ErrorManager errorManager, InputStream input, OutputSink output,
+                         YieldPoint yieldPoint, Limits limits) {
+        new Interpreter(errorManager, new InputSource(input), output, Interpreter.Dispatch.VISITOR, limits, yieldPoint)
+                .interpret(statements);
+    }
+
+    Limits limits() {
+        return limits;
+    }
+
+    boolean lazyParsing() {
+        return lazyParsing;
+    }
+
+    static Result result(ErrorManager errorManager) {
+        return new Result(errorManager.getErrors(), errorManager.hadError(), errorManager.hadRuntimeError(),
+                errorManager.hadLimitError());
+    }
+
+    /**
+     * Parses {@code source} once for any number of {@link #run(Program, InputStream, OutputSink)}
+     * calls. Block bodies are parsed up front even by a lazy engine, so the program never changes.
+     */
+    public Program prepare(String source) {
+        ErrorManager errorManager = new ErrorManager(null);
+        List<Stmt> statements = parse(source, errorManager, false);
+        return new Program(statements, errorManager.getErrors());
+    }
+
+    /** Runs a prepared program with its own input, output, errors and variables. */
+    public Result run(Program program, InputStream input, OutputSink output) {
+        if (program.hadError()) return new Result(program.errors(), true, false, false);
+        ErrorManager errorManager = new ErrorManager(null);
+        execute(program.statements, errorManager, input, output, null);
+        return result(errorManager);
+    }
+
+    /** Runs a prepared program without errors, with {@code limits} in place of the engine's own. */
+    Result run(Program program, InputStream input, OutputSink output, PrintStream diagnostics, YieldPoint yieldPoint,
+               Limits limits) {
+        ErrorManager errorManager = new ErrorManager(diagnostics);
+        execute(program.statements, errorManager, input, output, yieldPoint, limits);
+        return result(errorManager);
+    }
+
+    /**
+     * Runs a prepared program whose top-level DECLAREs take their starting values from
+     * {@code bindings} where it has the name, converted to the declared type. Once the program
+     * ends, with or without an error, every top-level variable's last value is put in
+     * {@code globals}, which may be the same map: {@code Integer}, {@code Double},
+     * {@code Character}, {@code Boolean} or {@code String}, or null if it never got one.
+     */
+    public Result run(Program program, InputStream input, OutputSink output, Map<String, ?> bindings,
+                      Map<String, Object> globals) {
+        if (program.hadError()) return new Result(program.errors(), true, false, false);
+        ErrorManager errorManager = new ErrorManager(null);
+        Interpreter interpreter = new Interpreter(errorManager, new InputSource(input), output, Interpreter.Dispatch.VISITOR,
+                limits, null);
+        interpreter.bind(bindings);
+        try {
+            interpreter.interpret(program.statements);
+        } finally {
+            globals.putAll(interpreter.globals());
+        }
+        return result(errorManager);
+    }
+
+    /**
+     * Runs {@code program} up to its first input once, for any number of runs to resume from
+     * there; null if the program has errors, or fails or cannot be prepared before then, when
+     * it is best run whole.
+     * A resumed run's steps, time, output and variables include those of the shared part, so it
+     * stops where a whole run would.
+     */
+    public Start start(Program program) {
+        if (program.hadError()) return null;
+        MemorySink output = new MemorySink();
+        Snapshot snapshot;
+        try {
+            snapshot = new Interpreter(new ErrorManager(null), new InputSource(InputStream.nullInputStream()), output,
+                    Interpreter.Dispatch.VISITOR, limits, null).interpretUntilInput(program.statements);
+        } catch (RuntimeException | StackOverflowError e) {
+            // Whatever went wrong, a whole run meets it again and reports it as that run's.
+            return null;
+        }
+        return snapshot == null ? null : new Start(program, snapshot, output.toString());
+    }
+
+    /** Runs the rest of a started program with its own input, output, errors and variables. */
+    public Result run(Start start, InputStream input, OutputSink output) {
+        ErrorManager errorManager = new ErrorManager(null);
+        output.write(start.output);
+        new Interpreter(errorManager, new InputSource(input), output, Interpreter.Dispatch.VISITOR, limits, null)
+                .resume(start.snapshot, start.program.statements);
+        return result(errorManager);
+    }
+
+    public CompletableFuture<Result> submit(String source, InputStream input, OutputStream output) {
+        return CompletableFuture.supplyAsync(() -> run(source, input, output), executor());
+    }
+
+    List<Stmt> parse(String source, ErrorManager errorManager) {
+        return parse(source, errorManager, lazyParsing);
+    }
+
+    List<Stmt> parse(String source, ErrorManager errorManager, boolean lazy) {
+        // Lazily parsed bodies would have to be parsed to be cached, so the two don't mix.
+        boolean cached = cache != null && !lazy;
+        if (cached) {
+            List<Stmt> statements = cache.load(source);
+            if (statements != null) return statements;
+        }
+        List<Stmt> statements = new Parser(new Lexer(source, errorManager).scanTokens(), errorManager, lazy).parse();
+        if (cached && !errorManager.hadError()) {
+            try {
+                cache.store(source, statements);
+            } catch (IOException e) {
+                // Not fatal: the next run of this source just parses it again.
+            }
+        }
+        return statements;
+    }
+
+    private synchronized ExecutorService executor() {
+        if (executor == null) executor = Executors.newVirtualThreadPerTaskExecutor();
+        return executor;
+    }
+
+    /** Waits for submitted scripts to finish. */
+    @Override
+    public void close() {
+        ExecutorService started;
+        synchronized (this) {
+            started = executor;
+        }
+        if (started != null) started.close();
+    }
+}
@@ -0,0 +1,172 @@
+package Lexor;
+
+import Lexor.err.LimitExceeded;
+import Lexor.interpreter.YieldPoint;
+import Lexor.io.OutputSink;
+
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Shares a fixed number of worker slots between any number of script runs. Each run gets its
+ * own virtual thread but only executes while it holds a slot; at its checkpoints a run that has
+ * used up its time slice gives the slot to the next waiting run and queues up again, so a long
+ * loop cannot starve the short scripts behind it. Waiting runs are served highest priority
+ * first and round-robin within a priority. A run waiting for SCAN input gives up its slot.
+ */
+public class ScriptScheduler implements AutoCloseable {
+    private final LexorEngine engine;
+    private final long sliceNanos;
+    private final ExecutorService threads = Executors.newVirtualThreadPerTaskExecutor();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final PriorityQueue<Turn> waiting = new PriorityQueue<>((a, b) ->
+            a.priority != b.priority ? Integer.compare(b.priority, a.priority) : Long.compare(a.ticket, b.ticket));
+    private int free;
+    private long tickets = 0;
+
+    public ScriptScheduler(LexorEngine engine, int workers, Duration slice) {
+        if (workers < 1) throw new IllegalArgumentException("A scheduler needs at least one worker.");
+        this.engine = engine;
+        this.free = workers;
+        this.sliceNanos = slice.toNanos();
+    }
+
+    public CompletableFuture<LexorEngine.Result> submit(String source, InputStream input, OutputSink output) {
+        return submit(source, input, output, 0);
+    }
+
+    /** Runs {@code source}; among waiting runs, those with a higher {@code priority} go first. */
+    public CompletableFuture<LexorEngine.Result> submit(String source, InputStream input, OutputSink output, int priority) {
+        // Queued here rather than on the run's own thread, which may not get a carrier thread
+        // before the running scripts yield.
+        Turn turn = new Turn(priority);
+        turn.enqueue();
+        return CompletableFuture.supplyAsync(() -> {
+            turn.awaitSlot();
+            try {
+                return engine.run(source, input, output, null, turn);
+            } finally {
+                if (turn.holding) turn.release();
+            }
+        }, threads);
+    }
+
+    /** How many runs are waiting for a slot. */
+    public int waiting() {
+        lock.lock();
+        try {
+            return waiting.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Waits for submitted runs to finish. */
+    @Override
+    public void close() {
+        threads.close();
+    }
+
+    private final class Turn implements YieldPoint {
+        private final int priority;
+        private final Condition granted = lock.newCondition();
+        private long ticket;
+        private boolean holding = false;
+        private long sliceEnd;
+
+        Turn(int priority) {
+            this.priority = priority;
+        }
+
+        @Override
+        public void checkpoint() {
+            if (System.nanoTime() - sliceEnd < 0) return;
+            lock.lock();
+            try {
+                // Nobody to make room for: carry on with a fresh slice.
+                if (waiting.isEmpty()) {
+                    sliceEnd = System.nanoTime() + sliceNanos;
+                    return;
+                }
+            } finally {
+                lock.unlock();
+            }
+            release();
+            acquire();
+        }
+
+        @Override
+        public void beforeInput() {
+            release();
+        }
+
+        @Override
+        public void afterInput() {
+            acquire();
+        }
+
+        void acquire() {
+            enqueue();
+            awaitSlot();
+        }
+
+        // Takes a free slot, or joins the queue for one.
+        void enqueue() {
+            lock.lock();
+            try {
+                if (free > 0 && waiting.isEmpty()) {
+                    free--;
+                    holding = true;
+                } else {
+                    ticket = tickets++;
+                    waiting.add(this);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void awaitSlot() {
+            lock.lock();
+            try {
+                while (!holding) {
+                    try {
+                        granted.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        if (!holding) {
+                            waiting.remove(this);
+                            throw new LimitExceeded("Execution interrupted.");
+                        }
+                    }
+                }
+                sliceEnd = System.nanoTime() + sliceNanos;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // Hands the slot straight to the next waiting run, if there is one.
+        void release() {
+            lock.lock();
+            try {
+                holding = false;
+                Turn next = waiting.poll();
+                if (next == null) {
+                    free++;
+                } else {
+                    next.holding = true;
+                    next.granted.signal();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package Lexor;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Makes a class-data archive that shortens start-up. {@link #train} starts a JVM like this one
+ * that runs a few representative scripts and, as it exits, writes out the classes it loaded: an
+ * AOT cache, which also keeps them linked and profiled, on JDK 25 and later, else a dynamic
+ * AppCDS archive. A JVM started with the archive maps those classes in instead of finding,
+ * parsing and verifying them one by one; {@code bin/lexor} passes it on when there is one.
+ */
+final class Training {
+    // Exercises every statement and most operators.
+    static final String SCRIPT = """
+            SCRIPT AREA
+            START SCRIPT
+            DECLARE INT n, i = 0, total = 0, count
+            DECLARE FLOAT average = 0.0, ratio = 1.5
+            DECLARE CHAR grade = 'A'
+            DECLARE BOOL even = "TRUE"
+            DECLARE STRING line = "", name = "student"
+            SCAN: n
+            FOR (count = 0, count < n, count = count + 1)
+            START FOR
+                total = total + count * count % 7
+                line = line & count & ","
+            END FOR
+            REPEAT WHEN (i < n)
+            START REPEAT
+                average = average + i / 3.0 * ratio
+                even = i % 2 == 0 AND NOT (i > n)
+                IF (total >= 90)
+                START IF
+                    grade = 'A'
+                END IF
+                ELSE IF (total >= 50 OR even)
+                START IF
+                    grade = 'B'
+                END IF
+                ELSE
+                START IF
+                    grade = 'C'
+                END IF
+                i = i + 1
+            END REPEAT
+            PRINT: name & " " & total & " " & average & " " & grade & " " & even & $ & line & [#] & $
+            END SCRIPT
+            """;
+
+    // Has errors at every stage, so that error reporting is archived as well.
+    private static final String[] BROKEN = {
+            "SCRIPT AREA\nSTART SCRIPT\nPRINT: (1 +\nEND SCRIPT\n",
+            "SCRIPT AREA\nSTART SCRIPT\nDECLARE INT x\nx = \"text\"\nEND SCRIPT\n",
+            "SCRIPT AREA\nSTART SCRIPT\nPRINT: ~\nEND SCRIPT\n",
+    };
+
+    private Training() {
+    }
+
+    /**
+     * Writes an archive to {@code archive} from a training run over the built-in scripts and those
+     * in {@code corpus}, if any, and returns the exit status of the training JVM. Only classes
+     * from jar files can be archived, so the class path must not name directories.
+     */
+    static int train(Path archive, Path corpus) throws IOException, InterruptedException {
+        for (String entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+            if (Files.isDirectory(Path.of(entry))) {
+                throw new IllegalStateException("Cannot archive classes from the directory " + entry + "; run from a jar.");
+            }
+        }
+        boolean aot = Runtime.version().feature() >= 25;
+        List<String> command = new ArrayList<>();
+        for (String part : Coordinator.localWorkerCommand()) {
+            // An archive already in use cannot be the one being written.
+            if (!part.startsWith("-XX:SharedArchiveFile") && !part.startsWith("-XX:AOTCache")) command.add(part);
+        }
+        command.add(1, (aot ? "-XX:AOTCacheOutput=" : "-XX:ArchiveClassesAtExit=") + archive.toAbsolutePath());
+        command.add("--training-run");
+        if (corpus != null) command.add(corpus.toString());
+        return new ProcessBuilder(command).inheritIO().start().waitFor();
+    }
+
+    /** What the training JVM runs: every script a few times, through the same path as {@code lexor file.lxr}. */
+    static void run(Path corpus) throws IOException {
+        List<String> sources = new ArrayList<>(List.of(SCRIPT));
+        sources.addAll(List.of(BROKEN));
+        if (corpus != null) {
+            for (BatchRunner.Job job : BatchRunner.jobs(corpus)) sources.add(Files.readString(job.script()));
+        }
+        PrintStream discard = new PrintStream(OutputStream.nullOutputStream(), false, StandardCharsets.UTF_8);
+        try (LexorEngine engine = new LexorEngine()) {
+            for (int round = 0; round < 20; round++) {
+                for (String source : sources) {
+                    byte[] input = (round + 5 + "\n").getBytes(StandardCharsets.US_ASCII);
+                    engine.run(source, new ByteArrayInputStream(input), discard, discard);
+                }
+            }
+        }
+    }
+}
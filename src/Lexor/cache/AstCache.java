@@ -0,0 +1,90 @@
+package Lexor.cache;
+
+import Lexor.interpreter.Interpreter;
+import Lexor.parser.ast.Stmt;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * Directory of encoded ASTs keyed by a hash of the source text, the {@link AstCodec} format
+ * version and the interpreter build. Editing the script or rebuilding the interpreter gives a
+ * different key, so stale entries are simply never looked up again.
+ */
+public class AstCache {
+    static final String INTERPRETER_VERSION = interpreterVersion();
+
+    private final Path directory;
+
+    public AstCache(Path directory) {
+        this.directory = directory;
+    }
+
+    public List<Stmt> load(String source) {
+        Path entry = entryFor(source);
+        if (!Files.isRegularFile(entry)) return null;
+        try (FileChannel channel = FileChannel.open(entry, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return AstCodec.decode(buffer);
+        } catch (IOException | RuntimeException e) {
+            // A truncated or foreign file is just a miss; it is overwritten by the next store.
+            return null;
+        }
+    }
+
+    public void store(String source, List<Stmt> statements) throws IOException {
+        Files.createDirectories(directory);
+        Path entry = entryFor(source);
+        Path temporary = Files.createTempFile(directory, entry.getFileName().toString(), ".tmp");
+        try {
+            Files.write(temporary, AstCodec.encode(statements));
+            Files.move(temporary, entry, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    Path entryFor(String source) {
+        return directory.resolve(key(source) + ".lxrc");
+    }
+
+    static String key(String source) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(("LEXOR AST v" + AstCodec.FORMAT_VERSION + " " + INTERPRETER_VERSION + "\n")
+                    .getBytes(StandardCharsets.UTF_8));
+            digest.update(source.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // The packaged version when running from a released jar, otherwise the timestamp of the
+    // classes themselves so that a local rebuild also invalidates the cache.
+    private static String interpreterVersion() {
+        String version = AstCache.class.getPackage().getImplementationVersion();
+        if (version != null) return version;
+        try {
+            Path location = Paths.get(AstCache.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+            if (Files.isDirectory(location)) {
+                location = location.resolve(Interpreter.class.getName().replace('.', '/') + ".class");
+            }
+            return Long.toString(Files.getLastModifiedTime(location).toMillis());
+        } catch (IOException | URISyntaxException | RuntimeException e) {
+            return "dev";
+        }
+    }
+}
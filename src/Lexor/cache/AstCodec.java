@@ -0,0 +1,457 @@
+package Lexor.cache;
+
+import Lexor.lexer.Position;
+import Lexor.lexer.Token;
+import Lexor.lexer.TokenType;
+import Lexor.parser.ast.Expr;
+import Lexor.parser.ast.Stmt;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary form of a parsed program. Nodes are written in pre-order as a tag byte
+ * followed by their fields; integers are variable-length and every string (lexemes and
+ * string literals) is stored once in a table at the front of the stream.
+ */
+public final class AstCodec {
+    public static final int FORMAT_VERSION = 2;
+    private static final int MAGIC = 0x4C585243; // "LXRC"
+
+    private static final TokenType[] TOKEN_TYPES = TokenType.values();
+
+    // Tag 0 is a null node in both namespaces.
+    private static final int STMT_IF = 1, STMT_WHEN = 2, STMT_BLOCK = 3, STMT_EXPRESSION = 4,
+            STMT_PRINT = 5, STMT_SCAN = 6, STMT_DECLARE = 7;
+    private static final int EXPR_ASSIGN = 1, EXPR_BINARY = 2, EXPR_GROUPING = 3, EXPR_LITERAL = 4,
+            EXPR_LOGICAL = 5, EXPR_UNARY = 6, EXPR_VARIABLE = 7;
+    private static final int VALUE_NULL = 0, VALUE_INT = 1, VALUE_DOUBLE = 2, VALUE_STRING = 3,
+            VALUE_CHAR = 4, VALUE_TRUE = 5, VALUE_FALSE = 6;
+
+    private AstCodec() {}
+
+    public static byte[] encode(List<Stmt> statements) {
+        Writer body = new Writer();
+        body.statements(statements);
+
+        Writer out = new Writer();
+        out.fixedInt(MAGIC);
+        out.varint(FORMAT_VERSION);
+        out.varint(body.strings.size());
+        for (String string : body.strings) {
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            out.varint(bytes.length);
+            out.bytes.write(bytes, 0, bytes.length);
+        }
+        byte[] encoded = body.bytes.toByteArray();
+        out.bytes.write(encoded, 0, encoded.length);
+        return out.bytes.toByteArray();
+    }
+
+    public static List<Stmt> decode(ByteBuffer buffer) {
+        Reader in = new Reader(buffer);
+        if (buffer.getInt() != MAGIC || in.varint() != FORMAT_VERSION) {
+            throw new IllegalArgumentException("Not a LEXOR AST stream of format " + FORMAT_VERSION + ".");
+        }
+        int count = in.varint();
+        String[] strings = new String[count];
+        for (int i = 0; i < count; i++) {
+            byte[] bytes = new byte[in.varint()];
+            buffer.get(bytes);
+            strings[i] = bytes.length == 0 ? "" : new String(bytes, StandardCharsets.UTF_8);
+        }
+        in.strings = strings;
+        return in.statements();
+    }
+
+    private static final class Writer {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final List<String> strings = new ArrayList<>();
+        private final Map<String, Integer> stringIndex = new HashMap<>();
+        // Nodes still to write, next one on top, so nesting depth is bounded only by the heap.
+        // A BINARY or LOGICAL comes up a second time, resumed, to write its operator once its
+        // left operand is written.
+        private Object[] pending = new Object[32];
+        private boolean[] resumed = new boolean[32];
+        private int pendingCount = 0;
+
+        void statements(List<Stmt> statements) {
+            varint(statements.size());
+            pushAll(statements);
+            while (pendingCount > 0) {
+                int top = --pendingCount;
+                Object node = pending[top];
+                pending[top] = null;
+                if (!resumed[top]) {
+                    write(node);
+                } else if (node instanceof Expr.Binary binary) {
+                    varint(binary.operator.ordinal());
+                    position(binary.position);
+                } else {
+                    Expr.Logical logical = (Expr.Logical) node;
+                    varint(logical.operator.ordinal());
+                    position(logical.position);
+                }
+            }
+        }
+
+        // Writes the node's tag and own fields and pushes its children, leftmost on top.
+        private void write(Object node) {
+            switch (node) {
+                case null -> bytes.write(0);
+                case Stmt.If stmt -> {
+                    bytes.write(STMT_IF);
+                    push(stmt.elseBranch, false);
+                    push(stmt.thenBranch, false);
+                    push(stmt.condition, false);
+                }
+                case Stmt.When stmt -> {
+                    bytes.write(STMT_WHEN);
+                    push(stmt.body, false);
+                    push(stmt.condition, false);
+                }
+                case Stmt.Block stmt -> {
+                    bytes.write(STMT_BLOCK);
+                    varint(stmt.statements.size());
+                    pushAll(stmt.statements);
+                }
+                case Stmt.Expression stmt -> {
+                    bytes.write(STMT_EXPRESSION);
+                    push(stmt.expression, false);
+                }
+                case Stmt.Print stmt -> {
+                    bytes.write(STMT_PRINT);
+                    push(stmt.expression, false);
+                }
+                case Stmt.Scan stmt -> {
+                    bytes.write(STMT_SCAN);
+                    tokens(stmt.names);
+                }
+                case Stmt.Declare stmt -> {
+                    bytes.write(STMT_DECLARE);
+                    varint(stmt.type.ordinal());
+                    tokens(stmt.names);
+                    varint(stmt.initializer.size());
+                    pushAll(stmt.initializer);
+                }
+                case Expr.Assign expr -> {
+                    bytes.write(EXPR_ASSIGN);
+                    string(expr.name);
+                    position(expr.position);
+                    push(expr.value, false);
+                }
+                case Expr.Binary expr -> {
+                    bytes.write(EXPR_BINARY);
+                    push(expr.right, false);
+                    push(expr, true);
+                    push(expr.left, false);
+                }
+                case Expr.Grouping expr -> {
+                    bytes.write(EXPR_GROUPING);
+                    push(expr.expression, false);
+                }
+                case Expr.Literal expr -> {
+                    bytes.write(EXPR_LITERAL);
+                    value(expr.value);
+                }
+                case Expr.Logical expr -> {
+                    bytes.write(EXPR_LOGICAL);
+                    push(expr.right, false);
+                    push(expr, true);
+                    push(expr.left, false);
+                }
+                case Expr.Unary expr -> {
+                    bytes.write(EXPR_UNARY);
+                    varint(expr.operator.ordinal());
+                    position(expr.position);
+                    push(expr.right, false);
+                }
+                case Expr.Variable expr -> {
+                    bytes.write(EXPR_VARIABLE);
+                    string(expr.name);
+                    position(expr.position);
+                }
+                default -> throw new IllegalArgumentException("Cannot encode " + node.getClass().getSimpleName());
+            }
+        }
+
+        private void pushAll(List<?> nodes) {
+            for (int i = nodes.size() - 1; i >= 0; i--) push(nodes.get(i), false);
+        }
+
+        private void push(Object node, boolean resume) {
+            if (pendingCount == pending.length) {
+                pending = Arrays.copyOf(pending, pendingCount * 2);
+                resumed = Arrays.copyOf(resumed, pendingCount * 2);
+            }
+            pending[pendingCount] = node;
+            resumed[pendingCount] = resume;
+            pendingCount++;
+        }
+
+        void token(Token token) {
+            varint(token.type().ordinal());
+            string(token.lexeme());
+            value(token.literal());
+            varint(token.line());
+            varint(token.column());
+        }
+
+        void position(long position) {
+            varint(Position.line(position));
+            varint(Position.column(position));
+        }
+
+        void tokens(List<Token> tokens) {
+            varint(tokens.size());
+            for (Token token : tokens) token(token);
+        }
+
+        void value(Object value) {
+            if (value == null) {
+                bytes.write(VALUE_NULL);
+            } else if (value instanceof Integer integer) {
+                bytes.write(VALUE_INT);
+                varint(integer);
+            } else if (value instanceof Double number) {
+                bytes.write(VALUE_DOUBLE);
+                long raw = Double.doubleToRawLongBits(number);
+                fixedInt((int) (raw >>> 32));
+                fixedInt((int) raw);
+            } else if (value instanceof String string) {
+                bytes.write(VALUE_STRING);
+                string(string);
+            } else if (value instanceof Character character) {
+                bytes.write(VALUE_CHAR);
+                varint(character);
+            } else if (value instanceof Boolean bool) {
+                bytes.write(bool ? VALUE_TRUE : VALUE_FALSE);
+            } else {
+                throw new IllegalArgumentException("Cannot encode literal of type " + value.getClass().getSimpleName());
+            }
+        }
+
+        void string(String string) {
+            Integer index = stringIndex.get(string);
+            if (index == null) {
+                index = strings.size();
+                strings.add(string);
+                stringIndex.put(string, index);
+            }
+            varint(index);
+        }
+
+        // Zig-zag so that negative integer literals stay short.
+        void varint(int value) {
+            int zigzag = (value << 1) ^ (value >> 31);
+            while ((zigzag & ~0x7F) != 0) {
+                bytes.write((zigzag & 0x7F) | 0x80);
+                zigzag >>>= 7;
+            }
+            bytes.write(zigzag);
+        }
+
+        void fixedInt(int value) {
+            bytes.write(value >>> 24);
+            bytes.write(value >>> 16);
+            bytes.write(value >>> 8);
+            bytes.write(value);
+        }
+    }
+
+    private static final class Reader {
+        // Frame tags: the statement tags, expression tags offset by EXPRESSION, and the root list.
+        private static final int ROOT = 0, EXPRESSION = 8;
+
+        private final ByteBuffer buffer;
+        private String[] strings;
+        // Nodes whose children are still being read, innermost on top, so nesting depth is
+        // bounded only by the heap: their tag, how many children they have, where those start
+        // on the value stack, and the fields read before or between them.
+        private int[] tags = new int[32];
+        private int[] counts = new int[32];
+        private int[] bases = new int[32];
+        private int[] operators = new int[32];
+        private long[] positions = new long[32];
+        private Object[] names = new Object[32];
+        private int frameCount = 0;
+        // Children read so far, in order.
+        private Object[] values = new Object[32];
+        private int valueCount = 0;
+
+        Reader(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @SuppressWarnings("unchecked")
+        List<Stmt> statements() {
+            frame(ROOT, varint());
+            while (true) {
+                int top = frameCount - 1;
+                int tag = tags[top];
+                int read = valueCount - bases[top];
+                if (read == counts[top]) {
+                    Object node = build(top);
+                    if (--frameCount == 0) return (List<Stmt>) node;
+                    add(node);
+                    continue;
+                }
+                if ((tag == EXPRESSION + EXPR_BINARY || tag == EXPRESSION + EXPR_LOGICAL) && read == 1) {
+                    operators[top] = varint();
+                    positions[top] = position();
+                }
+                if (tag == ROOT || tag == STMT_BLOCK || (read > 0 && (tag == STMT_IF || tag == STMT_WHEN))) {
+                    statement();
+                } else {
+                    expression();
+                }
+            }
+        }
+
+        // Reads a leaf statement whole, or the fields of any other and opens its frame.
+        private void statement() {
+            switch (buffer.get()) {
+                case 0 -> add(null);
+                case STMT_IF -> frame(STMT_IF, 3);
+                case STMT_WHEN -> frame(STMT_WHEN, 2);
+                case STMT_BLOCK -> frame(STMT_BLOCK, varint());
+                case STMT_EXPRESSION -> frame(STMT_EXPRESSION, 1);
+                case STMT_PRINT -> frame(STMT_PRINT, 1);
+                case STMT_SCAN -> add(new Stmt.Scan(tokens()));
+                case STMT_DECLARE -> {
+                    int type = varint();
+                    List<Token> declared = tokens();
+                    frame(STMT_DECLARE, varint());
+                    operators[frameCount - 1] = type;
+                    names[frameCount - 1] = declared;
+                }
+                default -> throw new IllegalArgumentException("Unknown statement tag.");
+            }
+        }
+
+        private void expression() {
+            switch (buffer.get()) {
+                case 0 -> add(null);
+                case EXPR_ASSIGN -> {
+                    String name = strings[varint()];
+                    long position = position();
+                    frame(EXPRESSION + EXPR_ASSIGN, 1);
+                    names[frameCount - 1] = name;
+                    positions[frameCount - 1] = position;
+                }
+                case EXPR_BINARY -> frame(EXPRESSION + EXPR_BINARY, 2);
+                case EXPR_GROUPING -> frame(EXPRESSION + EXPR_GROUPING, 1);
+                case EXPR_LITERAL -> add(new Expr.Literal(value()));
+                case EXPR_LOGICAL -> frame(EXPRESSION + EXPR_LOGICAL, 2);
+                case EXPR_UNARY -> {
+                    int operator = varint();
+                    long position = position();
+                    frame(EXPRESSION + EXPR_UNARY, 1);
+                    operators[frameCount - 1] = operator;
+                    positions[frameCount - 1] = position;
+                }
+                case EXPR_VARIABLE -> add(new Expr.Variable(strings[varint()], position()));
+                default -> throw new IllegalArgumentException("Unknown expression tag.");
+            }
+        }
+
+        // Makes the node of a frame whose children have all been read, and pops those children.
+        @SuppressWarnings("unchecked")
+        private Object build(int frame) {
+            int base = bases[frame];
+            Object first = counts[frame] > 0 ? values[base] : null;
+            Object second = counts[frame] > 1 ? values[base + 1] : null;
+            TokenType operator = TOKEN_TYPES[operators[frame]];
+            Object node = switch (tags[frame]) {
+                case ROOT, STMT_BLOCK, STMT_DECLARE -> {
+                    List<Object> children = new ArrayList<>(counts[frame]);
+                    for (int i = base; i < valueCount; i++) children.add(values[i]);
+                    if (tags[frame] == ROOT) yield children;
+                    if (tags[frame] == STMT_BLOCK) yield new Stmt.Block((List<Stmt>) (List<?>) children);
+                    yield new Stmt.Declare((List<Token>) names[frame], (List<Expr>) (List<?>) children, operator);
+                }
+                case STMT_IF -> new Stmt.If((Expr) first, (Stmt) second, (Stmt) values[base + 2]);
+                case STMT_WHEN -> new Stmt.When((Expr) first, (Stmt) second);
+                case STMT_EXPRESSION -> new Stmt.Expression((Expr) first);
+                case STMT_PRINT -> new Stmt.Print((Expr) first);
+                case EXPRESSION + EXPR_ASSIGN -> new Expr.Assign((String) names[frame], (Expr) first, positions[frame]);
+                case EXPRESSION + EXPR_BINARY -> new Expr.Binary((Expr) first, operator, (Expr) second, positions[frame]);
+                case EXPRESSION + EXPR_GROUPING -> new Expr.Grouping((Expr) first);
+                case EXPRESSION + EXPR_LOGICAL -> new Expr.Logical((Expr) first, operator, (Expr) second, positions[frame]);
+                default -> new Expr.Unary(operator, (Expr) first, positions[frame]);
+            };
+            Arrays.fill(values, base, valueCount, null);
+            names[frame] = null;
+            valueCount = base;
+            return node;
+        }
+
+        private void frame(int tag, int count) {
+            if (frameCount == tags.length) {
+                int capacity = frameCount * 2;
+                tags = Arrays.copyOf(tags, capacity);
+                counts = Arrays.copyOf(counts, capacity);
+                bases = Arrays.copyOf(bases, capacity);
+                operators = Arrays.copyOf(operators, capacity);
+                positions = Arrays.copyOf(positions, capacity);
+                names = Arrays.copyOf(names, capacity);
+            }
+            tags[frameCount] = tag;
+            counts[frameCount] = count;
+            bases[frameCount] = valueCount;
+            operators[frameCount] = 0;
+            frameCount++;
+        }
+
+        private void add(Object node) {
+            if (valueCount == values.length) values = Arrays.copyOf(values, valueCount * 2);
+            values[valueCount++] = node;
+        }
+
+        long position() {
+            return Position.of(varint(), varint());
+        }
+
+        Token token() {
+            return new Token(TOKEN_TYPES[varint()], strings[varint()], value(), varint(), varint());
+        }
+
+        List<Token> tokens() {
+            int count = varint();
+            List<Token> tokens = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) tokens.add(token());
+            return tokens;
+        }
+
+        Object value() {
+            return switch (buffer.get()) {
+                case VALUE_NULL -> null;
+                case VALUE_INT -> varint();
+                case VALUE_DOUBLE -> Double.longBitsToDouble(buffer.getLong());
+                case VALUE_STRING -> strings[varint()];
+                case VALUE_CHAR -> (char) varint();
+                case VALUE_TRUE -> true;
+                case VALUE_FALSE -> false;
+                default -> throw new IllegalArgumentException("Unknown literal tag.");
+            };
+        }
+
+        int varint() {
+            int zigzag = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = buffer.get();
+                zigzag |= (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return (zigzag >>> 1) ^ -(zigzag & 1);
+        }
+    }
+}
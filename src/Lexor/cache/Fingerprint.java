@@ -0,0 +1,179 @@
+package Lexor.cache;
+
+import Lexor.lexer.Token;
+import Lexor.parser.ast.Expr;
+import Lexor.parser.ast.Stmt;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A SHA-256 hash of what a program does rather than how it is written. Whitespace and comments
+ * never reach the AST; on top of that positions and parentheses are left out and variables are
+ * numbered in the order they first appear, so programs that differ only in layout and variable
+ * names get the same fingerprint. Variables can be renamed this way because LEXOR declares them
+ * all at the top level, in one scope.
+ */
+public final class Fingerprint {
+    private final DataOutputStream out;
+    private final MessageDigest digest;
+    private final Map<String, Integer> variables = new HashMap<>();
+
+    private Fingerprint() {
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        out = new DataOutputStream(new DigestOutputStream(OutputStream.nullOutputStream(), digest));
+    }
+
+    /** The fingerprint of fully parsed statements, which must not come from a lazy parse. */
+    public static byte[] of(List<Stmt> statements) {
+        Fingerprint fingerprint = new Fingerprint();
+        try {
+            fingerprint.statements(statements);
+            fingerprint.out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return fingerprint.digest.digest();
+    }
+
+    // Walks an explicit stack, next item on top, so nesting depth is bounded only by the heap.
+    // Besides nodes it holds the names a DECLARE numbers and the flags written between children.
+    private void statements(List<Stmt> statements) throws IOException {
+        List<Object> pending = new ArrayList<>();
+        out.writeInt(statements.size());
+        pushAll(pending, statements);
+        while (!pending.isEmpty()) {
+            Object next = pending.removeLast();
+            switch (next) {
+                case Stmt.If stmt -> {
+                    out.writeByte('i');
+                    if (stmt.elseBranch != null) pending.add(stmt.elseBranch);
+                    pending.add(stmt.elseBranch != null);
+                    pending.add(stmt.thenBranch);
+                    pending.add(stmt.condition);
+                }
+                case Stmt.When stmt -> {
+                    out.writeByte('w');
+                    pending.add(stmt.body);
+                    pending.add(stmt.condition);
+                }
+                case Stmt.Block stmt -> {
+                    out.writeByte('b');
+                    out.writeInt(stmt.statements.size());
+                    pushAll(pending, stmt.statements);
+                }
+                case Stmt.Expression stmt -> {
+                    out.writeByte('e');
+                    pending.add(stmt.expression);
+                }
+                case Stmt.Print stmt -> {
+                    out.writeByte('p');
+                    pending.add(stmt.expression);
+                }
+                case Stmt.Scan stmt -> {
+                    out.writeByte('s');
+                    out.writeInt(stmt.names.size());
+                    for (Token name : stmt.names) variable(name.lexeme());
+                }
+                case Stmt.Declare stmt -> {
+                    out.writeByte('d');
+                    out.writeUTF(stmt.type.name());
+                    out.writeInt(stmt.names.size());
+                    for (int i = stmt.names.size() - 1; i >= 0; i--) {
+                        Expr initializer = stmt.initializer.get(i);
+                        if (initializer != null) pending.add(initializer);
+                        pending.add(initializer != null);
+                        pending.add(stmt.names.get(i));
+                    }
+                }
+                case Expr.Assign expr -> {
+                    out.writeByte('=');
+                    variable(expr.name);
+                    pending.add(expr.value);
+                }
+                case Expr.Binary expr -> {
+                    out.writeByte('2');
+                    out.writeUTF(expr.operator.name());
+                    pending.add(expr.right);
+                    pending.add(expr.left);
+                }
+                case Expr.Logical expr -> {
+                    out.writeByte('l');
+                    out.writeUTF(expr.operator.name());
+                    pending.add(expr.right);
+                    pending.add(expr.left);
+                }
+                case Expr.Unary expr -> {
+                    out.writeByte('1');
+                    out.writeUTF(expr.operator.name());
+                    pending.add(expr.right);
+                }
+                // The tree already says how operands group.
+                case Expr.Grouping expr -> pending.add(expr.expression);
+                case Expr.Literal expr -> literal(expr.value);
+                case Expr.Variable expr -> {
+                    out.writeByte('v');
+                    variable(expr.name);
+                }
+                case Token name -> variable(name.lexeme());
+                case Boolean present -> out.writeBoolean(present);
+                default -> throw new IllegalArgumentException("Cannot fingerprint " + next);
+            }
+        }
+    }
+
+    private static void pushAll(List<Object> pending, List<Stmt> statements) {
+        for (int i = statements.size() - 1; i >= 0; i--) pending.add(statements.get(i));
+    }
+
+    private void literal(Object value) throws IOException {
+        switch (value) {
+            case null -> out.writeByte('n');
+            case Integer number -> {
+                out.writeByte('I');
+                out.writeInt(number);
+            }
+            case Double number -> {
+                out.writeByte('F');
+                out.writeDouble(number);
+            }
+            case Character character -> {
+                out.writeByte('C');
+                out.writeChar(character);
+            }
+            case Boolean bool -> {
+                out.writeByte('B');
+                out.writeBoolean(bool);
+            }
+            default -> {
+                out.writeByte('S');
+                out.writeUTF(value.getClass().getSimpleName());
+                String text = value.toString();
+                out.writeInt(text.length());
+                out.writeChars(text);
+            }
+        }
+    }
+
+    private void variable(String name) throws IOException {
+        Integer index = variables.get(name);
+        if (index == null) {
+            index = variables.size();
+            variables.put(name, index);
+        }
+        out.writeInt(index);
+    }
+}
@@ -0,0 +1,151 @@
+package Lexor.cache;
+
+import Lexor.LexorEngine;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Keeps prepared programs in memory, keyed by a SHA-256 hash of their source, for services that
+ * run the same scripts over and over. The programs together may hold at most {@code maxNodes}
+ * AST nodes; past that the least recently used ones are dropped. When several threads ask for
+ * the same source that is not cached yet, one of them parses it and the others wait for its
+ * program. Programs with syntax errors are cached like any other, so they fail just as fast.
+ */
+public class ProgramCache {
+    private final LexorEngine engine;
+    private final long maxNodes;
+    private final ReentrantLock lock = new ReentrantLock();
+    // In access order, least recently used first; entries still being parsed included.
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long nodes = 0;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /** {@code hits} include lookups that waited for another thread's parse; {@code misses} are parses. */
+    public record Stats(long hits, long misses, long evictions, int programs, long nodes) {}
+
+    private static final class Entry {
+        final CompletableFuture<LexorEngine.Program> program = new CompletableFuture<>();
+        // Counted towards the total once parsed.
+        int nodes = 0;
+    }
+
+    public ProgramCache(LexorEngine engine, long maxNodes) {
+        if (maxNodes < 1) throw new IllegalArgumentException("A program cache needs room for at least one node.");
+        this.engine = engine;
+        this.maxNodes = maxNodes;
+    }
+
+    /** The prepared program for {@code source}, parsed by {@link LexorEngine#prepare} unless it is cached. */
+    public LexorEngine.Program get(String source) {
+        String key = key(source);
+        Entry entry;
+        boolean owner = false;
+        lock.lock();
+        try {
+            entry = entries.get(key);
+            if (entry == null) {
+                entry = new Entry();
+                entries.put(key, entry);
+                owner = true;
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (!owner) {
+            hits.increment();
+            try {
+                return entry.program.join();
+            } catch (CompletionException e) {
+                // The owner failed to parse it and has already dropped the entry.
+                throw e.getCause() instanceof RuntimeException cause ? cause : e;
+            }
+        }
+        misses.increment();
+        LexorEngine.Program program;
+        try {
+            program = engine.prepare(source);
+        } catch (RuntimeException | StackOverflowError e) {
+            remove(key, entry);
+            entry.program.completeExceptionally(e);
+            throw e;
+        }
+        admit(key, entry, program.nodes());
+        entry.program.complete(program);
+        return program;
+    }
+
+    public Stats stats() {
+        lock.lock();
+        try {
+            return new Stats(hits.sum(), misses.sum(), evictions.sum(), entries.size(), nodes);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void clear() {
+        lock.lock();
+        try {
+            entries.values().removeIf(entry -> entry.nodes > 0 || entry.program.isDone());
+            nodes = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Counts the parsed program in and drops least recently used ones until the total fits.
+    private void admit(String key, Entry entry, int size) {
+        lock.lock();
+        try {
+            if (entries.get(key) != entry) return;
+            if (size > maxNodes) {
+                // Would push everything else out and still not fit.
+                entries.remove(key);
+                evictions.increment();
+                return;
+            }
+            entry.nodes = size;
+            nodes += size;
+            Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+            while (nodes > maxNodes && eldest.hasNext()) {
+                Entry candidate = eldest.next().getValue();
+                // Entries still being parsed weigh nothing yet.
+                if (candidate == entry || candidate.nodes == 0) continue;
+                nodes -= candidate.nodes;
+                eldest.remove();
+                evictions.increment();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void remove(String key, Entry entry) {
+        lock.lock();
+        try {
+            entries.remove(key, entry);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    static String key(String source) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(source.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
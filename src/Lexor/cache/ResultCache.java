@@ -0,0 +1,100 @@
+package Lexor.cache;
+
+import Lexor.err.Error;
+import Lexor.err.ErrorType;
+import Lexor.interpreter.Limits;
+import Lexor.parser.ast.Stmt;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * Directory of finished runs keyed by the {@link Fingerprint} of the program, a hash of its
+ * SCAN input, the limits it ran under and the interpreter build, for graders that run the same
+ * (or the same but renamed) programs against the same inputs again and again. A LEXOR program
+ * depends on nothing but its input, with two exceptions that {@link #key} and {@link #store}
+ * turn away: a timeout, which depends on the clock, and errors that name a variable or a line,
+ * which are worded differently for each spelling of the program.
+ */
+public class ResultCache {
+    private final Path directory;
+
+    /** {@code errors} can only be errors with no place in the source, such as a step limit. */
+    public record Result(int exitCode, byte[] output, List<Error> errors) {}
+
+    public ResultCache(Path directory) {
+        this.directory = directory;
+    }
+
+    /** The key for a run of fully parsed {@code statements}, or null for a run that must not be cached. */
+    public static String key(List<Stmt> statements, byte[] input, Limits limits) {
+        if (limits.timeout() != null) return null;
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(("LEXOR result " + AstCache.INTERPRETER_VERSION + " " + limits.maxSteps() + " "
+                    + limits.maxOutputBytes() + " " + limits.maxVariables() + " " + limits.maxStringLength() + "\n")
+                    .getBytes(StandardCharsets.UTF_8));
+            digest.update(Fingerprint.of(statements));
+            digest.update(MessageDigest.getInstance("SHA-256").digest(input == null ? new byte[0] : input));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public Result load(String key) {
+        Path entry = directory.resolve(key + ".lxrr");
+        if (!Files.isRegularFile(entry)) return null;
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(entry)))) {
+            int exitCode = in.readInt();
+            List<Error> errors = new ArrayList<>();
+            for (int i = in.readInt(); i > 0; i--) errors.add(new Error(in.readUTF(), 0, 0, ErrorType.valueOf(in.readUTF())));
+            byte[] output = in.readNBytes(in.readInt());
+            if (in.available() != 0) return null;
+            return new Result(exitCode, output, errors);
+        } catch (IOException | RuntimeException e) {
+            // A truncated or foreign file is just a miss; it is overwritten by the next store.
+            return null;
+        }
+    }
+
+    /** Stores {@code result} unless one of its errors has a place in the source; returns whether it did. */
+    public boolean store(String key, Result result) throws IOException {
+        for (Error error : result.errors()) {
+            if (error.line() != 0 || error.column() != 0) return false;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(result.output().length + 64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(result.exitCode());
+            out.writeInt(result.errors().size());
+            for (Error error : result.errors()) {
+                out.writeUTF(error.message());
+                out.writeUTF(error.errorType().name());
+            }
+            out.writeInt(result.output().length);
+            out.write(result.output());
+        }
+        Files.createDirectories(directory);
+        Path entry = directory.resolve(key + ".lxrr");
+        Path temporary = Files.createTempFile(directory, entry.getFileName().toString(), ".tmp");
+        try {
+            Files.write(temporary, bytes.toByteArray());
+            Files.move(temporary, entry, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+        return true;
+    }
+}
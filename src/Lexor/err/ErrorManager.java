@@ -2,17 +2,26 @@ package Lexor.err;
 
 import Lexor.lexer.Token;
 import Lexor.lexer.TokenType;
+import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.List;
 
 public class ErrorManager {
     private final List<Error> errors;
+    private final PrintStream diagnostics;
 
     private boolean hadRuntimeError = false;
+    private boolean hadLimitError = false;
     private boolean hadError = false;
 
     public ErrorManager() {
+        this(System.err);
+    }
+
+    /** Reports errors to {@code diagnostics} as they occur, or only collects them when it is null. */
+    public ErrorManager(PrintStream diagnostics) {
         this.errors = new ArrayList<>();
+        this.diagnostics = diagnostics;
     }
 
     public void lexicalError(int line, int column, char character, String message) {
@@ -24,6 +33,11 @@ public class ErrorManager {
         report(line, column,"", message, ErrorType.SYNTAX);
     }
 
+    /** Reports again an error the lexer found earlier in text that has not changed since. */
+    public void lexerError(Error error) {
+        report(error.line(), error.column(), "", error.message(), error.errorType());
+    }
+
     public void syntaxError(Token token, String message) {
         if (token.type() == TokenType.EOF) {
             report(token.line(), token.column(), " at end", message, ErrorType.SYNTAX);
@@ -38,29 +52,26 @@ public class ErrorManager {
     }
 
     public void runtimeError(RuntimeError error) {
-        if (error.getToken() == null) {
+        if (error instanceof LimitExceeded) {
+            report(0, 0, "", error.getMessage(), ErrorType.LIMIT);
+            hadLimitError = true;
+        } else if (error.getToken() == null) {
             report(0, 0, "", error.getMessage(), ErrorType.RUNTIME);
-            errors.add(new Error(error.getMessage(), 0, 0, ErrorType.RUNTIME));
         }else{
             if(error.getToken().type() == TokenType.NEWLINE){
                 report(error.getToken().line(), error.getToken().column(), " at end of line", error.getMessage(), ErrorType.RUNTIME);
             }else {
                 report(error.getToken().line(), error.getToken().column(), " at '" + error.getToken().lexeme() + "'", error.getMessage(), ErrorType.RUNTIME);
             }
-            errors.add(new Error(
-                    error.getMessage(),
-                    error.getToken().line(),
-                    error.getToken().column(),
-                    ErrorType.RUNTIME
-            ));
         }
 
-
         hadRuntimeError = true;
     }
 
     private void report(int line, int column, String where, String message, ErrorType type) {
-        System.err.printf("[line %d] %s ERROR%s: %s%n", line, type.toString(), where, message);
+        if (diagnostics != null) {
+            diagnostics.printf("[line %d] %s ERROR%s: %s%n", line, type.toString(), where, message);
+        }
 //        printVisualLocation(column);
         errors.add(new Error(message, line, column, type));
 
@@ -76,6 +87,10 @@ public class ErrorManager {
 //        }
 //    }
 
+    public List<Error> getErrors() {
+        return List.copyOf(errors);
+    }
+
     public boolean hadError() {
         return hadError;
     }
@@ -84,9 +99,14 @@ public class ErrorManager {
         return hadRuntimeError;
     }
 
+    public boolean hadLimitError() {
+        return hadLimitError;
+    }
+
     public void reset() {
         errors.clear();
         hadError = false;
         hadRuntimeError = false;
+        hadLimitError = false;
     }
 }
\ No newline at end of file
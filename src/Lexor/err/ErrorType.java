@@ -1,5 +1,5 @@
 package Lexor.err;
 
 public enum ErrorType {
-    LEXICAL, SYNTAX, RUNTIME
+    LEXICAL, SYNTAX, RUNTIME, LIMIT
 }
@@ -0,0 +1,8 @@
+package Lexor.err;
+
+/** Ends a run that went past one of its resource limits, or was interrupted. */
+public class LimitExceeded extends RuntimeError {
+    public LimitExceeded(String message) {
+        super(null, message);
+    }
+}
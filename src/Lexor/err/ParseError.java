@@ -1,3 +1,24 @@
 package Lexor.err;
 
-public class ParseError extends RuntimeException {}
+import Lexor.lexer.Token;
+
+import java.util.List;
+
+public class ParseError extends RuntimeException {
+    private final List<Report> reports;
+
+    public ParseError() {
+        this(List.of());
+    }
+
+    /** A failed parse whose syntax errors are reported by whoever catches it, e.g. a lazily parsed block's. */
+    public ParseError(List<Report> reports) {
+        this.reports = reports;
+    }
+
+    public void reportTo(ErrorManager errorManager) {
+        for (Report report : reports) errorManager.syntaxError(report.token(), report.message());
+    }
+
+    public record Report(Token token, String message) {}
+}
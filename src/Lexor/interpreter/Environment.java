@@ -2,6 +2,7 @@ package Lexor.interpreter;
 
 import Lexor.err.ErrorManager;
 import Lexor.err.RuntimeError;
+import Lexor.lexer.Position;
 import Lexor.lexer.Token;
 import Lexor.lexer.TokenType;
 
@@ -11,6 +12,9 @@ import java.util.Map;
 public class Environment {
     private final Environment enclosing;
     private final Map<String, Variable> values = new HashMap<>();
+    // Variables of a snapshot, shared with every run resumed from it and never written: an
+    // assignment puts the new value in values, which then hides the shared one.
+    private Map<String, Variable> shared = null;
 
     public Environment(){
         this.enclosing = null;
@@ -25,58 +29,123 @@ public class Environment {
         values.put(name.lexeme(), new Variable(type, value));
     }
 
-    Object get(Token name) {
-        if(values.containsKey(name.lexeme())){
-            Variable var = values.get(name.lexeme());
-            if (var.value() == null) {
-                throw new RuntimeError(name, "Variable '" + name.lexeme() + "' has not been initialized.");
-            }
-            return var.value();
+    Object get(String name, long position) {
+        Variable var = lookup(name);
+        if(var == null){
+            throw new RuntimeError(Position.name(name, position),"Undefined variable '" + name + "'");
         }
-        if(enclosing != null){return enclosing.get(name);}
-        throw new RuntimeError(name,"Undefined variable '" + name.lexeme() + "'");
+        if (var.value() == null) {
+            throw new RuntimeError(Position.name(name, position), "Variable '" + name + "' has not been initialized.");
+        }
+        return var.value();
     }
 
     public void assign(Token name, Object value) {
-        if(values.containsKey(name.lexeme())) {
-            Variable var = values.get(name.lexeme());
-            if (value != null) {
-                verifyTypeMatch(name, var.type(), value);
-            }
-            values.put(name.lexeme(), new Variable(var.type(), value));
-            return;
+        assign(name.lexeme(), Position.of(name), value);
+    }
+
+    void assign(String name, long position, Object value) {
+        Environment owner = owner(name);
+        if(owner == null){
+            throw new RuntimeError(Position.name(name, position),"Undefined variable '" + name + "'");
         }
-        if(enclosing != null){
-            enclosing.assign(name, value);
-            return;
+        Variable var = owner.values.get(name);
+        if (var == null) var = owner.shared.get(name);
+        if (value != null && !matches(var.type(), value)) {
+            throw typeMismatch(Position.name(name, position), var.type(), value);
         }
-        throw new RuntimeError(name,"Undefined variable '" + name.lexeme() + "'");
+        owner.values.put(name, new Variable(var.type(), value));
     }
 
-    private void verifyTypeMatch(Token name, TokenType expected, Object value) {
-        boolean isValid = false;
-
-        switch (expected) {
-            case INT_TYPE:
-                isValid = (value instanceof Integer);
-                break;
-            case FLOAT_TYPE:
-                isValid = (value instanceof Double || value instanceof Float);
-                break;
-            case CHAR_TYPE:
-                isValid = (value instanceof Character);
-                break;
-            case BOOL_TYPE:
-                isValid = (value instanceof Boolean);
-                break;
-            case STRING_TYPE:
-                isValid = (value instanceof String);
-                break;
+    Variable lookup(String name) {
+        for(Environment environment = this; environment != null; environment = environment.enclosing){
+            Variable var = environment.values.get(name);
+            if(var == null && environment.shared != null) var = environment.shared.get(name);
+            if(var != null) return var;
+        }
+        return null;
+    }
+
+    Environment owner(String name) {
+        for(Environment environment = this; environment != null; environment = environment.enclosing){
+            if(environment.values.containsKey(name)) return environment;
+            if(environment.shared != null && environment.shared.containsKey(name)) return environment;
         }
+        return null;
+    }
 
-        if (!isValid) {
-            throw new RuntimeError(name, "Type mismatch: Cannot assign " +
-                    value.getClass().getSimpleName() + " to variable of type " + expected);
+    int size() {
+        if (shared == null) return values.size();
+        int size = shared.size();
+        for (String name : values.keySet()) {
+            if (!shared.containsKey(name)) size++;
         }
+        return size;
+    }
+
+    void share(Map<String, Variable> variables) {
+        shared = variables;
+    }
+
+    // An immutable copy for a snapshot. Texts are flattened: runs resumed on other threads
+    // must not append to a shared builder.
+    Map<String, Variable> freeze() {
+        Map<String, Variable> frozen = new HashMap<>();
+        if (shared != null) frozen.putAll(shared);
+        for (Map.Entry<String, Variable> entry : values.entrySet()) {
+            Variable variable = entry.getValue();
+            frozen.put(entry.getKey(), variable.value() instanceof Text text ? new Variable(variable.type(), text.toString()) : variable);
+        }
+        return Map.copyOf(frozen);
+    }
+
+    void store(String name, Variable variable) {
+        values.put(name, variable);
+    }
+
+    Map<String, Object> toHost() {
+        Map<String, Object> host = new HashMap<>();
+        for (Map.Entry<String, Variable> entry : freeze().entrySet()) host.put(entry.getKey(), entry.getValue().value());
+        return host;
+    }
+
+    // Widens and narrows host values to the declared type only where nothing is lost.
+    static Object fromHost(Token name, TokenType type, Object value) {
+        if (value == null) return null;
+        Object converted = switch (type) {
+            case INT_TYPE -> value instanceof Integer || value instanceof Short || value instanceof Byte
+                    ? ((Number) value).intValue()
+                    : value instanceof Long number && number == number.intValue() ? number.intValue() : null;
+            case FLOAT_TYPE -> value instanceof Number number ? number.doubleValue() : null;
+            case CHAR_TYPE -> value instanceof Character ? value
+                    : value instanceof CharSequence text && text.length() == 1 ? text.charAt(0) : null;
+            case BOOL_TYPE -> value instanceof Boolean ? value : null;
+            case STRING_TYPE -> value instanceof CharSequence || value instanceof Character ? value.toString() : null;
+            default -> null;
+        };
+        if (converted == null) throw typeMismatch(name, type, value);
+        return converted;
+    }
+
+    private void verifyTypeMatch(Token name, TokenType expected, Object value) {
+        if (!matches(expected, value)) {
+            throw typeMismatch(name, expected, value);
+        }
+    }
+
+    static RuntimeError typeMismatch(Token name, TokenType expected, Object value) {
+        String kind = value instanceof Text ? "String" : value.getClass().getSimpleName();
+        return new RuntimeError(name, "Type mismatch: Cannot assign " + kind + " to variable of type " + expected);
+    }
+
+    static boolean matches(TokenType expected, Object value) {
+        return switch (expected) {
+            case INT_TYPE -> value instanceof Integer;
+            case FLOAT_TYPE -> value instanceof Double || value instanceof Float;
+            case CHAR_TYPE -> value instanceof Character;
+            case BOOL_TYPE -> value instanceof Boolean;
+            case STRING_TYPE -> value instanceof String || value instanceof Text;
+            default -> false;
+        };
     }
 }
@@ -0,0 +1,217 @@
+package Lexor.interpreter;
+
+import Lexor.err.ErrorManager;
+import Lexor.err.ParseError;
+import Lexor.err.RuntimeError;
+import Lexor.io.InputSource;
+import Lexor.io.OutputSink;
+import Lexor.io.StreamSink;
+import Lexor.lexer.TokenType;
+import Lexor.parser.ast.FlatAst;
+
+import java.util.Arrays;
+
+/**
+ * Evaluates a {@link FlatAst} by walking node indices. Behaves exactly like
+ * {@link Interpreter}, {@link Limits} included; tokens are only rebuilt from the node arrays
+ * when an error is raised.
+ */
+public class FlatInterpreter {
+    private static final TokenType[] TOKEN_TYPES = TokenType.values();
+
+    private final ErrorManager errorManager;
+    private final InputSource input;
+    private final OutputSink output;
+    private final Governor governor;
+    private Environment environment;
+    private FlatAst ast;
+    // Operands of the & chains being concatenated, innermost chain on top.
+    private int[] chainOperands = new int[16];
+    private Object[] chainValues = new Object[16];
+    private int chainCount = 0;
+
+    public FlatInterpreter(ErrorManager errorManager) {
+        this(errorManager, new InputSource(System.in), new StreamSink(System.out));
+    }
+
+    public FlatInterpreter(ErrorManager errorManager, InputSource input, OutputSink output) {
+        this(errorManager, input, output, Limits.NONE);
+    }
+
+    public FlatInterpreter(ErrorManager errorManager, InputSource input, OutputSink output, Limits limits) {
+        this.governor = new Governor(limits, null);
+        this.environment = new Environment();
+        this.errorManager = errorManager;
+        this.input = input;
+        this.output = output;
+        output.limit(limits.maxOutputBytes());
+    }
+
+    public void interpret(FlatAst ast) {
+        this.ast = ast;
+        governor.start();
+        try {
+            for (int i = 0; i < ast.rootCount(); i++) {
+                execute(ast.list(ast.rootStart() + i));
+            }
+        } catch (RuntimeError e) {
+            output.flush();
+            errorManager.runtimeError(e);
+        } catch (ParseError e) {
+            // A lazily parsed block failed to parse when this run entered it.
+            output.flush();
+            e.reportTo(errorManager);
+        } finally {
+            output.flush();
+        }
+    }
+
+    private void execute(int node) {
+        governor.step();
+        switch (ast.kind(node)) {
+            case FlatAst.IF -> {
+                if (Operations.isTruthy(evaluate(ast.first(node)))) execute(ast.second(node));
+                else if (ast.third(node) >= 0) execute(ast.third(node));
+            }
+            case FlatAst.WHEN -> {
+                while (Operations.isTruthy(evaluate(ast.first(node)))) {
+                    execute(ast.second(node));
+                }
+            }
+            case FlatAst.BLOCK -> executeBlock(ast.first(node), ast.second(node), new Environment(environment));
+            case FlatAst.EXPRESSION -> evaluate(ast.first(node));
+            case FlatAst.PRINT -> Operations.print(output, evaluate(ast.first(node)));
+            case FlatAst.SCAN -> scan(node);
+            case FlatAst.DECLARE -> declare(node);
+            default -> throw new IllegalStateException("Node " + node + " is not a statement.");
+        }
+    }
+
+    private void executeBlock(int start, int count, Environment environment) {
+        Environment previous = this.environment;
+        try {
+            this.environment = environment;
+            for (int i = 0; i < count; i++) {
+                execute(ast.list(start + i));
+            }
+        } finally {
+            governor.variables(-environment.size());
+            this.environment = previous;
+        }
+    }
+
+    private void scan(int node) {
+        int start = ast.first(node);
+        int count = ast.second(node);
+        output.beforeInput();
+        governor.beforeInput(input);
+        try {
+            Operations.readInput(input, ast.token(ast.list(start)), count, governor);
+        } finally {
+            governor.afterInput();
+        }
+        for (int i = 0; i < count; i++) {
+            int name = ast.list(start + i);
+            assign(name, Operations.inputValue(input, i, environment, ast.name(name), ast.position(name)));
+        }
+    }
+
+    private void declare(int node) {
+        int start = ast.first(node);
+        TokenType type = TOKEN_TYPES[ast.third(node)];
+        Object value = null;
+        int defined = environment.size();
+        try {
+            for (int i = 0; i < ast.second(node); i++) {
+                int name = ast.list(start + 2 * i);
+                int initializer = ast.list(start + 2 * i + 1);
+                if (initializer >= 0) {
+                    value = evaluate(initializer);
+                }
+                if (value != null && !Environment.matches(type, value)) {
+                    throw Environment.typeMismatch(ast.token(name), type, value);
+                }
+                environment.store(ast.name(name), new Variable(type, value));
+            }
+        } finally {
+            governor.variables(environment.size() - defined);
+        }
+    }
+
+    private Object evaluate(int node) {
+        return switch (ast.kind(node)) {
+            case FlatAst.ASSIGN -> {
+                Object value = evaluate(ast.first(node));
+                assign(node, value);
+                yield value;
+            }
+            case FlatAst.BINARY -> {
+                if (ast.operator(node) == TokenType.AMPERSAND) yield concatenate(node);
+                Object left = evaluate(ast.first(node));
+                Object right = evaluate(ast.second(node));
+                try {
+                    yield Operations.binary(ast.operator(node), left, right);
+                } catch (RuntimeError e) {
+                    throw Operations.at(ast.token(node), e);
+                }
+            }
+            case FlatAst.GROUPING -> evaluate(ast.first(node));
+            case FlatAst.LITERAL -> ast.constant(node);
+            case FlatAst.LOGICAL -> {
+                Object left = evaluate(ast.first(node));
+                if (ast.operator(node) == TokenType.OR) {
+                    if (Operations.isTruthy(left)) yield true;
+                } else if (!Operations.isTruthy(left)) {
+                    yield false;
+                }
+                yield evaluate(ast.second(node));
+            }
+            case FlatAst.UNARY -> {
+                Object operand = evaluate(ast.first(node));
+                try {
+                    yield Operations.unary(ast.operator(node), operand);
+                } catch (RuntimeError e) {
+                    throw Operations.at(ast.token(node), e);
+                }
+            }
+            case FlatAst.VARIABLE -> environment.get(ast.name(node), ast.position(node));
+            default -> throw new IllegalStateException("Node " + node + " is not an expression.");
+        };
+    }
+
+    private Object concatenate(int node) {
+        int base = chainCount;
+        int operand = node;
+        while (ast.kind(operand) == FlatAst.BINARY && ast.operator(operand) == TokenType.AMPERSAND) {
+            pushOperand(ast.second(operand));
+            operand = ast.first(operand);
+        }
+        pushOperand(operand);
+        for (int i = base, j = chainCount - 1; i < j; i++, j--) {
+            int swap = chainOperands[i];
+            chainOperands[i] = chainOperands[j];
+            chainOperands[j] = swap;
+        }
+        try {
+            for (int i = base; i < chainCount; i++) {
+                chainValues[i] = evaluate(chainOperands[i]);
+            }
+            return Operations.concat(chainValues, base, chainCount, governor.maxStringLength());
+        } finally {
+            Arrays.fill(chainValues, base, chainCount, null);
+            chainCount = base;
+        }
+    }
+
+    private void pushOperand(int operand) {
+        if (chainCount == chainOperands.length) {
+            chainOperands = Arrays.copyOf(chainOperands, chainCount * 2);
+            chainValues = Arrays.copyOf(chainValues, chainCount * 2);
+        }
+        chainOperands[chainCount++] = operand;
+    }
+
+    private void assign(int node, Object value) {
+        environment.assign(ast.name(node), ast.position(node), value);
+    }
+}
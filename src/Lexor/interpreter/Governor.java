@@ -0,0 +1,113 @@
+package Lexor.interpreter;
+
+import Lexor.err.LimitExceeded;
+import Lexor.io.InputSource;
+
+/**
+ * Enforces {@link Limits} on a run. Statements are counted down in slices of at most
+ * {@link #SLICE} steps, so {@link #step} is a decrement and a branch; the total, the deadline,
+ * the thread's interrupt flag and the {@link YieldPoint}, if any, are only checked between slices.
+ */
+final class Governor {
+    private static final int SLICE = 4096;
+
+    private final Limits limits;
+    private final YieldPoint yieldPoint;
+    private long started;
+    private long deadline;
+    private long taken;
+    private int granted;
+    private int slice;
+    private long variables = 0;
+
+    Governor(Limits limits, YieldPoint yieldPoint) {
+        this.limits = limits;
+        this.yieldPoint = yieldPoint;
+        start();
+    }
+
+    /** Starts counting steps and time for a new run; live variables carry over. */
+    void start() {
+        taken = 0;
+        started = System.nanoTime();
+        if (limits.timeout() != null) deadline = started + limits.timeout().toNanos();
+        grant();
+    }
+
+    /** Carries on the counts and the clock of the run a snapshot was taken from. */
+    void resume(long steps, long liveVariables, long elapsedNanos) {
+        taken = steps;
+        variables = liveVariables;
+        deadline -= elapsedNanos;
+        grant();
+    }
+
+    long steps() {
+        return taken + granted - slice;
+    }
+
+    long liveVariables() {
+        return variables;
+    }
+
+    long elapsedNanos() {
+        return System.nanoTime() - started;
+    }
+
+    void step() {
+        if (--slice < 0) checkpoint();
+    }
+
+    // The step that ran the slice out is the (granted + 1)th since the last checkpoint.
+    private void checkpoint() {
+        taken += granted + 1L;
+        if (taken > limits.maxSteps()) {
+            throw new LimitExceeded("Step limit of " + limits.maxSteps() + " exceeded.");
+        }
+        if (pastDeadline()) throw timeLimitExceeded();
+        if (Thread.currentThread().isInterrupted()) throw new LimitExceeded("Execution interrupted.");
+        if (yieldPoint != null) yieldPoint.checkpoint();
+        grant();
+    }
+
+    private void grant() {
+        granted = (int) Math.min(SLICE, limits.maxSteps() - taken);
+        slice = granted;
+    }
+
+    private boolean pastDeadline() {
+        return limits.timeout() != null && System.nanoTime() - deadline > 0;
+    }
+
+    private LimitExceeded timeLimitExceeded() {
+        return new LimitExceeded("Time limit of " + limits.timeout().toMillis() + " ms exceeded.");
+    }
+
+    /** Before a SCAN: the time it waits for input counts against the timeout too. */
+    void beforeInput(InputSource input) {
+        if (limits.timeout() != null) input.deadline(deadline);
+        if (yieldPoint != null) yieldPoint.beforeInput();
+    }
+
+    /** The limit a SCAN whose read failed ran into while it waited, or null if the input itself failed. */
+    LimitExceeded inputLimit() {
+        if (pastDeadline()) return timeLimitExceeded();
+        if (Thread.currentThread().isInterrupted()) return new LimitExceeded("Execution interrupted.");
+        return null;
+    }
+
+    void afterInput() {
+        if (yieldPoint != null) yieldPoint.afterInput();
+    }
+
+    void variables(int change) {
+        variables += change;
+        if (variables > limits.maxVariables()) {
+            throw new LimitExceeded("Variable limit of " + limits.maxVariables() + " exceeded.");
+        }
+    }
+
+    int maxStringLength() {
+        return limits.maxStringLength();
+    }
+}
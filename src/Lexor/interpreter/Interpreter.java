@@ -2,37 +2,202 @@ package Lexor.interpreter;
 
 
 import Lexor.err.ErrorManager;
+import Lexor.err.ParseError;
 import Lexor.err.RuntimeError;
-import Lexor.lexer.Lexer;
+import Lexor.io.InputSource;
+import Lexor.io.OutputSink;
+import Lexor.io.StreamSink;
+import Lexor.lexer.Position;
 import Lexor.lexer.Token;
 import Lexor.lexer.TokenType;
 import Lexor.parser.ast.Expr;
+import Lexor.parser.ast.InternedProgram;
 import Lexor.parser.ast.Stmt;
 
+import java.util.Arrays;
 import java.util.List;
-import java.util.Scanner;
+import java.util.Map;
 
 public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
+    /**
+     * How nodes are dispatched to the visit methods: through {@code accept} (one virtual call
+     * per node, megamorphic at the single call site), with a pattern-matching switch over the
+     * sealed node types, or by a loop over explicit statement and expression stacks that never
+     * recurses on the Java stack. The first two hand anything nested deeper than
+     * {@link #MAX_RECURSION} over to the explicit stacks, so in every style nesting depth is
+     * bounded only by the heap. {@link Lexor.util.DispatchBenchmark} compares them.
+     */
+    public enum Dispatch { VISITOR, SWITCH, STACK }
+
     private final ErrorManager errorManager;
+    private final InputSource input;
+    private final OutputSink output;
+    private final Dispatch dispatch;
+    private final Governor governor;
+    private final Environment globals;
     private Environment environment;
+    private Map<String, ?> bindings = Map.of();
+    private InternedProgram program;
+    // While running an interned program: the innermost expression an error came out of.
+    private Expr failed;
+    // VISITOR and SWITCH recurse on the Java stack only this many nodes deep; anything nested
+    // deeper is finished on the explicit stacks below.
+    private static final int MAX_RECURSION = 128;
+    private int depth = 0;
+
+    // STACK dispatch: statements being executed, how far each has got (next statement of a
+    // block, whether an IF has picked its branch) and the environment a block restores on exit.
+    private Stmt[] statements = new Stmt[16];
+    private int[] progress = new int[16];
+    private Environment[] enclosing = new Environment[16];
+    private int statementCount = 0;
+    // STACK dispatch: expressions still to visit, whether their operands are already on the
+    // value stack, and the operand values computed so far.
+    private Expr[] expressions = new Expr[32];
+    private boolean[] expanded = new boolean[32];
+    private int expressionCount = 0;
+    private Object[] values = new Object[32];
+    private int valueCount = 0;
+    // Operands of the & chains being concatenated, innermost chain on top.
+    private Expr[] chainOperands = new Expr[16];
+    private Object[] chainValues = new Object[16];
+    private int chainCount = 0;
 
     public Interpreter(ErrorManager errorManager) {
-        this.environment = new Environment();
+        this(errorManager, Dispatch.VISITOR);
+    }
+
+    public Interpreter(ErrorManager errorManager, Dispatch dispatch) {
+        this(errorManager, new InputSource(System.in), new StreamSink(System.out), dispatch);
+    }
+
+    public Interpreter(ErrorManager errorManager, InputSource input, OutputSink output) {
+        this(errorManager, input, output, Dispatch.VISITOR);
+    }
+
+    public Interpreter(ErrorManager errorManager, InputSource input, OutputSink output, Dispatch dispatch) {
+        this(errorManager, input, output, dispatch, Limits.NONE);
+    }
+
+    public Interpreter(ErrorManager errorManager, InputSource input, OutputSink output, Dispatch dispatch, Limits limits) {
+        this(errorManager, input, output, dispatch, limits, null);
+    }
+
+    /** {@code yieldPoint} may be null. */
+    public Interpreter(ErrorManager errorManager, InputSource input, OutputSink output, Dispatch dispatch, Limits limits,
+                       YieldPoint yieldPoint) {
+        this.governor = new Governor(limits, yieldPoint);
+        this.globals = new Environment();
+        this.environment = globals;
         this.errorManager = errorManager;
+        this.input = input;
+        this.output = output;
+        this.dispatch = dispatch;
+        output.limit(limits.maxOutputBytes());
+    }
+
+    /**
+     * Values from the host for top-level variables: one declared with a name found here starts
+     * with its value, converted to the declared type, in place of its initialiser.
+     */
+    public void bind(Map<String, ?> values) {
+        this.bindings = values;
+    }
+
+    /** The top-level variables as Java values, STRINGs as {@code String}; null for one that never got a value. */
+    public Map<String, Object> globals() {
+        return globals.toHost();
     }
 
     public void interpret(List<Stmt> statements) {
+        governor.start();
+        run(statements);
+    }
+
+    /**
+     * Runs {@code statements} up to the first top-level one that reads input, or to the end, and
+     * returns the state there; null if the run ended in an error, which has been reported.
+     */
+    public Snapshot interpretUntilInput(List<Stmt> statements) {
+        governor.start();
+        int position = 0;
+        while (position < statements.size() && !Snapshot.readsInput(statements.get(position))) position++;
+        if (!run(statements.subList(0, position))) return null;
+        return new Snapshot(position, globals.freeze(), governor.steps(), governor.liveVariables(), governor.elapsedNanos());
+    }
+
+    /**
+     * Runs the rest of the {@code statements} that {@code snapshot} was taken from, on its
+     * variables: they are shared with every other run resumed from it and copied on write.
+     */
+    public void resume(Snapshot snapshot, List<Stmt> statements) {
+        globals.share(snapshot.variables);
+        governor.start();
+        governor.resume(snapshot.steps, snapshot.liveVariables, snapshot.elapsedNanos);
+        run(statements.subList(snapshot.position, statements.size()));
+    }
+
+    // False if the run ended in an error.
+    private boolean run(List<Stmt> statements) {
         try {
             for (Stmt statement : statements) {
                 execute(statement);
             }
+            return true;
         } catch (RuntimeError e) {
+            // Whatever was printed before the error comes out before its report.
+            output.flush();
             errorManager.runtimeError(e);
+        } catch (ParseError e) {
+            // A lazily parsed block failed to parse when this run entered it.
+            output.flush();
+            e.reportTo(errorManager);
+        } finally {
+            output.flush();
+        }
+        return false;
+    }
+
+    public void interpret(InternedProgram program) {
+        this.program = program;
+        this.failed = null;
+        try {
+            interpret(program.statements());
+        } finally {
+            this.program = null;
         }
     }
 
     private void execute(Stmt statement) {
-        statement.accept(this);
+        if (dispatch == Dispatch.STACK || depth >= MAX_RECURSION) {
+            executeOnStack(statement);
+            return;
+        }
+        governor.step();
+        depth++;
+        try {
+            dispatch(statement);
+        } catch (RuntimeError e) {
+            throw program == null ? e : program.locate(statement, failed, e);
+        } finally {
+            depth--;
+        }
+    }
+
+    private void dispatch(Stmt statement) {
+        if (dispatch == Dispatch.VISITOR) {
+            statement.accept(this);
+            return;
+        }
+        switch (statement) {
+            case Stmt.If stmt -> visitIfStmt(stmt);
+            case Stmt.When stmt -> visitWhenStmt(stmt);
+            case Stmt.Block stmt -> visitBlockStmt(stmt);
+            case Stmt.Expression stmt -> visitExpressionStmt(stmt);
+            case Stmt.Print stmt -> visitPrintStmt(stmt);
+            case Stmt.Scan stmt -> visitScanStmt(stmt);
+            case Stmt.Declare stmt -> visitDeclareStmt(stmt);
+        }
     }
 
     private void executeBlock(List<Stmt> statements, Environment environment) {
@@ -43,118 +208,269 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
                 execute(statement);
             }
         } finally {
+            governor.variables(-environment.size());
             this.environment = previous;
         }
     }
 
-    private String stringify(Object object) {
-        if (object == null) return "NULL";
-        if (object instanceof Boolean) return (boolean) object ? "TRUE" : "FALSE";
-        if (object instanceof Character) return object.toString();
-        if (object instanceof Variable) return ((Variable) object).value().toString();
+    private void executeOnStack(Stmt root) {
+        int base = statementCount;
+        pushStatement(root);
+        try {
+            while (statementCount > base) {
+                governor.step();
+                int top = statementCount - 1;
+                switch (statements[top]) {
+                    case Stmt.Block stmt -> {
+                        int next = progress[top]++;
+                        if (next == 0) {
+                            enclosing[top] = environment;
+                            environment = new Environment(environment);
+                        }
+                        if (next < stmt.statements.size()) {
+                            pushStatement(stmt.statements.get(next));
+                        } else {
+                            governor.variables(-environment.size());
+                            environment = enclosing[top];
+                            popStatement();
+                        }
+                    }
+                    case Stmt.If stmt -> {
+                        if (progress[top]++ > 0) {
+                            popStatement();
+                        } else if (isTruthy(evaluate(stmt.condition))) {
+                            pushStatement(stmt.thenBranch);
+                        } else if (stmt.elseBranch != null) {
+                            pushStatement(stmt.elseBranch);
+                        }
+                    }
+                    case Stmt.When stmt -> {
+                        if (isTruthy(evaluate(stmt.condition))) pushStatement(stmt.body);
+                        else popStatement();
+                    }
+                    case Stmt.Expression stmt -> {
+                        evaluate(stmt.expression);
+                        popStatement();
+                    }
+                    case Stmt.Print stmt -> {
+                        visitPrintStmt(stmt);
+                        popStatement();
+                    }
+                    case Stmt.Scan stmt -> {
+                        visitScanStmt(stmt);
+                        popStatement();
+                    }
+                    case Stmt.Declare stmt -> {
+                        visitDeclareStmt(stmt);
+                        popStatement();
+                    }
+                }
+            }
+        } catch (RuntimeError e) {
+            // Innermost statement first, as the nested execute calls of the other styles do.
+            if (program != null) {
+                for (int i = statementCount - 1; i >= base; i--) e = program.locate(statements[i], failed, e);
+            }
+            throw e;
+        } finally {
+            while (statementCount > base) {
+                Environment restore = enclosing[statementCount - 1];
+                if (restore != null) {
+                    governor.variables(-environment.size());
+                    environment = restore;
+                }
+                popStatement();
+            }
+        }
+    }
+
+    private void pushStatement(Stmt statement) {
+        if (statementCount == statements.length) {
+            statements = Arrays.copyOf(statements, statementCount * 2);
+            progress = Arrays.copyOf(progress, statementCount * 2);
+            enclosing = Arrays.copyOf(enclosing, statementCount * 2);
+        }
+        statements[statementCount] = statement;
+        progress[statementCount] = 0;
+        enclosing[statementCount] = null;
+        statementCount++;
+    }
+
+    private void popStatement() {
+        statementCount--;
+        statements[statementCount] = null;
+        enclosing[statementCount] = null;
+    }
 
-        if (object instanceof Double) {
-            String text = object.toString();
-            if (text.endsWith(".0")) {
-                text = text.substring(0, text.length() - 2);
+    // Leaves are evaluated as soon as they are reached; only operators wait on the stack for
+    // their operands. The instanceof chain is cheaper than a type switch on this hot path.
+    private Object evaluateOnStack(Expr root) {
+        int base = expressionCount;
+        int valueBase = valueCount;
+        Expr expr = root;
+        try {
+            visit(root);
+            while (expressionCount > base) {
+                int top = --expressionCount;
+                expr = expressions[top];
+                expressions[top] = null;
+                if (!expanded[top]) {
+                    visit(expr);
+                } else if (expr instanceof Expr.Binary binary) {
+                    Object right = values[--valueCount];
+                    Object left = values[--valueCount];
+                    if (binary.operator == TokenType.AMPERSAND) {
+                        values[valueCount++] = Operations.concat(new Object[] {left, right}, 0, 2, governor.maxStringLength());
+                        continue;
+                    }
+                    try {
+                        values[valueCount++] = Operations.binary(binary.operator, left, right);
+                    } catch (RuntimeError e) {
+                        throw Operations.at(Position.operator(binary.operator, binary.position), e);
+                    }
+                } else if (expr instanceof Expr.Assign assign) {
+                    environment.assign(assign.name, assign.position, values[valueCount - 1]);
+                } else if (expr instanceof Expr.Logical logical) {
+                    Object left = values[--valueCount];
+                    if (logical.operator == TokenType.OR ? isTruthy(left) : !isTruthy(left)) {
+                        values[valueCount++] = logical.operator == TokenType.OR;
+                    } else {
+                        expr = logical.right;
+                        visit(expr);
+                    }
+                } else {
+                    Expr.Unary unary = (Expr.Unary) expr;
+                    Object operand = values[--valueCount];
+                    try {
+                        values[valueCount++] = Operations.unary(unary.operator, operand);
+                    } catch (RuntimeError e) {
+                        throw Operations.at(Position.operator(unary.operator, unary.position), e);
+                    }
+                }
             }
-            return text;
+            return values[--valueCount];
+        } catch (RuntimeException | Error e) {
+            if (e instanceof RuntimeError && program != null && failed == null) failed = expr;
+            Arrays.fill(expressions, base, expressionCount, null);
+            Arrays.fill(values, valueBase, valueCount, null);
+            expressionCount = base;
+            valueCount = valueBase;
+            throw e;
         }
+    }
 
-        return object.toString();
+    // Pushes the value of a leaf, or the operator with its operands above it (rightmost first,
+    // so the leftmost operand is evaluated first).
+    private void visit(Expr expr) {
+        if (expressionCount + 3 > expressions.length) {
+            expressions = Arrays.copyOf(expressions, expressions.length * 2);
+            expanded = Arrays.copyOf(expanded, expanded.length * 2);
+        }
+        if (valueCount + 1 > values.length) values = Arrays.copyOf(values, values.length * 2);
+        if (expr instanceof Expr.Variable variable) {
+            values[valueCount++] = environment.get(variable.name, variable.position);
+        } else if (expr instanceof Expr.Literal literal) {
+            values[valueCount++] = literal.value;
+        } else if (expr instanceof Expr.Binary binary) {
+            pushExpression(binary, true);
+            pushExpression(binary.right, false);
+            pushExpression(binary.left, false);
+        } else if (expr instanceof Expr.Grouping grouping) {
+            pushExpression(grouping.expression, false);
+        } else if (expr instanceof Expr.Assign assign) {
+            pushExpression(assign, true);
+            pushExpression(assign.value, false);
+        } else if (expr instanceof Expr.Logical logical) {
+            pushExpression(logical, true);
+            pushExpression(logical.left, false);
+        } else {
+            Expr.Unary unary = (Expr.Unary) expr;
+            pushExpression(unary, true);
+            pushExpression(unary.right, false);
+        }
+    }
+
+    private void pushExpression(Expr expr, boolean operandsReady) {
+        expressions[expressionCount] = expr;
+        expanded[expressionCount] = operandsReady;
+        expressionCount++;
     }
 
     private Object evaluate(Expr expr) {
-        return expr.accept(this);
+        if (dispatch == Dispatch.STACK || depth >= MAX_RECURSION) return evaluateOnStack(expr);
+        depth++;
+        try {
+            if (dispatch == Dispatch.VISITOR) return expr.accept(this);
+            return switch (expr) {
+                case Expr.Assign assign -> visitAssignExpr(assign);
+                case Expr.Binary binary -> visitBinaryExpr(binary);
+                case Expr.Grouping grouping -> visitGroupingExpr(grouping);
+                case Expr.Literal literal -> visitLiteralExpr(literal);
+                case Expr.Logical logical -> visitLogicalExpr(logical);
+                case Expr.Unary unary -> visitUnaryExpr(unary);
+                case Expr.Variable variable -> visitVariableExpr(variable);
+            };
+        } catch (RuntimeError e) {
+            if (program != null && failed == null) failed = expr;
+            throw e;
+        } finally {
+            depth--;
+        }
     }
 
     @Override
     public Object visitAssignExpr(Expr.Assign expr) {
         Object value = evaluate(expr.value);
-        if(expr.name.type() == TokenType.IDENTIFIER) environment.assign(expr.name, value);
-        else throw new RuntimeError(expr.name, "Invalid assignment target.");
+        environment.assign(expr.name, expr.position, value);
         return value;
     }
 
     @Override
     public Object visitBinaryExpr(Expr.Binary expr) {
+        if (expr.operator == TokenType.AMPERSAND) return concatenate(expr);
         Object left = evaluate(expr.left);
         Object right = evaluate(expr.right);
 
-        return switch (expr.operator.type()) {
-            case MINUS -> {
-                checkNumberOperand(expr.operator, left, right);
-                if (left instanceof Double || right instanceof Double) {
-                    yield toDouble(left) - toDouble(right);
-                }
-                yield (int) left - (int) right;
-            }
-            case PLUS -> {
-                checkNumberOperand(expr.operator, left, right);
-                if (left instanceof Double || right instanceof Double) {
-                    yield toDouble(left) + toDouble(right);
-                }
-                yield (int) left + (int) right;
-            }
-            case SLASH -> {
-                checkNumberOperand(expr.operator, left, right);
-                if (left instanceof Double || right instanceof Double) {
-                    yield toDouble(left) / toDouble(right);
-                }
-                if ((int) right == 0) throw new RuntimeError(expr.operator, "Cannot divide by zero.");
-                yield (int) left / (int) right;
-            }
-            case STAR -> {
-                checkNumberOperand(expr.operator, left, right);
-                if (left instanceof Double || right instanceof Double) {
-                    yield toDouble(left) * toDouble(right);
-                }
-                yield (int) left * (int) right;
-            }
-            case GREATER -> {
-                checkNumberOperand(expr.operator, left, right);
-                yield toDouble(left) > toDouble(right);
-            }
-            case GREATER_EQUAL -> {
-                checkNumberOperand(expr.operator, left, right);
-                yield toDouble(left) >= toDouble(right);
-            }
-            case LESS -> {
-                checkNumberOperand(expr.operator, left, right);
-                yield toDouble(left) < toDouble(right);
-            }
-            case LESS_EQUAL -> {
-                checkNumberOperand(expr.operator, left, right);
-                yield toDouble(left) <= toDouble(right);
-            }
-            case EQUAL_EQUAL -> isEqual(left, right);
-            case NOT_EQUAL -> !isEqual(left, right);
-            case MOD -> {
-                checkNumberOperand(expr.operator, left, right);
-                if (left instanceof Double || right instanceof Double) {
-                    yield toDouble(left) % toDouble(right);
-                }
-                yield (int) left % (int) right;
-            }
-            case AMPERSAND -> stringify(left) + stringify(right);
-            default -> null;
-        };
-    }
-
-    private double toDouble(Object object) {
-        if (object instanceof Number) return ((Number) object).doubleValue();
-        throw new RuntimeException("Not a number.");
+        try {
+            return Operations.binary(expr.operator, left, right);
+        } catch (RuntimeError e) {
+            throw Operations.at(Position.operator(expr.operator, expr.position), e);
+        }
     }
 
-    private void checkNumberOperand(Token operator, Object left, Object right) {
-        if (!(left instanceof Number) || !(right instanceof Number))
-            throw new RuntimeError(operator, "Operands must be numbers.");
+    // Evaluates a & b & ... & z left to right and builds the result in one presized pass,
+    // instead of one intermediate string per operator.
+    private Object concatenate(Expr.Binary expr) {
+        int base = chainCount;
+        Expr operand = expr;
+        while (operand instanceof Expr.Binary binary && binary.operator == TokenType.AMPERSAND) {
+            pushOperand(binary.right);
+            operand = binary.left;
+        }
+        pushOperand(operand);
+        for (int i = base, j = chainCount - 1; i < j; i++, j--) {
+            Expr swap = chainOperands[i];
+            chainOperands[i] = chainOperands[j];
+            chainOperands[j] = swap;
+        }
+        try {
+            for (int i = base; i < chainCount; i++) {
+                chainValues[i] = evaluate(chainOperands[i]);
+            }
+            return Operations.concat(chainValues, base, chainCount, governor.maxStringLength());
+        } finally {
+            Arrays.fill(chainOperands, base, chainCount, null);
+            Arrays.fill(chainValues, base, chainCount, null);
+            chainCount = base;
+        }
     }
 
-    private boolean isEqual(Object left, Object right) {
-        if (left == null && right == null) return true;
-        if (left == null) return false;
-        return left.equals(right);
+    private void pushOperand(Expr operand) {
+        if (chainCount == chainOperands.length) {
+            chainOperands = Arrays.copyOf(chainOperands, chainCount * 2);
+            chainValues = Arrays.copyOf(chainValues, chainCount * 2);
+        }
+        chainOperands[chainCount++] = operand;
     }
 
     @Override
@@ -171,40 +487,31 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     public Object visitLogicalExpr(Expr.Logical expr) {
         Object left = evaluate(expr.left);
 
-        if(expr.operator.type() == TokenType.OR) if(isTruthy(left)) return true;
-        else {if(!isTruthy(left)) return false;}
+        if(expr.operator == TokenType.OR){
+            if(isTruthy(left)) return true;
+        }else{
+            if(!isTruthy(left)) return false;
+        }
         return  evaluate(expr.right);
     }
 
     @Override
     public Object visitUnaryExpr(Expr.Unary expr) {
         Object operand = evaluate(expr.right);
-        return switch (expr.operator.type()) {
-            case NOT -> !isTruthy(operand);
-            case MINUS -> {
-                checkNumberOperand(expr.operator, operand);
-                if (operand instanceof Double) yield -(Double) operand;
-                yield -(int) operand;
-            }
-            case PLUS -> operand;
-            default -> null;
-        };
+        try {
+            return Operations.unary(expr.operator, operand);
+        } catch (RuntimeError e) {
+            throw Operations.at(Position.operator(expr.operator, expr.position), e);
+        }
     }
 
     @Override
     public Object visitVariableExpr(Expr.Variable expr) {
-        return environment.get(expr.name);
-    }
-
-    private void checkNumberOperand(Token operator, Object operand) {
-        if (operand instanceof Number) return;
-        throw new RuntimeError(operator, "Operand must be a number");
+        return environment.get(expr.name, expr.position);
     }
 
     private boolean isTruthy(Object object) {
-        if (object == null) return false;
-        if (object instanceof Boolean) return (Boolean) object;
-        throw new RuntimeError(null, "Not a boolean.");
+        return Operations.isTruthy(object);
     }
 
     @Override
@@ -236,29 +543,23 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
     @Override
     public Void visitPrintStmt(Stmt.Print stmt) {
-        System.out.print(stringify(evaluate(stmt.expression)));
+        Operations.print(output, evaluate(stmt.expression));
         return null;
     }
 
     @Override
     public Void visitScanStmt(Stmt.Scan stmt) {
-        Scanner scanner = new Scanner(System.in);
-        String line = scanner.nextLine();
-        Lexer lexer = new Lexer(line, errorManager);
-
-        List<Token> valueTokens = lexer.scanTokens().stream()
-                .filter(t -> t.type() != TokenType.EOF && t.type() != TokenType.COMMA && t.type() != TokenType.NEWLINE)
-                .toList();
-
-        if (valueTokens.size() != stmt.names.size()) {
-            throw new RuntimeError(stmt.names.getFirst(),
-                    "Expected " + stmt.names.size() + " inputs, but got " + valueTokens.size() + ".");
+        output.beforeInput();
+        List<Token> names = stmt.names;
+        governor.beforeInput(input);
+        try {
+            Operations.readInput(input, names.getFirst(), names.size(), governor);
+        } finally {
+            governor.afterInput();
         }
-
-        Token value;
-        for (Token token : stmt.names) {
-            value = valueTokens.get(stmt.names.indexOf(token));
-            environment.assign(token, value.literal());
+        for (int i = 0; i < names.size(); i++) {
+            Token name = names.get(i);
+            environment.assign(name, Operations.inputValue(input, i, environment, name.lexeme(), Position.of(name)));
         }
         return null;
     }
@@ -268,12 +569,22 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         Object value = null;
         Expr initializer;
         TokenType type = stmt.type;
-        for (Token token : stmt.names) {
-            initializer = stmt.initializer.get(stmt.names.indexOf(token));
-            if (initializer != null) {
-                value = evaluate(initializer);
+        int defined = environment.size();
+        try {
+            for (int i = 0; i < stmt.names.size(); i++) {
+                Token name = stmt.names.get(i);
+                initializer = stmt.initializer.get(i);
+                if (environment == globals && bindings.containsKey(name.lexeme())) {
+                    environment.define(name, Environment.fromHost(name, type, bindings.get(name.lexeme())), type);
+                    continue;
+                }
+                if (initializer != null) {
+                    value = evaluate(initializer);
+                }
+                environment.define(name, value, type);
             }
-            environment.define(token, value, type);
+        } finally {
+            governor.variables(environment.size() - defined);
         }
         return null;
     }
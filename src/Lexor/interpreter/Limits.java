@@ -0,0 +1,40 @@
+package Lexor.interpreter;
+
+import java.time.Duration;
+
+/**
+ * Resource limits for one run: how many statements it may execute, how long it may take, how
+ * many bytes it may print, how many variables may be alive at once and how long a string it
+ * may build. A run that goes past one ends with a {@link Lexor.err.LimitExceeded}.
+ * A null timeout means no deadline.
+ */
+public record Limits(long maxSteps, Duration timeout, long maxOutputBytes, int maxVariables, int maxStringLength) {
+    public static final Limits NONE = new Limits(Long.MAX_VALUE, null, Long.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE);
+
+    public Limits {
+        if (maxSteps < 0 || maxOutputBytes < 0 || maxVariables < 0 || maxStringLength < 0) {
+            throw new IllegalArgumentException("Limits cannot be negative.");
+        }
+        if (timeout != null && timeout.isNegative()) throw new IllegalArgumentException("Timeout cannot be negative.");
+    }
+
+    public Limits withSteps(long maxSteps) {
+        return new Limits(maxSteps, timeout, maxOutputBytes, maxVariables, maxStringLength);
+    }
+
+    public Limits withTimeout(Duration timeout) {
+        return new Limits(maxSteps, timeout, maxOutputBytes, maxVariables, maxStringLength);
+    }
+
+    public Limits withOutputBytes(long maxOutputBytes) {
+        return new Limits(maxSteps, timeout, maxOutputBytes, maxVariables, maxStringLength);
+    }
+
+    public Limits withVariables(int maxVariables) {
+        return new Limits(maxSteps, timeout, maxOutputBytes, maxVariables, maxStringLength);
+    }
+
+    public Limits withStringLength(int maxStringLength) {
+        return new Limits(maxSteps, timeout, maxOutputBytes, maxVariables, maxStringLength);
+    }
+}
@@ -0,0 +1,198 @@
+package Lexor.interpreter;
+
+import Lexor.err.LimitExceeded;
+import Lexor.err.RuntimeError;
+import Lexor.io.InputSource;
+import Lexor.io.OutputSink;
+import Lexor.lexer.Position;
+import Lexor.lexer.Token;
+import Lexor.lexer.TokenType;
+
+import java.io.IOException;
+
+/**
+ * Value semantics shared by every evaluator. Errors are raised without a token; the caller
+ * knows where the operation came from and re-raises them at that position with {@link #at}.
+ */
+final class Operations {
+    private Operations() {}
+
+    static RuntimeError at(Token token, RuntimeError error) {
+        if (error.getToken() != null) return error;
+        return new RuntimeError(token, error.getMessage());
+    }
+
+    static String stringify(Object object) {
+        if (object == null) return "NULL";
+        if (object instanceof Boolean) return (boolean) object ? "TRUE" : "FALSE";
+        if (object instanceof Character) return object.toString();
+        if (object instanceof Variable) return ((Variable) object).value().toString();
+
+        if (object instanceof Double) {
+            String text = object.toString();
+            if (text.endsWith(".0")) {
+                text = text.substring(0, text.length() - 2);
+            }
+            return text;
+        }
+
+        return object.toString();
+    }
+
+    /** PRINTs {@code value} as {@link #stringify} spells it, but without building the string. */
+    static void print(OutputSink output, Object value) {
+        switch (value) {
+            case Integer number -> output.write(number.intValue());
+            case Double number -> output.write(number.doubleValue());
+            case String text -> output.write(text);
+            case Text text -> output.write(text);
+            case Boolean bool -> output.write(bool.booleanValue());
+            case Character character -> output.write(character.charValue());
+            case null, default -> output.write(stringify(value));
+        }
+    }
+
+    static Object binary(TokenType operator, Object left, Object right) {
+        return switch (operator) {
+            case MINUS -> {
+                checkNumberOperand(left, right);
+                if (left instanceof Double || right instanceof Double) {
+                    yield toDouble(left) - toDouble(right);
+                }
+                yield (int) left - (int) right;
+            }
+            case PLUS -> {
+                checkNumberOperand(left, right);
+                if (left instanceof Double || right instanceof Double) {
+                    yield toDouble(left) + toDouble(right);
+                }
+                yield (int) left + (int) right;
+            }
+            case SLASH -> {
+                checkNumberOperand(left, right);
+                if (left instanceof Double || right instanceof Double) {
+                    yield toDouble(left) / toDouble(right);
+                }
+                if ((int) right == 0) throw new RuntimeError(null, "Cannot divide by zero.");
+                yield (int) left / (int) right;
+            }
+            case STAR -> {
+                checkNumberOperand(left, right);
+                if (left instanceof Double || right instanceof Double) {
+                    yield toDouble(left) * toDouble(right);
+                }
+                yield (int) left * (int) right;
+            }
+            case GREATER -> {
+                checkNumberOperand(left, right);
+                yield toDouble(left) > toDouble(right);
+            }
+            case GREATER_EQUAL -> {
+                checkNumberOperand(left, right);
+                yield toDouble(left) >= toDouble(right);
+            }
+            case LESS -> {
+                checkNumberOperand(left, right);
+                yield toDouble(left) < toDouble(right);
+            }
+            case LESS_EQUAL -> {
+                checkNumberOperand(left, right);
+                yield toDouble(left) <= toDouble(right);
+            }
+            case EQUAL_EQUAL -> isEqual(left, right);
+            case NOT_EQUAL -> !isEqual(left, right);
+            case MOD -> {
+                checkNumberOperand(left, right);
+                if (left instanceof Double || right instanceof Double) {
+                    yield toDouble(left) % toDouble(right);
+                }
+                yield (int) left % (int) right;
+            }
+            case AMPERSAND -> concat(new Object[] {left, right}, 0, 2, Integer.MAX_VALUE);
+            default -> null;
+        };
+    }
+
+    /**
+     * Concatenates the values in {@code parts[from, to)}, replacing each one by its string form
+     * on the way, unless the result would be longer than {@code maxLength}.
+     */
+    static Text concat(Object[] parts, int from, int to, int maxLength) {
+        long length = 0;
+        for (int i = from; i < to; i++) {
+            if (!(parts[i] instanceof Text)) parts[i] = stringify(parts[i]);
+            length += ((CharSequence) parts[i]).length();
+        }
+        if (length > maxLength) throw new LimitExceeded("String length limit of " + maxLength + " exceeded.");
+        return Text.join(parts, from, to, (int) length);
+    }
+
+    static Object unary(TokenType operator, Object operand) {
+        return switch (operator) {
+            case NOT -> !isTruthy(operand);
+            case MINUS -> {
+                if (!(operand instanceof Number)) throw new RuntimeError(null, "Operand must be a number");
+                if (operand instanceof Double) yield -(Double) operand;
+                yield -(int) operand;
+            }
+            case PLUS -> operand;
+            default -> null;
+        };
+    }
+
+    static double toDouble(Object object) {
+        if (object instanceof Number) return ((Number) object).doubleValue();
+        throw new RuntimeException("Not a number.");
+    }
+
+    private static void checkNumberOperand(Object left, Object right) {
+        if (!(left instanceof Number) || !(right instanceof Number))
+            throw new RuntimeError(null, "Operands must be numbers.");
+    }
+
+    static boolean isEqual(Object left, Object right) {
+        if (left instanceof Text) left = left.toString();
+        if (right instanceof Text) right = right.toString();
+        if (left == null && right == null) return true;
+        if (left == null) return false;
+        return left.equals(right);
+    }
+
+    static boolean isTruthy(Object object) {
+        if (object == null) return false;
+        if (object instanceof Boolean) return (Boolean) object;
+        throw new RuntimeError(null, "Not a boolean.");
+    }
+
+    /**
+     * Reads the line a SCAN into {@code expected} variables takes its values from. A wait for it
+     * that the run's timeout or an interrupt cut short ends the run like any other limit.
+     */
+    static void readInput(InputSource input, Token first, int expected, Governor governor) {
+        try {
+            input.readLine();
+        } catch (IOException e) {
+            LimitExceeded limit = governor.inputLimit();
+            if (limit != null) throw limit;
+            throw new RuntimeError(first, "Cannot read input: " + e.getMessage());
+        }
+        if (input.fields() != expected) {
+            throw new RuntimeError(first,
+                    "Expected " + expected + " inputs, but got " + input.fields() + ".");
+        }
+    }
+
+    /** Parses input field {@code field} as a value of the type variable {@code name} was declared with. */
+    static Object inputValue(InputSource input, int field, Environment environment, String name, long position) {
+        Variable target = environment.lookup(name);
+        if (target == null) {
+            throw new RuntimeError(Position.name(name, position), "Undefined variable '" + name + "'");
+        }
+        Object value = input.value(field, target.type());
+        if (value == null) {
+            throw new RuntimeError(Position.name(name, position), "Type mismatch: Cannot assign '" +
+                    input.text(field) + "' to variable of type " + target.type());
+        }
+        return value;
+    }
+}
@@ -0,0 +1,58 @@
+package Lexor.interpreter;
+
+import Lexor.parser.ast.Stmt;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The state of a run stopped before the first top-level statement of its program that reads
+ * input: where it stopped, its variables and what it had used of its {@link Limits}, time included. Everything
+ * before that point depends on nothing but the program, so any number of runs, on any threads,
+ * can {@link Interpreter#resume} from it with their own input instead of running it again.
+ */
+public final class Snapshot {
+    final int position;
+    final Map<String, Variable> variables;
+    final long steps;
+    final long liveVariables;
+    final long elapsedNanos;
+
+    Snapshot(int position, Map<String, Variable> variables, long steps, long liveVariables, long elapsedNanos) {
+        this.position = position;
+        this.variables = variables;
+        this.steps = steps;
+        this.liveVariables = liveVariables;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /** How many top-level statements were run. */
+    public int position() {
+        return position;
+    }
+
+    // Walks an explicit stack, so nesting depth is bounded only by the heap.
+    static boolean readsInput(Stmt statement) {
+        List<Stmt> pending = new ArrayList<>();
+        pending.add(statement);
+        while (!pending.isEmpty()) {
+            switch (pending.removeLast()) {
+                case null -> {}
+                case Stmt.Scan stmt -> {
+                    return true;
+                }
+                case Stmt.If stmt -> {
+                    pending.add(stmt.thenBranch);
+                    pending.add(stmt.elseBranch);
+                }
+                case Stmt.When stmt -> pending.add(stmt.body);
+                case Stmt.Block stmt -> pending.addAll(stmt.statements);
+                case Stmt.Expression stmt -> {}
+                case Stmt.Print stmt -> {}
+                case Stmt.Declare stmt -> {}
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,62 @@
+package Lexor.interpreter;
+
+/**
+ * A STRING value made by {@code &}: the first {@code length} characters of a builder that
+ * later values may share. Appending to a value that still ends where its builder ends extends
+ * the builder in place, so {@code s = s & x} in a loop costs amortised O(1) per step rather than
+ * a copy of {@code s}; appending to any other value copies it first. The flat {@code String} is
+ * only made when a value is compared or converted, and then kept.
+ */
+final class Text implements CharSequence {
+    private final StringBuilder builder;
+    private final int length;
+    private String flat;
+
+    private Text(StringBuilder builder) {
+        this.builder = builder;
+        this.length = builder.length();
+    }
+
+    /**
+     * Concatenates {@code parts[from, to)}, each a {@code String} or a {@code Text}, whose
+     * lengths add up to {@code length}.
+     */
+    static Text join(Object[] parts, int from, int to, int length) {
+        StringBuilder builder;
+        if (parts[from] instanceof Text first && first.builder.length() == first.length) {
+            builder = first.builder;
+            builder.ensureCapacity(length);
+            from++;
+        } else {
+            builder = new StringBuilder(length);
+        }
+        for (int i = from; i < to; i++) {
+            if (parts[i] instanceof Text text) builder.append(text.builder, 0, text.length);
+            else builder.append((String) parts[i]);
+        }
+        return new Text(builder);
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index >= length) throw new IndexOutOfBoundsException(index);
+        return builder.charAt(index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if (end > length) throw new IndexOutOfBoundsException(end);
+        return builder.subSequence(start, end);
+    }
+
+    @Override
+    public String toString() {
+        if (flat == null) flat = builder.substring(0, length);
+        return flat;
+    }
+}
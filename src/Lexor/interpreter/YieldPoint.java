@@ -0,0 +1,16 @@
+package Lexor.interpreter;
+
+/**
+ * Lets a scheduler share the CPU between runs. A run calls {@link #checkpoint} every few
+ * thousand statements, which includes every few thousand REPEAT iterations, and may be parked
+ * there until it is its turn again; it calls the input hooks around a SCAN waiting for input.
+ */
+public interface YieldPoint {
+    void checkpoint();
+
+    default void beforeInput() {
+    }
+
+    default void afterInput() {
+    }
+}
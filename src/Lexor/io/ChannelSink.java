@@ -0,0 +1,57 @@
+package Lexor.io;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes UTF-8 output to a channel, typically a {@link FileChannel}, through a direct buffer
+ * so the channel can hand it to the operating system without another copy.
+ */
+public final class ChannelSink extends OutputSink implements AutoCloseable {
+    private final WritableByteChannel channel;
+    private final ByteBuffer direct;
+
+    public ChannelSink(WritableByteChannel channel) {
+        this(channel, DEFAULT_CAPACITY, FlushPolicy.ON_EXIT);
+    }
+
+    public ChannelSink(WritableByteChannel channel, int capacity, FlushPolicy policy) {
+        super(capacity, policy, StandardCharsets.UTF_8);
+        this.channel = channel;
+        this.direct = ByteBuffer.allocateDirect(buffer.length);
+    }
+
+    /** Opens {@code file} for writing, truncating it. {@link #close} closes the file. */
+    public static ChannelSink open(Path file) throws IOException {
+        return new ChannelSink(FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING));
+    }
+
+    @Override
+    protected void drain() {
+        direct.clear();
+        direct.put(buffer, 0, count).flip();
+        try {
+            while (direct.hasRemaining()) channel.write(direct);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        count = 0;
+    }
+
+    /** Flushes what is still buffered and closes the channel. */
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+}
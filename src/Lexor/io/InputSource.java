@@ -0,0 +1,291 @@
+package Lexor.io;
+
+import Lexor.lexer.TokenType;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Buffered input for SCAN. {@link #readLine} reads one line into the buffer and splits it into
+ * fields separated by commas and/or blanks; {@link #value} parses a field as the LEXOR type of
+ * the variable it goes into, straight from the bytes. Input is UTF-8. Not thread-safe.
+ *
+ * <p>Once given a {@link #deadline}, waiting for more input gives up at it with an
+ * {@link InterruptedIOException}, even on a stream whose reads cannot be interrupted.
+ *
+ * <p>A field is a number ({@code -12}, {@code 3.5}), a quoted string ({@code "TRUE"}, with the
+ * LEXOR {@code [x]} escapes), a quoted character ({@code 'c'}) or any other run of characters.
+ */
+public final class InputSource {
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private final InputStream input;
+    private byte[] buffer;
+    private int position = 0;
+    private int limit = 0;
+    private boolean ended = false;
+    // The current line's fields: where each starts and ends in the buffer.
+    private int[] starts = new int[8];
+    private int[] ends = new int[8];
+    private int fields = 0;
+    // A System.nanoTime() to stop waiting for input at, when hasDeadline.
+    private boolean hasDeadline = false;
+    private long deadline;
+    // A read started before a deadline passed, which the next fill takes over.
+    private FutureTask<byte[]> pending;
+
+    public InputSource(InputStream input) {
+        this(input, 8192);
+    }
+
+    public InputSource(InputStream input, int capacity) {
+        this.input = input;
+        this.buffer = new byte[Math.max(capacity, 16)];
+    }
+
+    /** Stops waiting for input at {@code nanoTime}, as given by {@link System#nanoTime()}. */
+    public void deadline(long nanoTime) {
+        hasDeadline = true;
+        deadline = nanoTime;
+    }
+
+    /** Reads the next line and splits it into fields; at the end of the input the line is empty. */
+    public void readLine() throws IOException {
+        fields = 0;
+        int start = position;
+        int end;
+        while (true) {
+            end = indexOfNewline(start);
+            if (end >= 0 || ended) break;
+            // The line continues past the buffer: move it to the front and read more.
+            start = fill(start);
+        }
+        int next = end >= 0 ? end + 1 : limit;
+        if (end < 0) end = limit;
+        if (end > start && buffer[end - 1] == '\r') end--;
+        split(start, end);
+        position = next;
+    }
+
+    public int fields() {
+        return fields;
+    }
+
+    /** The field's text, for error messages. */
+    public String text(int field) {
+        return new String(buffer, starts[field], ends[field] - starts[field], StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Parses {@code field} as a value of the given type ({@code INT_TYPE}, {@code FLOAT_TYPE},
+     * {@code CHAR_TYPE}, {@code BOOL_TYPE} or {@code STRING_TYPE}), or returns null if it is not one.
+     */
+    public Object value(int field, TokenType type) {
+        int start = starts[field];
+        int end = ends[field];
+        return switch (type) {
+            case INT_TYPE -> parseInt(start, end);
+            case FLOAT_TYPE -> parseFloat(start, end);
+            case CHAR_TYPE -> parseChar(start, end);
+            case BOOL_TYPE -> parseBool(start, end);
+            case STRING_TYPE -> parseString(start, end);
+            default -> null;
+        };
+    }
+
+    private int indexOfNewline(int from) {
+        for (int i = from; i < limit; i++) {
+            if (buffer[i] == '\n') return i;
+        }
+        return -1;
+    }
+
+    // Keeps buffer[start, limit) and reads more after it; returns where that data now starts.
+    private int fill(int start) throws IOException {
+        int kept = limit - start;
+        if (start > 0) {
+            System.arraycopy(buffer, start, buffer, 0, kept);
+        } else if (kept == buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+        limit = kept;
+        int read = hasDeadline ? readBeforeDeadline() : input.read(buffer, limit, buffer.length - limit);
+        if (read < 0) ended = true;
+        else limit += read;
+        return 0;
+    }
+
+    // The read runs on a thread of its own, into a buffer of its own: if the deadline passes
+    // first it is left blocked, and whatever it gets later is only taken by a later fill.
+    private int readBeforeDeadline() throws IOException {
+        if (pending == null) {
+            int capacity = buffer.length - limit;
+            pending = new FutureTask<>(() -> {
+                byte[] chunk = new byte[capacity];
+                int read = input.read(chunk);
+                return read < 0 ? null : Arrays.copyOf(chunk, read);
+            });
+            Thread.ofVirtual().start(pending);
+        }
+        byte[] chunk;
+        try {
+            chunk = pending.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            throw new InterruptedIOException("No input before the deadline");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for input");
+        } catch (ExecutionException e) {
+            pending = null;
+            if (e.getCause() instanceof IOException cause) throw cause;
+            throw new IOException(e.getCause());
+        }
+        pending = null;
+        if (chunk == null) return -1;
+        if (limit + chunk.length > buffer.length) buffer = Arrays.copyOf(buffer, limit + chunk.length);
+        System.arraycopy(chunk, 0, buffer, limit, chunk.length);
+        return chunk.length;
+    }
+
+    private void split(int start, int end) {
+        int i = start;
+        while (true) {
+            while (i < end && isSeparator(buffer[i])) i++;
+            if (i == end) return;
+            int fieldStart = i;
+            byte quote = buffer[i];
+            if (quote == '"' || quote == '\'') {
+                i++;
+                while (i < end && buffer[i] != quote) i += buffer[i] == '[' && quote == '"' ? 2 : 1;
+                i = Math.min(i + 1, end);
+            } else {
+                while (i < end && !isSeparator(buffer[i])) i++;
+            }
+            if (fields == starts.length) {
+                starts = Arrays.copyOf(starts, fields * 2);
+                ends = Arrays.copyOf(ends, fields * 2);
+            }
+            starts[fields] = fieldStart;
+            ends[fields++] = i;
+        }
+    }
+
+    private static boolean isSeparator(byte b) {
+        return b == ',' || b == ' ' || b == '\t' || b == '\r';
+    }
+
+    private Integer parseInt(int start, int end) {
+        boolean negative = start < end && buffer[start] == '-';
+        if (negative || start < end && buffer[start] == '+') start++;
+        if (start == end) return null;
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            int digit = buffer[i] - '0';
+            if (digit < 0 || digit > 9) return null;
+            value = value * 10 + digit;
+            if (value > Integer.MAX_VALUE + 1L) return null;
+        }
+        if (negative) value = -value;
+        if (value > Integer.MAX_VALUE) return null;
+        return (int) value;
+    }
+
+    // Up to 15 significant digits m and at most 22 decimals k, m / 10^k is one correctly
+    // rounded division of two exact doubles, the same value Double.parseDouble gives.
+    private Double parseFloat(int start, int end) {
+        int first = start;
+        boolean negative = start < end && buffer[start] == '-';
+        if (negative || start < end && buffer[start] == '+') start++;
+        long mantissa = 0;
+        int significant = 0;
+        int integers = 0;
+        int decimals = -1;
+        for (int i = start; i < end; i++) {
+            int digit = buffer[i] - '0';
+            if (buffer[i] == '.' && decimals < 0) {
+                decimals = 0;
+                continue;
+            }
+            if (digit < 0 || digit > 9) return null;
+            if (decimals < 0) integers++;
+            else decimals++;
+            if (mantissa != 0 || digit != 0) significant++;
+            if (significant <= 18) mantissa = mantissa * 10 + digit;
+        }
+        // Digits, optionally followed by a point and more digits, as the Lexer reads them.
+        if (integers == 0 || decimals == 0) return null;
+        if (decimals < 0) decimals = 0;
+        if (significant <= 15 && decimals < POWERS_OF_TEN.length) {
+            double value = mantissa / POWERS_OF_TEN[decimals];
+            return negative ? -value : value;
+        }
+        return Double.parseDouble(new String(buffer, first, end - first, StandardCharsets.US_ASCII));
+    }
+
+    private Character parseChar(int start, int end) {
+        if (end - start >= 3 && buffer[start] == '\'' && buffer[end - 1] == '\'') {
+            start++;
+            end--;
+        }
+        if (end - start == 1 && buffer[start] >= 0) return (char) buffer[start];
+        String text = new String(buffer, start, end - start, StandardCharsets.UTF_8);
+        return text.length() == 1 ? text.charAt(0) : null;
+    }
+
+    private Boolean parseBool(int start, int end) {
+        if (end - start >= 2 && buffer[start] == '"' && buffer[end - 1] == '"') {
+            start++;
+            end--;
+        }
+        if (matches(start, end, "TRUE")) return true;
+        if (matches(start, end, "FALSE")) return false;
+        return null;
+    }
+
+    private String parseString(int start, int end) {
+        if (end - start < 2 || buffer[start] != '"' || buffer[end - 1] != '"') {
+            return new String(buffer, start, end - start, StandardCharsets.UTF_8);
+        }
+        start++;
+        end--;
+        StringBuilder text = null;
+        int from = start;
+        for (int i = start; i < end; i++) {
+            if (buffer[i] != '[' || i + 2 >= end || buffer[i + 2] != ']') continue;
+            if (text == null) text = new StringBuilder();
+            text.append(new String(buffer, from, i - from, StandardCharsets.UTF_8)).append(escape(buffer[i + 1]));
+            i += 2;
+            from = i + 1;
+        }
+        String rest = new String(buffer, from, end - from, StandardCharsets.UTF_8);
+        return text == null ? rest : text.append(rest).toString();
+    }
+
+    // Same escapes as the Lexer: [n], [t], [$] and any other character standing for itself.
+    private static char escape(byte code) {
+        return switch (code) {
+            case 'n' -> '\n';
+            case 't' -> '\t';
+            case '$' -> '\r';
+            default -> (char) code;
+        };
+    }
+
+    private boolean matches(int start, int end, String word) {
+        if (end - start != word.length()) return false;
+        for (int i = 0; i < word.length(); i++) {
+            if (buffer[start + i] != word.charAt(i)) return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,38 @@
+package Lexor.io;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/** Keeps all output in memory as UTF-8, for tests and for embedders that want the text back. */
+public final class MemorySink extends OutputSink {
+    public MemorySink() {
+        this(256);
+    }
+
+    public MemorySink(int initialCapacity) {
+        super(initialCapacity, FlushPolicy.ON_EXIT, StandardCharsets.UTF_8);
+    }
+
+    // Nothing to write out; grow once room for a formatted number is short.
+    @Override
+    protected void drain() {
+        if (buffer.length - count < 32) buffer = Arrays.copyOf(buffer, buffer.length * 2);
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buffer, count);
+    }
+
+    public void reset() {
+        count = 0;
+    }
+
+    @Override
+    public String toString() {
+        return new String(buffer, 0, count, StandardCharsets.UTF_8);
+    }
+}
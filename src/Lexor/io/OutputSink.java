@@ -0,0 +1,234 @@
+package Lexor.io;
+
+import Lexor.err.LimitExceeded;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Where a program's PRINT output goes. Values are formatted the way LEXOR prints them straight
+ * into a byte buffer, without building a {@code String} for them first; the buffer is handed
+ * to the subclass when it is full and whenever the {@link FlushPolicy} asks for it.
+ *
+ * <p>Text is written with the sink's charset, which must encode ASCII as single bytes (as
+ * UTF-8, ISO-8859-1 and the usual console code pages do). A sink is not thread-safe.
+ */
+public abstract class OutputSink {
+    public static final int DEFAULT_CAPACITY = 8192;
+
+    private static final byte[] TRUE = {'T', 'R', 'U', 'E'};
+    private static final byte[] FALSE = {'F', 'A', 'L', 'S', 'E'};
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17
+    };
+    private static final double EXACT_LIMIT = 0x1p53;
+
+    /**
+     * When buffered output is written through, besides whenever the buffer is full and when the
+     * program ends: before the program waits for input, and/or once {@code threshold} bytes are
+     * waiting.
+     */
+    public record FlushPolicy(boolean beforeInput, int threshold) {
+        public static final FlushPolicy ON_EXIT = new FlushPolicy(false, Integer.MAX_VALUE);
+        public static final FlushPolicy ON_SCAN = new FlushPolicy(true, Integer.MAX_VALUE);
+
+        public static FlushPolicy everyBytes(int bytes) {
+            if (bytes < 1) throw new IllegalArgumentException("Flush threshold must be positive.");
+            return new FlushPolicy(false, bytes);
+        }
+    }
+
+    protected byte[] buffer;
+    protected int count;
+    private long drained = 0;
+    private long cap = Long.MAX_VALUE;
+    private final FlushPolicy policy;
+    private final Charset charset;
+
+    protected OutputSink(int capacity, FlushPolicy policy, Charset charset) {
+        this.buffer = new byte[Math.max(capacity, 32)];
+        this.policy = policy;
+        this.charset = charset;
+    }
+
+    /**
+     * Writes out {@code buffer[0, count)} and resets {@code count}, or otherwise makes room.
+     * Called when the buffer is full and on every flush.
+     */
+    protected abstract void drain();
+
+    /** Pushes drained bytes on from the underlying target, if it buffers too. */
+    protected void flushTarget() {
+    }
+
+    public final void flush() {
+        if (count > 0) drainBuffer();
+        flushTarget();
+    }
+
+    /** How many bytes have been written to this sink so far. */
+    public final long written() {
+        return drained + count;
+    }
+
+    /**
+     * Lets at most {@code maxBytes} be {@link #written} in all: the write that would go past it
+     * is cut off there, before anything past it is drained, and throws {@link LimitExceeded}.
+     * Set by the interpreter from its limits for each run.
+     */
+    public final void limit(long maxBytes) {
+        cap = maxBytes;
+    }
+
+    /** Called before the program reads input, so that a prompt printed before a SCAN is shown. */
+    public final void beforeInput() {
+        if (policy.beforeInput()) flush();
+    }
+
+    public final void write(CharSequence text) {
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c >= 0x80) {
+                writeBytes(text.subSequence(i, length).toString().getBytes(charset));
+                return;
+            }
+            if (count == buffer.length) drainBuffer();
+            buffer[count++] = (byte) c;
+        }
+        afterWrite();
+    }
+
+    public final void write(char value) {
+        if (value >= 0x80) {
+            writeBytes(String.valueOf(value).getBytes(charset));
+            return;
+        }
+        room(1);
+        buffer[count++] = (byte) value;
+        afterWrite();
+    }
+
+    public final void write(boolean value) {
+        writeBytes(value ? TRUE : FALSE);
+    }
+
+    public final void write(int value) {
+        room(11);
+        putLong(value);
+        afterWrite();
+    }
+
+    /** Writes {@code value} as {@link Double#toString} does, but without a trailing {@code .0}. */
+    public final void write(double value) {
+        room(26);
+        if (!putShortDecimal(value)) {
+            String text = Double.toString(value);
+            if (text.endsWith(".0")) text = text.substring(0, text.length() - 2);
+            write(text);
+            return;
+        }
+        afterWrite();
+    }
+
+    private void writeBytes(byte[] bytes) {
+        int offset = 0;
+        while (offset < bytes.length) {
+            if (count == buffer.length) drainBuffer();
+            int chunk = Math.min(bytes.length - offset, buffer.length - count);
+            System.arraycopy(bytes, offset, buffer, count, chunk);
+            count += chunk;
+            offset += chunk;
+        }
+        afterWrite();
+    }
+
+    private void room(int bytes) {
+        if (count + bytes > buffer.length) drainBuffer();
+    }
+
+    private void drainBuffer() {
+        if (drained + count > cap) overflow();
+        int before = count;
+        drain();
+        drained += before - count;
+    }
+
+    private void afterWrite() {
+        if (drained + count > cap) overflow();
+        if (count >= policy.threshold()) flush();
+    }
+
+    // Keeps what fits, without splitting a UTF-8 character, for the flush after the error.
+    private void overflow() {
+        int full = count;
+        count = (int) Math.max(0, cap - drained);
+        if (charset == StandardCharsets.UTF_8) {
+            while (count > 0 && count < full && (buffer[count] & 0xC0) == 0x80) count--;
+        }
+        throw new LimitExceeded("Output limit of " + cap + " bytes exceeded.");
+    }
+
+    private void putLong(long value) {
+        if (value < 0) {
+            buffer[count++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (long rest = value / 10; rest != 0; rest /= 10) digits++;
+        int end = count + digits;
+        for (int i = end - 1; i >= count; i--) {
+            buffer[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        count = end;
+    }
+
+    // Double.toString prints the shortest decimal that rounds back to the value. In the range
+    // where it uses plain notation that is the unique k-digit fraction m / 10^k with the
+    // smallest k; anything this cannot decide exactly goes through Double.toString instead.
+    private boolean putShortDecimal(double value) {
+        if (value == 0) {
+            if (Double.doubleToRawLongBits(value) != 0) buffer[count++] = '-';
+            buffer[count++] = '0';
+            return true;
+        }
+        double magnitude = Math.abs(value);
+        if (!(magnitude >= 1e-3 && magnitude < 1e7)) return false;
+        for (int k = 0; k < POWERS_OF_TEN.length; k++) {
+            double power = POWERS_OF_TEN[k];
+            double scaled = magnitude * power;
+            if (scaled + 1 >= EXACT_LIMIT) return false;
+            long m = Math.round(scaled);
+            boolean exact = m / power == magnitude;
+            boolean below = m > 1 && (m - 1) / power == magnitude;
+            boolean above = (m + 1) / power == magnitude;
+            if (!exact && !below && !above) continue;
+            if ((exact ? 1 : 0) + (below ? 1 : 0) + (above ? 1 : 0) > 1) return false;
+            if (below) m--;
+            else if (above) m++;
+            if (value < 0) buffer[count++] = '-';
+            putFixed(m, k);
+            return true;
+        }
+        return false;
+    }
+
+    // Writes m / 10^k with exactly k fractional digits.
+    private void putFixed(long m, int k) {
+        if (k == 0) {
+            putLong(m);
+            return;
+        }
+        long whole = (long) (m / POWERS_OF_TEN[k]);
+        long fraction = m - (long) (whole * POWERS_OF_TEN[k]);
+        putLong(whole);
+        buffer[count++] = '.';
+        int end = count + k;
+        for (int i = end - 1; i >= count; i--) {
+            buffer[i] = (byte) ('0' + fraction % 10);
+            fraction /= 10;
+        }
+        count = end;
+    }
+}
@@ -0,0 +1,46 @@
+package Lexor.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/** Buffers output for an {@link OutputStream}, writing it in blocks of up to the buffer capacity. */
+public final class StreamSink extends OutputSink {
+    private final OutputStream target;
+
+    /** Uses the stream's own charset when it is a {@link PrintStream}, UTF-8 otherwise. */
+    public StreamSink(OutputStream target) {
+        this(target, DEFAULT_CAPACITY, FlushPolicy.ON_SCAN);
+    }
+
+    public StreamSink(OutputStream target, int capacity, FlushPolicy policy) {
+        this(target, capacity, policy, target instanceof PrintStream stream ? stream.charset() : StandardCharsets.UTF_8);
+    }
+
+    public StreamSink(OutputStream target, int capacity, FlushPolicy policy, Charset charset) {
+        super(capacity, policy, charset);
+        this.target = target;
+    }
+
+    @Override
+    protected void drain() {
+        try {
+            target.write(buffer, 0, count);
+            count = 0;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    protected void flushTarget() {
+        try {
+            target.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
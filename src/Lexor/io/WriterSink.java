@@ -0,0 +1,56 @@
+package Lexor.io;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Decodes output for a {@link Writer}, for hosts that take characters rather than bytes. A
+ * character split across two drains is held back until the rest of it arrives.
+ */
+public final class WriterSink extends OutputSink {
+    private final Writer target;
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final CharBuffer chars;
+
+    public WriterSink(Writer target) {
+        this(target, DEFAULT_CAPACITY, FlushPolicy.ON_SCAN);
+    }
+
+    public WriterSink(Writer target, int capacity, FlushPolicy policy) {
+        super(capacity, policy, StandardCharsets.UTF_8);
+        this.target = target;
+        this.chars = CharBuffer.allocate(buffer.length);
+    }
+
+    @Override
+    protected void drain() {
+        ByteBuffer bytes = ByteBuffer.wrap(buffer, 0, count);
+        decoder.decode(bytes, chars, false);
+        try {
+            target.write(chars.array(), 0, chars.position());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        chars.clear();
+        // At most three bytes of an unfinished character.
+        count = bytes.remaining();
+        System.arraycopy(buffer, bytes.position(), buffer, 0, count);
+    }
+
+    @Override
+    protected void flushTarget() {
+        try {
+            target.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
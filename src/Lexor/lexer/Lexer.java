@@ -9,54 +9,71 @@ public class Lexer {
     private final ErrorManager errorManager;
     private final String source;
     private final List<Token> tokens = new ArrayList<>();
-    private static final Map<String, TokenType> keywords;
+    private int[] offsets = new int[64];
     private int start = 0;
     private int current = 0;
     private int line = 1;
     private int column = 1;
-
-    static{
-        keywords = new HashMap<>();
-        keywords.put("IF", TokenType.IF);
-        keywords.put("ELSE", TokenType.ELSE);
-        keywords.put("ELSE IF", TokenType.ELIF);
-        keywords.put("FOR", TokenType.FOR);
-        keywords.put("WHEN", TokenType.WHEN);
-        keywords.put("AND", TokenType.AND);
-        keywords.put("OR", TokenType.OR);
-        keywords.put("NOT", TokenType.NOT);
-        keywords.put("NULL", TokenType.NULL);
-        keywords.put("PRINT", TokenType.PRINT);
-        keywords.put("DECLARE", TokenType.DECLARE);
-        keywords.put("SCAN", TokenType.SCAN);
-        keywords.put("SCRIPT", TokenType.SCRIPT);
-        keywords.put("AREA", TokenType.AREA);
-        keywords.put("START", TokenType.START);
-        keywords.put("END", TokenType.END);
-        keywords.put("REPEAT", TokenType.REPEAT);
-        keywords.put("INT", TokenType.INT_TYPE);
-        keywords.put("FLOAT", TokenType.FLOAT_TYPE);
-        keywords.put("STRING", TokenType.STRING_TYPE);
-        keywords.put("BOOL", TokenType.BOOL_TYPE);
-        keywords.put("CHAR", TokenType.CHAR_TYPE);
-    }
-
+    private int lineStart = 0;
 
     public Lexer(String source, ErrorManager errormanager) {
         this.source = source;
         this.errorManager = errormanager;
     }
 
+    public Lexer(String source, ErrorManager errorManager, int offset, int line) {
+        this(source, errorManager);
+        this.start = offset;
+        this.current = offset;
+        this.lineStart = offset;
+        this.line = line;
+    }
+
     public List<Token> scanTokens(){
         while(!isAtEnd()){
-            column = start + 1;
-            start = current;
-            scanToken();
+            scanNext();
         }
-        tokens.add(new Token(TokenType.EOF, "", null, line, column));
+        addEof();
         return tokens;
     }
 
+    public boolean scanLine(){
+        while(!isAtEnd()){
+            scanNext();
+            if(source.charAt(start) == '\n') return true;
+        }
+        addEof();
+        return false;
+    }
+
+    public List<Token> tokens(){
+        return tokens;
+    }
+
+    public int[] offsets(){
+        return Arrays.copyOf(offsets, tokens.size());
+    }
+
+    public int position(){
+        return current;
+    }
+
+    public int line(){
+        return line;
+    }
+
+    private void scanNext(){
+        start = current;
+        column = start - lineStart + 1;
+        scanToken();
+    }
+
+    private void addEof(){
+        start = current;
+        column = start - lineStart + 1;
+        addToken(TokenType.EOF, "", null);
+    }
+
     private void scanToken(){
         char c = advance();
         switch(c){
@@ -94,7 +111,7 @@ public class Lexer {
             case ' ':
             case '\r':
             case '\t': break;
-            case '\n': addToken(TokenType.NEWLINE); line++; column = 0; break;
+            case '\n': addToken(TokenType.NEWLINE); line++; lineStart = current; break;
             default:
                 if(isDigit(c)){
                     number();
@@ -210,10 +227,39 @@ public class Lexer {
             advance();
         }
         String text = source.substring(start, current);
-        TokenType type = keywords.get(text.strip());
+        TokenType type = keyword(text.strip());
         addToken(type != null ? type : TokenType.IDENTIFIER);
     }
 
+    // A switch instead of a map filled in a static initialiser, so loading the class does no work.
+    private static TokenType keyword(String text){
+        return switch(text){
+            case "IF" -> TokenType.IF;
+            case "ELSE" -> TokenType.ELSE;
+            case "ELSE IF" -> TokenType.ELIF;
+            case "FOR" -> TokenType.FOR;
+            case "WHEN" -> TokenType.WHEN;
+            case "AND" -> TokenType.AND;
+            case "OR" -> TokenType.OR;
+            case "NOT" -> TokenType.NOT;
+            case "NULL" -> TokenType.NULL;
+            case "PRINT" -> TokenType.PRINT;
+            case "DECLARE" -> TokenType.DECLARE;
+            case "SCAN" -> TokenType.SCAN;
+            case "SCRIPT" -> TokenType.SCRIPT;
+            case "AREA" -> TokenType.AREA;
+            case "START" -> TokenType.START;
+            case "END" -> TokenType.END;
+            case "REPEAT" -> TokenType.REPEAT;
+            case "INT" -> TokenType.INT_TYPE;
+            case "FLOAT" -> TokenType.FLOAT_TYPE;
+            case "STRING" -> TokenType.STRING_TYPE;
+            case "BOOL" -> TokenType.BOOL_TYPE;
+            case "CHAR" -> TokenType.CHAR_TYPE;
+            default -> null;
+        };
+    }
+
     private boolean match(char expected){
         if(isAtEnd()) return false;
         if(source.charAt(current) != expected) return false;
@@ -236,7 +282,13 @@ public class Lexer {
     }
 
     private void addToken(TokenType type, Object literal){
-        tokens.add(new Token(type, source.substring(start, current), literal, line, column));
+        addToken(type, source.substring(start, current), literal);
+    }
+
+    private void addToken(TokenType type, String lexeme, Object literal){
+        if(tokens.size() == offsets.length) offsets = Arrays.copyOf(offsets, offsets.length * 2);
+        offsets[tokens.size()] = start;
+        tokens.add(new Token(type, lexeme, literal, line, column));
     }
 
     private char advance(){
@@ -0,0 +1,56 @@
+package Lexor.lexer;
+
+/**
+ * A source position packed into one {@code long}: the line in the high 32 bits and the
+ * column in the low 32 bits. AST nodes keep this instead of their whole {@link Token};
+ * a token is only rebuilt from it when an error has to be reported.
+ */
+public final class Position {
+    public static final long NONE = 0L;
+
+    private Position() {}
+
+    public static long of(int line, int column) {
+        return ((long) line << 32) | (column & 0xFFFFFFFFL);
+    }
+
+    public static long of(Token token) {
+        return of(token.line(), token.column());
+    }
+
+    public static int line(long position) {
+        return (int) (position >>> 32);
+    }
+
+    public static int column(long position) {
+        return (int) position;
+    }
+
+    public static Token name(String name, long position) {
+        return new Token(TokenType.IDENTIFIER, name, null, line(position), column(position));
+    }
+
+    public static Token operator(TokenType operator, long position) {
+        return new Token(operator, spelling(operator), null, line(position), column(position));
+    }
+
+    // Operators always have the same spelling, so their lexemes never need to be stored.
+    public static String spelling(TokenType operator) {
+        return switch (operator) {
+            case MINUS -> "-";
+            case PLUS -> "+";
+            case SLASH -> "/";
+            case STAR -> "*";
+            case MOD -> "%";
+            case AMPERSAND -> "&";
+            case EQUAL -> "=";
+            case EQUAL_EQUAL -> "==";
+            case NOT_EQUAL -> "<>";
+            case GREATER -> ">";
+            case GREATER_EQUAL -> ">=";
+            case LESS -> "<";
+            case LESS_EQUAL -> "<=";
+            default -> operator.name();
+        };
+    }
+}
@@ -0,0 +1,75 @@
+package Lexor.parser;
+
+import Lexor.err.ErrorManager;
+import Lexor.err.ParseError;
+import Lexor.lexer.Token;
+import Lexor.lexer.TokenType;
+import Lexor.parser.ast.Stmt;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Statements of a block body that are parsed from their recorded token extent
+ * the first time the block is entered. Syntax errors inside the body surface then as a
+ * {@link ParseError} that carries them, for the run that entered it to report as its own.
+ */
+final class DeferredBlock extends AbstractList<Stmt> {
+    private final List<Token> tokens;
+    private final int start;
+    private final int end;
+    private final TokenType kind;
+    private volatile List<Stmt> statements;
+
+    DeferredBlock(List<Token> tokens, int start, int end, TokenType kind) {
+        this.tokens = tokens;
+        this.start = start;
+        this.end = end;
+        this.kind = kind;
+    }
+
+    @Override
+    public Stmt get(int index) {
+        return statements().get(index);
+    }
+
+    @Override
+    public int size() {
+        return statements().size();
+    }
+
+    private List<Stmt> statements() {
+        List<Stmt> parsed = statements;
+        if (parsed == null) {
+            synchronized (this) {
+                parsed = statements;
+                if (parsed == null) {
+                    Recorder errors = new Recorder();
+                    Parser parser = new Parser(tokens, errors, true, start);
+                    parsed = parser.blockStatements();
+                    if (!parser.hadError() && parser.position() != end) {
+                        parser.error(tokens.get(parser.position()), Parser.blockEndMessage(kind));
+                    }
+                    if (parser.hadError()) throw new ParseError(errors.reports);
+                    statements = parsed;
+                }
+            }
+        }
+        return parsed;
+    }
+
+    // Keeps the syntax errors instead of reporting them to whichever run happened to parse the body.
+    private static final class Recorder extends ErrorManager {
+        private final List<ParseError.Report> reports = new ArrayList<>();
+
+        Recorder() {
+            super(null);
+        }
+
+        @Override
+        public void syntaxError(Token token, String message) {
+            reports.add(new ParseError.Report(token, message));
+        }
+    }
+}
@@ -0,0 +1,287 @@
+package Lexor.parser;
+
+import Lexor.err.Error;
+import Lexor.err.ErrorManager;
+import Lexor.lexer.Lexer;
+import Lexor.lexer.Token;
+import Lexor.lexer.TokenType;
+import Lexor.parser.ast.FlatAst;
+import Lexor.parser.ast.Stmt;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Keeps the tokens and top-level statements of one source document and updates them
+ * after a text edit. Only the lines touched by the edit are re-lexed; the old token
+ * stream is reused from the first line boundary after the edit. Top-level statements
+ * whose tokens (and the token they look ahead at) did not change are reused as-is, also
+ * when the edit moved them to other lines: their positions are shifted when they are read.
+ * A document with errors keeps the statements that parsed, as {@link Parser#parse} does;
+ * whatever reported an error is parsed again on every edit, so every error is reported.
+ */
+public class IncrementalParser {
+    private final ErrorManager errorManager;
+    private String source;
+    private List<Token> tokens;
+    private int[] offsets;
+    // What the lexer reported, in source order; reported again after every edit.
+    private List<Error> lexerErrors;
+    private List<Item> items = List.of();
+    private List<Stmt> statements;
+    private int relexedTokens;
+    private int reusedStatements;
+
+    // Token indices of the last relex, in old numbering: [damageStart, damageEnd) were replaced.
+    private int damageStart;
+    private int damageEnd;
+    private int tokenDelta;
+    private int lineDelta;
+
+    // What one step of the parser consumed: tokens [start, end), and the statement it parsed
+    // unless it failed. The statement's positions are lineShift lines above where it now is.
+    private record Item(int start, int end, Stmt statement, boolean clean, int lineShift) {}
+
+    public IncrementalParser(String source, ErrorManager errorManager) {
+        this.errorManager = errorManager;
+        this.source = source;
+        analyse();
+    }
+
+    public List<Stmt> edit(int offset, int removed, String inserted) {
+        if (offset < 0 || removed < 0 || offset + removed > source.length()) {
+            throw new IndexOutOfBoundsException("Edit outside of document: " + offset + "+" + removed);
+        }
+        source = source.substring(0, offset) + inserted + source.substring(offset + removed);
+        relex(offset, removed, inserted.length());
+        reparse();
+        return statements;
+    }
+
+    public String source() {
+        return source;
+    }
+
+    public List<Token> tokens() {
+        return tokens;
+    }
+
+    /**
+     * The top-level statements that parsed. When the error manager has errors this is
+     * only part of the program, as with {@link Parser#parse}, and must not be executed.
+     */
+    public List<Stmt> statements() {
+        return statements;
+    }
+
+    public int relexedTokens() {
+        return relexedTokens;
+    }
+
+    public int reusedStatements() {
+        return reusedStatements;
+    }
+
+    private void analyse() {
+        ErrorManager lexing = new ErrorManager(null);
+        Lexer lexer = new Lexer(source, lexing);
+        tokens = lexer.scanTokens();
+        offsets = lexer.offsets();
+        lexerErrors = lexing.getErrors();
+        relexedTokens = tokens.size();
+        reparse();
+    }
+
+    private void relex(int offset, int removed, int insertedLength) {
+        int delta = insertedLength - removed;
+
+        int firstToken = 0;
+        int line = 1;
+        for (int i = lastIndexBefore(offset); i >= 0; i--) {
+            if (tokens.get(i).type() == TokenType.NEWLINE) {
+                firstToken = i + 1;
+                line = tokens.get(i).line() + 1;
+                break;
+            }
+        }
+        int relexStart = firstToken == 0 ? 0 : offsets[firstToken - 1] + 1;
+
+        ErrorManager lexing = new ErrorManager(null);
+        Lexer lexer = new Lexer(source, lexing, relexStart, line);
+        int resume = -1;
+        while (lexer.scanLine()) {
+            int position = lexer.position();
+            if (position < offset + insertedLength) continue;
+            int oldNewline = findNewlineAt(position - 1 - delta);
+            if (oldNewline >= 0) {
+                resume = oldNewline + 1;
+                break;
+            }
+        }
+
+        List<Token> relexed = lexer.tokens();
+        int[] relexedOffsets = lexer.offsets();
+        int oldCount = tokens.size();
+        int tailLength = resume < 0 ? 0 : oldCount - resume;
+        int resumeLine = resume < 0 ? Integer.MAX_VALUE : tokens.get(resume - 1).line() + 1;
+        lineDelta = resume < 0 ? 0 : lexer.line() - resumeLine;
+
+        List<Token> updated = new ArrayList<>(firstToken + relexed.size() + tailLength);
+        updated.addAll(tokens.subList(0, firstToken));
+        updated.addAll(relexed);
+        int[] updatedOffsets = Arrays.copyOf(offsets, firstToken + relexed.size() + tailLength);
+        System.arraycopy(relexedOffsets, 0, updatedOffsets, firstToken, relexed.size());
+        for (int i = 0; i < tailLength; i++) {
+            Token token = tokens.get(resume + i);
+            if (lineDelta != 0) {
+                token = new Token(token.type(), token.lexeme(), token.literal(), token.line() + lineDelta, token.column());
+            }
+            updated.add(token);
+            updatedOffsets[firstToken + relexed.size() + i] = offsets[resume + i] + delta;
+        }
+
+        // Nothing the lexer reads runs across a NEWLINE token, so the errors of the lines
+        // above and below the relexed ones still hold; those below only move.
+        List<Error> errors = new ArrayList<>();
+        for (Error error : lexerErrors) {
+            if (error.line() < line) errors.add(error);
+        }
+        errors.addAll(lexing.getErrors());
+        for (Error error : lexerErrors) {
+            if (error.line() >= resumeLine) {
+                errors.add(new Error(error.message(), error.line() + lineDelta, error.column(), error.errorType()));
+            }
+        }
+
+        damageStart = firstToken;
+        damageEnd = resume < 0 ? oldCount : resume;
+        tokenDelta = firstToken + relexed.size() - damageEnd;
+        relexedTokens = relexed.size();
+        tokens = updated;
+        offsets = updatedOffsets;
+        lexerErrors = errors;
+    }
+
+    private void reparse() {
+        errorManager.reset();
+        for (Error error : lexerErrors) errorManager.lexerError(error);
+
+        Parser parser = new Parser(tokens, errorManager);
+        parser.header();
+        List<Item> parsedItems = new ArrayList<>(items.size() + 1);
+        List<Stmt> parsed = new ArrayList<>(items.size());
+        reusedStatements = 0;
+        boolean more = true;
+        while (more) {
+            int start = parser.position();
+            Item reused = reusableAt(start, parsed);
+            if (reused != null) {
+                parsedItems.add(reused);
+                parsed.add(reused.statement());
+                reusedStatements++;
+                parser.seek(reused.end());
+                continue;
+            }
+            int count = parsed.size();
+            int errors = parser.errors();
+            more = parser.next(parsed);
+            Stmt statement = parsed.size() > count ? parsed.getLast() : null;
+            parsedItems.add(new Item(start, parser.position(), statement, parser.errors() == errors, 0));
+        }
+        items = parsedItems;
+        statements = new Statements(parsedItems);
+    }
+
+    // An old statement can stand in for parsing at start if it parsed cleanly from tokens
+    // the edit left alone, and declarations are still allowed when it is a DECLARE.
+    private Item reusableAt(int start, List<Stmt> parsed) {
+        int old;
+        if (start < damageStart) {
+            old = start;
+        } else if (start - tokenDelta >= damageEnd) {
+            old = start - tokenDelta;
+        } else {
+            return null;
+        }
+        Item item = itemAt(old);
+        if (item == null || !item.clean() || item.statement() == null) return null;
+        if (item.statement() instanceof Stmt.Declare && !Parser.declarationsOpen(parsed)) return null;
+        if (old >= damageEnd) {
+            return new Item(start, item.end() + tokenDelta, item.statement(), true, item.lineShift() + lineDelta);
+        }
+        if (item.end() < damageStart || (item.end() == damageStart && boundaryIntact(damageStart))) return item;
+        return null;
+    }
+
+    // A statement that ended right where the edit begins peeked at that token to decide
+    // whether to keep consuming newlines or an ELSE branch; anything else leaves it intact.
+    private boolean boundaryIntact(int index) {
+        TokenType type = tokens.get(index).type();
+        return type != TokenType.NEWLINE && type != TokenType.ELSE;
+    }
+
+    private Item itemAt(int start) {
+        int low = 0;
+        int high = items.size() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int at = items.get(middle).start();
+            if (at < start) {
+                low = middle + 1;
+            } else if (at > start) {
+                high = middle - 1;
+            } else {
+                return items.get(middle);
+            }
+        }
+        return null;
+    }
+
+    private int lastIndexBefore(int offset) {
+        int index = Arrays.binarySearch(offsets, offset);
+        return index >= 0 ? index - 1 : -index - 2;
+    }
+
+    private int findNewlineAt(int offset) {
+        int index = Arrays.binarySearch(offsets, offset);
+        if (index < 0 || tokens.get(index).type() != TokenType.NEWLINE) return -1;
+        return index;
+    }
+
+    // The statements of the items that parsed one. A statement that moved to other lines is
+    // shifted the first time it is read, and the item keeps the shifted one from then on.
+    private static final class Statements extends AbstractList<Stmt> {
+        private final List<Item> items;
+        private final int[] indices;
+        private final int size;
+
+        Statements(List<Item> items) {
+            this.items = items;
+            this.indices = new int[items.size()];
+            int size = 0;
+            for (int i = 0; i < items.size(); i++) {
+                if (items.get(i).statement() != null) indices[size++] = i;
+            }
+            this.size = size;
+        }
+
+        @Override
+        public Stmt get(int index) {
+            if (index < 0 || index >= size) throw new IndexOutOfBoundsException(index);
+            Item item = items.get(indices[index]);
+            if (item.lineShift() != 0) {
+                Stmt shifted = FlatAst.from(List.of(item.statement())).shiftLines(item.lineShift()).toStatements().getFirst();
+                item = new Item(item.start(), item.end(), shifted, item.clean(), 0);
+                items.set(indices[index], item);
+            }
+            return item.statement();
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
@@ -2,6 +2,7 @@ package Lexor.parser;
 
 import Lexor.err.ErrorManager;
 import Lexor.err.ParseError;
+import Lexor.lexer.Position;
 import Lexor.lexer.Token;
 import Lexor.lexer.TokenType;
 import Lexor.parser.ast.Expr;
@@ -9,33 +10,100 @@ import Lexor.parser.ast.Stmt;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class Parser {
     private final List<Token> tokens;
     private final ErrorManager errorManager;
+    private final boolean lazyBlocks;
     private int current = 0;
+    private int errors = 0;
+    private final Map<String, String> names = new HashMap<>();
+    // Nested IF/REPEAT/FOR bodies are parsed on this explicit stack rather than by recursing,
+    // so how deeply blocks can nest is limited by the heap and not by the thread stack.
+    private final List<OpenBlock> openBlocks = new ArrayList<>();
 
     public Parser(List<Token> tokens, ErrorManager errorManager) {
+        this(tokens, errorManager, false);
+    }
+
+    public Parser(List<Token> tokens, ErrorManager errorManager, boolean lazyBlocks) {
         this.tokens = tokens;
         this.errorManager = errorManager;
+        this.lazyBlocks = lazyBlocks;
+    }
+
+    Parser(List<Token> tokens, ErrorManager errorManager, boolean lazyBlocks, int start) {
+        this(tokens, errorManager, lazyBlocks);
+        this.current = start;
+    }
+
+    int position(){
+        return current;
+    }
+
+    void seek(int position){
+        current = position;
     }
 
+    /**
+     * Parses the whole program, recovering at statement boundaries so that every syntax
+     * error is reported in one pass. When {@link #hadError()} is set afterwards the returned
+     * list is only the statements that parsed cleanly and must not be executed.
+     */
     public List<Stmt> parse(){
+        List<Stmt> statements = new ArrayList<>();
+        header();
+        while(next(statements)){
+        }
+        return statements;
+    }
+
+    void header(){
         try{
-            List<Stmt> statements = new ArrayList<>();
             parseHeader();
-            parseDeclarations(statements);
-            parseExecutableStatements(statements);
+        }catch (ParseError error){
+            recover();
+        }
+    }
+
+    /**
+     * Parses one top-level statement into {@code statements}, or the footer once the body
+     * is done, recovering from a syntax error in either. Returns false when the program
+     * has nothing left to parse.
+     */
+    boolean next(List<Stmt> statements){
+        if(!atFooter()){
+            try{
+                statements.add(topLevelStatement(declarationsOpen(statements)));
+            }catch (ParseError error){
+                recover();
+            }
+            return true;
+        }
+        int footer = current;
+        try{
             parseFooter();
-            return statements;
+            return false;
         }catch (ParseError error){
-            synchronize();
-            return null;
+            // Past 'END SCRIPT' or out of tokens there is nothing left to recover into.
+            if(isAtEnd() || current >= footer + 2) return false;
+            recover();
+            return true;
         }
     }
 
-    private void parseHeader() {
+    public boolean hadError(){
+        return errors > 0;
+    }
+
+    int errors(){
+        return errors;
+    }
+
+    void parseHeader() {
         while(check(TokenType.NEWLINE)) advance();
         consumeKeywords(
                  "Expected 'SCRIPT AREA' at the start of file",
@@ -47,23 +115,26 @@ public class Parser {
         );
     }
 
-    private void parseDeclarations(List<Stmt> statements) {
-        while (match(TokenType.DECLARE) && !isAtEnd()) {
-            statements.add(varDeclaration());
-        }
+    static boolean declarationsOpen(List<Stmt> statements) {
+        return statements.isEmpty() || statements.getLast() instanceof Stmt.Declare;
+    }
+
+    boolean atFooter() {
+        return check(TokenType.END) || isAtEnd();
     }
 
-    private void parseExecutableStatements(List<Stmt> statements) {
-        while (!check(TokenType.END) && !isAtEnd()) {
-            if (check(TokenType.DECLARE)) {
+    Stmt topLevelStatement(boolean declarationsOpen) {
+        if (check(TokenType.DECLARE)) {
+            if (!declarationsOpen) {
                 throw error(peek(), "Expected declaration before executable statements.");
             }
-
-            statements.add(declaration());
+            advance();
+            return varDeclaration();
         }
+        return declaration();
     }
 
-    private void parseFooter() {
+    void parseFooter() {
         consumeKeywords(
                 "Expected 'END SCRIPT' to finish program",
                 TokenType.END, TokenType.SCRIPT
@@ -102,10 +173,43 @@ public class Parser {
         return new Stmt.Declare(names, initializers, type);
     }
 
+    private static final class OpenBlock {
+        final TokenType kind;
+        // IF: one condition per IF/ELSE IF header and one branch per closed body, so an ELSE
+        // body is the one branch without a condition. REPEAT/FOR: the loop condition.
+        final List<Expr> conditions = new ArrayList<>();
+        final List<Stmt> branches = new ArrayList<>();
+        Stmt initializer;
+        Expr increment;
+        List<Stmt> statements;
+
+        OpenBlock(TokenType kind, Expr condition) {
+            this.kind = kind;
+            conditions.add(condition);
+        }
+    }
+
     private Stmt statement() {
-        if(match(TokenType.IF)) return ifStatement();
-        if(match(TokenType.REPEAT)) return whenStatement();
-        if(match(TokenType.FOR)) return forStatement();
+        Stmt statement = beginStatement();
+        if(statement != null) return statement;
+        return finishBlocks(openBlocks.size() - 1);
+    }
+
+    // Either parses a whole simple statement, or parses the header of a block statement,
+    // opens its body and returns null.
+    private Stmt beginStatement() {
+        if(match(TokenType.IF)){
+            openBlock(new OpenBlock(TokenType.IF, ifCondition()));
+            return null;
+        }
+        if(match(TokenType.REPEAT)){
+            openBlock(whenHeader());
+            return null;
+        }
+        if(match(TokenType.FOR)){
+            openBlock(forHeader());
+            return null;
+        }
         if(match(TokenType.PRINT)){
             consume(TokenType.COLON, "Expected ':' after 'print'.");
             return printStatement();
@@ -117,6 +221,77 @@ public class Parser {
         return expressionStatement();
     }
 
+    // Parses statements into the innermost open block until the block at index depth is
+    // closed, and returns the statement it makes. A block that fails to close is dropped and
+    // its parent recovers, exactly where a recursive parser would have caught the error.
+    private Stmt finishBlocks(int depth) {
+        while(true){
+            OpenBlock block = openBlocks.getLast();
+            if(!check(TokenType.END) && !isAtEnd()){
+                if(check(TokenType.NEWLINE)){
+                    advance();
+                    continue;
+                }
+                try{
+                    Stmt statement = beginStatement();
+                    if(statement != null) block.statements.add(statement);
+                }catch (ParseError error){
+                    recover();
+                }
+                continue;
+            }
+            Stmt closed;
+            try{
+                closed = closeBlock(block);
+            }catch (ParseError error){
+                openBlocks.removeLast();
+                if(openBlocks.size() == depth) throw error;
+                recover();
+                continue;
+            }
+            if(closed == null) continue;
+            openBlocks.removeLast();
+            if(openBlocks.size() == depth) return closed;
+            openBlocks.getLast().statements.add(closed);
+        }
+    }
+
+    private void openBlock(OpenBlock block) {
+        block.statements = blockBody(block.kind);
+        openBlocks.add(block);
+    }
+
+    // Consumes the END of the innermost block. Returns the finished statement, or null when
+    // an ELSE or ELSE IF follows and the same block is reopened for that branch.
+    private Stmt closeBlock(OpenBlock block) {
+        consumeKeywords(blockEndMessage(block.kind), TokenType.END, block.kind);
+        Stmt body = new Stmt.Block(block.statements);
+        switch (block.kind) {
+            case REPEAT:
+                return new Stmt.When(block.conditions.getFirst(), body);
+            case FOR:
+                return forLoop(block, body);
+            default:
+                break;
+        }
+        block.branches.add(body);
+        if(block.branches.size() == block.conditions.size() && match(TokenType.ELSE)){
+            if(match(TokenType.IF)){
+                block.conditions.add(ifCondition());
+            }else{
+                consumeNewlines("Expected newline after 'ELSE'.");
+                consumeKeywords("Expected 'START IF' after 'ELSE'.", TokenType.START, TokenType.IF);
+            }
+            block.statements = blockBody(TokenType.IF);
+            return null;
+        }
+        Stmt statement = block.branches.size() > block.conditions.size() ? block.branches.getLast() : null;
+        for(int i = block.conditions.size() - 1; i >= 0; i--){
+            statement = new Stmt.If(block.conditions.get(i), block.branches.get(i), statement);
+        }
+        return statement;
+    }
+
     private Stmt scanStatement() {
         List<Token> names = new ArrayList<>();
         consume(TokenType.IDENTIFIER, "Expected at least one variable");
@@ -128,79 +303,81 @@ public class Parser {
         return new Stmt.Scan(names);
     }
 
-    private Stmt ifStatement(){
+    private Expr ifCondition(){
         consume(TokenType.LEFT_PAREN, "Expected '(' after 'IF'.");
         Expr condition = expression();
         consume(TokenType.RIGHT_PAREN, "Expected ')' after if condition.");
         consumeNewlines("Expected newline after condition.");
 
         consumeKeywords("Expected 'START IF' at the end of condition block.", TokenType.START, TokenType.IF);
-        Stmt thenBranch = new Stmt.Block(ifBlock());
-        Stmt elseBranch = null;
-        if(match(TokenType.ELSE)){
-            if(match(TokenType.IF)){
-                elseBranch = ifStatement();
-            }else{
-                consumeNewlines("Expected newline after 'ELSE'.");
-                consumeKeywords("Expected 'START IF' after 'ELSE'.", TokenType.START, TokenType.IF);
-                elseBranch = new Stmt.Block(ifBlock());
-            }
-        }
-        return new Stmt.If(condition, thenBranch, elseBranch);
+        return condition;
     }
 
-    private List<Stmt> ifBlock(){
-        List<Stmt> statements = new ArrayList<>();
-        while(!check(TokenType.END) && !isAtEnd()) {
-            if (check(TokenType.NEWLINE)) {
-                advance();
-                continue;
-            }
-            statements.add(statement());
-        }
-        consumeKeywords("Expected 'END IF' at the end of condition block.", TokenType.END, TokenType.IF);
-        return statements;
+    private List<Stmt> blockBody(TokenType kind){
+        if(lazyBlocks) return skipBlock(kind);
+        return new ArrayList<>();
     }
 
-    private List<Stmt> whenBlock(){
+    List<Stmt> blockStatements(){
         List<Stmt> statements = new ArrayList<>();
         while(!check(TokenType.END) && !isAtEnd()) {
             if (check(TokenType.NEWLINE)) {
                 advance();
                 continue;
             }
-            statements.add(statement());
+            try{
+                statements.add(statement());
+            }catch (ParseError error){
+                recover();
+            }
         }
-        consumeKeywords("Expected 'END REPEAT' at the end of condition block.", TokenType.END, TokenType.REPEAT);
         return statements;
     }
 
-    private List<Stmt> forBlock(){
-        List<Stmt> statements = new ArrayList<>();
-        while(!check(TokenType.END) && !isAtEnd()) {
-            if (check(TokenType.NEWLINE)) {
+    // Only checks that every START IF/REPEAT/FOR inside the body is closed by the matching END,
+    // leaving the statements themselves to be parsed the first time the block runs.
+    private List<Stmt> skipBlock(TokenType kind){
+        int start = current;
+        List<TokenType> open = new ArrayList<>();
+        open.add(kind);
+        while(!isAtEnd()){
+            if(check(TokenType.START) && isBlockKind(peekNext())){
+                advance();
+                open.add(advance().type());
+            }else if(check(TokenType.END)){
+                TokenType innermost = open.getLast();
+                if(open.size() == 1) break;
+                advance();
+                if(!check(innermost)) throw error(peek(), blockEndMessage(innermost));
+                advance();
+                open.removeLast();
+            }else{
                 advance();
-                continue;
             }
-            statements.add(statement());
         }
-        consumeKeywords("Expected 'END FOR' at the end of condition block.", TokenType.END, TokenType.FOR);
-        return statements;
+        if(isAtEnd()) return new ArrayList<>();
+        return new DeferredBlock(tokens, start, current, kind);
+    }
+
+    private static boolean isBlockKind(Token token){
+        return token.type() == TokenType.IF || token.type() == TokenType.REPEAT || token.type() == TokenType.FOR;
+    }
+
+    static String blockEndMessage(TokenType kind){
+        return "Expected 'END " + kind + "' at the end of condition block.";
     }
 
-    private Stmt whenStatement() {
+    private OpenBlock whenHeader() {
         consume(TokenType.WHEN, "Expected 'WHEN' after 'REPEAT'.");
         consume(TokenType.LEFT_PAREN, "Expected '(' after 'WHEN'.");
         Expr condition = expression();
         consume(TokenType.RIGHT_PAREN, "Exprected ')' after condition.");
         consumeNewlines("Expected newline after condition.");
         consumeKeywords("Expected 'START REPEAT' at the end of condition block.", TokenType.START, TokenType.REPEAT);
-        Stmt body = new Stmt.Block(whenBlock());
-
-        return new Stmt.When(condition, body);
+        return new OpenBlock(TokenType.REPEAT, condition);
     }
 
-    private Stmt forStatement() {
+    private OpenBlock forHeader() {
         consume(TokenType.LEFT_PAREN, "Expected '(' after 'FOR'.");
 
         Stmt initializer;
@@ -229,18 +406,24 @@ public class Parser {
         consume(TokenType.RIGHT_PAREN, "Expected ')' after clauses.");
         consumeNewlines("Expected newline after clauses.");
         consumeKeywords("Expected 'START FOR' to begin loop block.", TokenType.START, TokenType.FOR);
-        List<Stmt> statements = forBlock();
-        Stmt body = new Stmt.Block(statements);
 
-        if (increment != null) {
-            body = new Stmt.Block(Arrays.asList(body, new Stmt.Expression(increment)));
+        OpenBlock block = new OpenBlock(TokenType.FOR, condition);
+        block.initializer = initializer;
+        block.increment = increment;
+        return block;
+    }
+
+    private Stmt forLoop(OpenBlock block, Stmt body) {
+        if (block.increment != null) {
+            body = new Stmt.Block(Arrays.asList(body, new Stmt.Expression(block.increment)));
         }
 
+        Expr condition = block.conditions.getFirst();
         if (condition == null) condition = new Expr.Literal(true);
         body = new Stmt.When(condition, body);
 
-        if (initializer != null) {
-            body = new Stmt.Block(Arrays.asList(initializer, body));
+        if (block.initializer != null) {
+            body = new Stmt.Block(Arrays.asList(block.initializer, body));
         }
 
         return body;
@@ -258,125 +441,159 @@ public class Parser {
         return new Stmt.Expression(value);
     }
 
+    // Binding power of each infix operator, indexed by TokenType ordinal; 0 means "not infix".
+    private static final int PREC_OR = 1;
+    private static final int PREC_AND = 2;
+    private static final int PREC_EQUALITY = 3;
+    private static final int PREC_COMPARISON = 4;
+    private static final int PREC_TERM = 5;
+    private static final int PREC_FACTOR = 6;
+    private static final byte[] PRECEDENCE = new byte[TokenType.values().length];
+
+    // Levels of the entries on the operator stack that are not infix operators.
+    private static final int GROUP = -1;
+    private static final int ASSIGN = 0;
+    private static final int PREFIX = 7;
+
+    static{
+        PRECEDENCE[TokenType.OR.ordinal()] = PREC_OR;
+        PRECEDENCE[TokenType.AND.ordinal()] = PREC_AND;
+        PRECEDENCE[TokenType.NOT_EQUAL.ordinal()] = PREC_EQUALITY;
+        PRECEDENCE[TokenType.EQUAL_EQUAL.ordinal()] = PREC_EQUALITY;
+        PRECEDENCE[TokenType.GREATER.ordinal()] = PREC_COMPARISON;
+        PRECEDENCE[TokenType.GREATER_EQUAL.ordinal()] = PREC_COMPARISON;
+        PRECEDENCE[TokenType.LESS.ordinal()] = PREC_COMPARISON;
+        PRECEDENCE[TokenType.LESS_EQUAL.ordinal()] = PREC_COMPARISON;
+        PRECEDENCE[TokenType.PLUS.ordinal()] = PREC_TERM;
+        PRECEDENCE[TokenType.MINUS.ordinal()] = PREC_TERM;
+        PRECEDENCE[TokenType.AMPERSAND.ordinal()] = PREC_TERM;
+        PRECEDENCE[TokenType.MOD.ordinal()] = PREC_TERM;
+        PRECEDENCE[TokenType.STAR.ordinal()] = PREC_FACTOR;
+        PRECEDENCE[TokenType.SLASH.ordinal()] = PREC_FACTOR;
+    }
+
+    // Operand and operator stacks of expression(), kept for the whole parse so that parsing an
+    // expression allocates nothing but its nodes. Each operator has its level beside it.
+    private Expr[] operands = new Expr[16];
+    private int operandCount = 0;
+    private Token[] operators = new Token[16];
+    private byte[] levels = new byte[16];
+    private int operatorCount = 0;
+
+    // Operator precedence parsing on explicit operand and operator stacks. Infix operators are
+    // left-associative, assignment is right-associative and binds loosest, prefix operators
+    // bind tightest, and each '(' fences off the operators before it until its ')'.
     private Expr expression(){
-        return assignment();
-    }
-
-    private Expr assignment() {
-        Expr expr = or();
-
-        if (match(TokenType.EQUAL)) {
-            Token equals = previous();
-            Expr value = assignment();
-
-            if (expr instanceof Expr.Variable) {
-                Token name = ((Expr.Variable)expr).name;
-                return new Expr.Assign(name, value);
+        try{
+            while(true){
+                while(true){
+                    switch(peek().type()){
+                        case NOT:
+                        case MINUS:
+                        case PLUS:
+                            pushOperator(advance(), PREFIX);
+                            continue;
+                        case LEFT_PAREN:
+                            pushOperator(advance(), GROUP);
+                            continue;
+                        default:
+                            break;
+                    }
+                    break;
+                }
+                pushOperand(primary());
+
+                while(true){
+                    int precedence = PRECEDENCE[peek().type().ordinal()];
+                    if(precedence != 0){
+                        reduce(precedence);
+                        pushOperator(advance(), precedence);
+                        break;
+                    }
+                    if(check(TokenType.EQUAL)){
+                        reduce(ASSIGN + 1);
+                        pushOperator(advance(), ASSIGN);
+                        break;
+                    }
+                    reduce(ASSIGN);
+                    if(operatorCount == 0) return operands[0];
+                    consume(TokenType.RIGHT_PAREN, "Expected ')' after expression.");
+                    operators[--operatorCount] = null;
+                    operands[operandCount - 1] = new Expr.Grouping(operands[operandCount - 1]);
+                }
             }
-
-            throw error(equals, "Invalid assignment target.");
-        }
-
-        return expr;
-    }
-
-    private Expr or(){
-        Expr expr = and();
-
-        while(match(TokenType.OR)){
-            Token operator = previous();
-            Expr right = and();
-            expr = new Expr.Logical(expr, operator, right);
-        }
-        return expr;
-    }
-
-    private Expr and(){
-        Expr expr = equality();
-
-        while(match(TokenType.AND)){
-            Token operator = previous();
-            Expr right = equality();
-            expr = new Expr.Logical(expr, operator, right);
+        }finally{
+            // Also after a syntax error, so the next expression starts on empty stacks.
+            Arrays.fill(operands, 0, operandCount, null);
+            Arrays.fill(operators, 0, operatorCount, null);
+            operandCount = 0;
+            operatorCount = 0;
         }
-        return expr;
     }
 
-    private Expr equality(){
-        Expr expr = comparison();
-
-        while(match(TokenType.NOT_EQUAL, TokenType.EQUAL_EQUAL)){
-            Token operator = previous();
-            Expr right = comparison();
-            expr = new Expr.Binary(expr, operator, right);
+    // Pops and applies every operator on top of the stack whose level is at least minLevel.
+    private void reduce(int minLevel){
+        while(operatorCount > 0 && levels[operatorCount - 1] >= minLevel){
+            int level = levels[--operatorCount];
+            Token operator = operators[operatorCount];
+            operators[operatorCount] = null;
+            Expr right = operands[--operandCount];
+            operands[operandCount] = null;
+            if(level == PREFIX){
+                operands[operandCount++] = new Expr.Unary(operator.type(), right, Position.of(operator));
+            }else if(level == ASSIGN){
+                if(!(operands[operandCount - 1] instanceof Expr.Variable target)){
+                    throw error(operator, "Invalid assignment target.");
+                }
+                operands[operandCount - 1] = new Expr.Assign(target.name, right, target.position);
+            }else if(level <= PREC_AND){
+                operands[operandCount - 1] = new Expr.Logical(operands[operandCount - 1], operator.type(), right, Position.of(operator));
+            }else{
+                operands[operandCount - 1] = new Expr.Binary(operands[operandCount - 1], operator.type(), right, Position.of(operator));
+            }
         }
-        return expr;
     }
 
-    private Expr comparison(){
-        Expr expr = term();
-
-        while(match(TokenType.GREATER, TokenType.GREATER_EQUAL,
-                TokenType.LESS, TokenType.LESS_EQUAL)){
-            Token operator = previous();
-            Expr right = term();
-            expr = new Expr.Binary(expr, operator, right);
-        }
-        return expr;
+    private void pushOperand(Expr operand){
+        if(operandCount == operands.length) operands = Arrays.copyOf(operands, operandCount * 2);
+        operands[operandCount++] = operand;
     }
 
-    private Expr term(){
-        Expr expr = factor();
-
-        while(match(TokenType.PLUS, TokenType.MINUS, TokenType.AMPERSAND, TokenType.MOD)){
-            Token operator = previous();
-            Expr right = factor();
-            expr = new Expr.Binary(expr, operator, right);
+    private void pushOperator(Token operator, int level){
+        if(operatorCount == operators.length){
+            operators = Arrays.copyOf(operators, operatorCount * 2);
+            levels = Arrays.copyOf(levels, operatorCount * 2);
         }
-        return expr;
+        operators[operatorCount] = operator;
+        levels[operatorCount] = (byte) level;
+        operatorCount++;
     }
 
-    private Expr factor(){
-        Expr expr = unary();
-
-        while(match(TokenType.STAR, TokenType.SLASH)){
-            Token operator = previous();
-            Expr right = unary();
-            expr = new Expr.Binary(expr, operator, right);
+    private Expr primary(){
+        switch(peek().type()){
+            case FALSE: advance(); return new Expr.Literal(false);
+            case TRUE: advance(); return new Expr.Literal(true);
+            case NULL: advance(); return new Expr.Literal(null);
+            case DOLLAR: advance(); return new Expr.Literal("\n");
+            case FLOAT_LITERAL:
+            case INTEGER_LITERAL:
+            case STRING_LITERAL:
+            case CHAR_LITERAL:
+                return new Expr.Literal(advance().literal());
+            case IDENTIFIER: {
+                Token name = advance();
+                return new Expr.Variable(name(name.lexeme()), Position.of(name));
+            }
+            default: throw error(peek(), "Expected expression.");
         }
-        return expr;
     }
 
-    private Expr unary(){
-        if(match(TokenType.NOT, TokenType.MINUS, TokenType.PLUS)){
-            Token operator = previous();
-            Expr right = unary();
-            return new Expr.Unary(operator, right);
-        }
-        return primary();
+    // One String per distinct identifier, so the AST does not keep every token's lexeme alive.
+    private String name(String lexeme){
+        String existing = names.putIfAbsent(lexeme, lexeme);
+        return existing != null ? existing : lexeme;
     }
 
-    private Expr primary(){
-        if(match(TokenType.FALSE)) return new Expr.Literal(false);
-        if(match(TokenType.TRUE)) return new Expr.Literal(true);
-        if(match(TokenType.NULL)) return new Expr.Literal(null);
-        if(match(TokenType.DOLLAR)) return new Expr.Literal("\n");
-
-        if(match(TokenType.FLOAT_LITERAL, TokenType.INTEGER_LITERAL,
-                TokenType.STRING_LITERAL, TokenType.CHAR_LITERAL)) {
-            return new Expr.Literal(previous().literal());
-        }
-        if(match(TokenType.LEFT_PAREN)){
-            Expr expr = expression();
-            consume(TokenType.RIGHT_PAREN, "Expected ')' after expression.");
-            return new Expr.Grouping(expr);
-        }
-
-        if(match(TokenType.IDENTIFIER)){
-            return new Expr.Variable(previous());
-        }
-        throw error(peek(), "Expected expression.");
-    }
     private boolean isAtEnd(){
         return peek().type() == TokenType.EOF;
     }
@@ -394,6 +611,19 @@ public class Parser {
         return tokens.get(current);
     }
 
+    private Token peekNext(){
+        if(current + 1 >= tokens.size()) return tokens.getLast();
+        return tokens.get(current + 1);
+    }
+
+    private boolean match(TokenType type){
+        if(check(type)){
+            advance();
+            return true;
+        }
+        return false;
+    }
+
     private boolean match(TokenType ... types){
         for(TokenType type: types){
             if(check(type)){
@@ -433,27 +663,44 @@ public class Parser {
         }
     }
 
-    private ParseError error(Token token, String message){
+    ParseError error(Token token, String message){
+        errors++;
         errorManager.syntaxError(token, message);
         return new ParseError();
     }
 
+    private void recover(){
+        synchronize();
+        // A statement that failed in its header leaves its START ... END body behind;
+        // skip it (and any ELSE branches) rather than reporting every line of it again.
+        while(check(TokenType.START) && isBlockKind(peekNext())){
+            skipBalancedBlock();
+            if(check(TokenType.ELSE)) synchronize();
+        }
+    }
+
     private void synchronize(){
         advance();
 
         while(!isAtEnd()){
             if(previous().type() == TokenType.NEWLINE) return;
+            advance();
+        }
+    }
 
-            switch(peek().type()){
-                case WHEN:
-                case IF:
-                case FOR:
-                case DECLARE:
-                case START:
-                case PRINT:
-                    return;
+    private void skipBalancedBlock(){
+        int depth = 0;
+        do{
+            if(check(TokenType.END) && peekNext().type() == TokenType.SCRIPT) return;
+            if(check(TokenType.START) && isBlockKind(peekNext())){
+                depth++;
+                advance();
+            }else if(check(TokenType.END) && isBlockKind(peekNext())){
+                depth--;
+                advance();
             }
             advance();
-        }
+        }while(depth > 0 && !isAtEnd());
+        while(check(TokenType.NEWLINE)) advance();
     }
 }
@@ -0,0 +1,262 @@
+package Lexor.parser.ast;
+
+import Lexor.lexer.Position;
+import Lexor.lexer.TokenType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Hash-conses expression trees across programs. Expressions are stripped of their source
+ * position, after which structurally identical subtrees are replaced by one canonical,
+ * shared instance. Statements stay per program and remember, in a side table keyed by node
+ * identity, where each of their names and operators came from (see {@link InternedProgram#locate}).
+ *
+ * <p>Children are interned before their parent, so two candidates are equal exactly when
+ * their children are the same canonical objects; the lookup is O(1) per node.
+ * The interner is safe to share between threads and never evicts.
+ */
+public class AstInterner {
+    private final Map<Key, Expr> expressions = new ConcurrentHashMap<>();
+    private final Map<String, String> names = new ConcurrentHashMap<>();
+
+    private record Key(Class<?> kind, Object first, Object second, Object third) {}
+
+    public InternedProgram intern(List<Stmt> statements) {
+        Session session = new Session();
+        List<Stmt> interned = session.statements(statements);
+        return new InternedProgram(interned, session.positions);
+    }
+
+    public int size() {
+        return expressions.size();
+    }
+
+    public void clear() {
+        expressions.clear();
+        names.clear();
+    }
+
+    public Expr assign(String name, Expr value) {
+        String canonical = name(name);
+        return canonical(new Key(Expr.Assign.class, canonical, value, null), () -> new Expr.Assign(canonical, value, Position.NONE));
+    }
+
+    public Expr binary(Expr left, TokenType operator, Expr right) {
+        return canonical(new Key(Expr.Binary.class, left, operator, right), () -> new Expr.Binary(left, operator, right, Position.NONE));
+    }
+
+    public Expr grouping(Expr expression) {
+        return canonical(new Key(Expr.Grouping.class, expression, null, null), () -> new Expr.Grouping(expression));
+    }
+
+    public Expr literal(Object value) {
+        return canonical(new Key(Expr.Literal.class, value, null, null), () -> new Expr.Literal(value));
+    }
+
+    public Expr logical(Expr left, TokenType operator, Expr right) {
+        return canonical(new Key(Expr.Logical.class, left, operator, right), () -> new Expr.Logical(left, operator, right, Position.NONE));
+    }
+
+    public Expr unary(TokenType operator, Expr right) {
+        return canonical(new Key(Expr.Unary.class, operator, right, null), () -> new Expr.Unary(operator, right, Position.NONE));
+    }
+
+    public Expr variable(String name) {
+        String canonical = name(name);
+        return canonical(new Key(Expr.Variable.class, canonical, null, null), () -> new Expr.Variable(canonical, Position.NONE));
+    }
+
+    private Expr canonical(Key key, Supplier<Expr> create) {
+        Expr existing = expressions.get(key);
+        if (existing != null) return existing;
+        return expressions.computeIfAbsent(key, k -> create.get());
+    }
+
+    private String name(String name) {
+        String existing = names.putIfAbsent(name, name);
+        return existing != null ? existing : name;
+    }
+
+    private final class Session {
+        private final Map<Stmt, InternedProgram.Positions> positions = new IdentityHashMap<>();
+        // Nodes still to rebuild, next one on top, so nesting depth is bounded only by the heap.
+        // A node comes up once to push its children above it and once more, expanded, to be
+        // rebuilt from theirs, which by then are on top of the built stack. Each carries the
+        // table of the statement it belongs to: canonical nodes of that statement that can
+        // raise an error, in evaluation order.
+        private Object[] pending = new Object[32];
+        private boolean[] expanded = new boolean[32];
+        private InternedProgram.Positions.Builder[] tables = new InternedProgram.Positions.Builder[32];
+        private int pendingCount = 0;
+        private Object[] built = new Object[32];
+        private int builtCount = 0;
+
+        List<Stmt> statements(List<Stmt> statements) {
+            pushAll(statements, null);
+            while (pendingCount > 0) {
+                int top = --pendingCount;
+                Object node = pending[top];
+                InternedProgram.Positions.Builder table = tables[top];
+                pending[top] = null;
+                tables[top] = null;
+                if (expanded[top]) {
+                    built(rebuild(node, table));
+                } else {
+                    expand(node, table);
+                }
+            }
+            return pop(statements.size());
+        }
+
+        // Rebuilds a leaf at once; pushes any other node back, expanded, under its children.
+        // A statement starts a table of its own, which its expressions record into.
+        private void expand(Object node, InternedProgram.Positions.Builder table) {
+            if (node instanceof Stmt && !(node instanceof Stmt.Scan)) {
+                table = new InternedProgram.Positions.Builder();
+            }
+            switch (node) {
+                case null -> built(null);
+                case Stmt.Scan stmt -> built(stmt);
+                case Expr.Literal expr -> built(literal(expr.value));
+                case Expr.Variable expr -> built(record(table, variable(expr.name), expr.position));
+                case Stmt.If stmt -> {
+                    push(stmt, true, table);
+                    push(stmt.elseBranch, false, null);
+                    push(stmt.thenBranch, false, null);
+                    push(stmt.condition, false, table);
+                }
+                case Stmt.When stmt -> {
+                    push(stmt, true, table);
+                    push(stmt.body, false, null);
+                    push(stmt.condition, false, table);
+                }
+                case Stmt.Block stmt -> {
+                    push(stmt, true, table);
+                    pushAll(stmt.statements, null);
+                }
+                case Stmt.Expression stmt -> {
+                    push(stmt, true, table);
+                    push(stmt.expression, false, table);
+                }
+                case Stmt.Print stmt -> {
+                    push(stmt, true, table);
+                    push(stmt.expression, false, table);
+                }
+                case Stmt.Declare stmt -> {
+                    push(stmt, true, table);
+                    pushAll(stmt.initializer, table);
+                }
+                case Expr.Assign expr -> {
+                    push(expr, true, table);
+                    push(expr.value, false, table);
+                }
+                case Expr.Binary expr -> {
+                    push(expr, true, table);
+                    push(expr.right, false, table);
+                    push(expr.left, false, table);
+                }
+                case Expr.Grouping expr -> {
+                    push(expr, true, table);
+                    push(expr.expression, false, table);
+                }
+                case Expr.Logical expr -> {
+                    push(expr, true, table);
+                    push(expr.right, false, table);
+                    push(expr.left, false, table);
+                }
+                case Expr.Unary expr -> {
+                    push(expr, true, table);
+                    push(expr.right, false, table);
+                }
+                default -> throw new IllegalArgumentException("Cannot intern " + node.getClass().getSimpleName());
+            }
+        }
+
+        private Object rebuild(Object node, InternedProgram.Positions.Builder table) {
+            if (node instanceof Expr) {
+                return switch (node) {
+                    case Expr.Assign expr -> record(table, assign(expr.name, (Expr) pop()), expr.position);
+                    case Expr.Binary expr -> {
+                        Expr right = (Expr) pop();
+                        yield record(table, binary((Expr) pop(), expr.operator, right), expr.position);
+                    }
+                    case Expr.Logical expr -> {
+                        Expr right = (Expr) pop();
+                        yield record(table, logical((Expr) pop(), expr.operator, right), expr.position);
+                    }
+                    case Expr.Unary expr -> record(table, unary(expr.operator, (Expr) pop()), expr.position);
+                    default -> grouping((Expr) pop());
+                };
+            }
+            Stmt interned = switch (node) {
+                case Stmt.If stmt -> {
+                    Stmt elseBranch = (Stmt) pop(), thenBranch = (Stmt) pop();
+                    yield new Stmt.If((Expr) pop(), thenBranch, elseBranch);
+                }
+                case Stmt.When stmt -> {
+                    Stmt body = (Stmt) pop();
+                    yield new Stmt.When((Expr) pop(), body);
+                }
+                case Stmt.Block stmt -> new Stmt.Block(pop(stmt.statements.size()));
+                case Stmt.Expression stmt -> new Stmt.Expression((Expr) pop());
+                case Stmt.Print stmt -> new Stmt.Print((Expr) pop());
+                default -> {
+                    Stmt.Declare stmt = (Stmt.Declare) node;
+                    yield new Stmt.Declare(stmt.names, pop(stmt.initializer.size()), stmt.type);
+                }
+            };
+            if (!table.isEmpty()) {
+                positions.put(interned, table.build());
+            }
+            return interned;
+        }
+
+        private Expr record(InternedProgram.Positions.Builder table, Expr node, long position) {
+            table.add(node, position);
+            return node;
+        }
+
+        private void pushAll(List<?> nodes, InternedProgram.Positions.Builder table) {
+            for (int i = nodes.size() - 1; i >= 0; i--) push(nodes.get(i), false, table);
+        }
+
+        private void push(Object node, boolean childrenPushed, InternedProgram.Positions.Builder table) {
+            if (pendingCount == pending.length) {
+                pending = Arrays.copyOf(pending, pendingCount * 2);
+                expanded = Arrays.copyOf(expanded, pendingCount * 2);
+                tables = Arrays.copyOf(tables, pendingCount * 2);
+            }
+            pending[pendingCount] = node;
+            expanded[pendingCount] = childrenPushed;
+            tables[pendingCount] = table;
+            pendingCount++;
+        }
+
+        private void built(Object node) {
+            if (builtCount == built.length) built = Arrays.copyOf(built, builtCount * 2);
+            built[builtCount++] = node;
+        }
+
+        private Object pop() {
+            Object node = built[--builtCount];
+            built[builtCount] = null;
+            return node;
+        }
+
+        // The last count built nodes, in the order they were built.
+        @SuppressWarnings("unchecked")
+        private <T> List<T> pop(int count) {
+            List<T> nodes = new ArrayList<>(count);
+            for (int i = builtCount - count; i < builtCount; i++) nodes.add((T) built[i]);
+            Arrays.fill(built, builtCount - count, builtCount, null);
+            builtCount -= count;
+            return nodes;
+        }
+    }
+}
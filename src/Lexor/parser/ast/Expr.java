@@ -1,7 +1,8 @@
 package Lexor.parser.ast;
-import Lexor.lexer.Token;
+import Lexor.lexer.TokenType;
 
-public abstract class Expr {
+public sealed abstract class Expr
+        permits Expr.Assign, Expr.Binary, Expr.Grouping, Expr.Literal, Expr.Logical, Expr.Unary, Expr.Variable {
     public interface Visitor<R> {
         R visitAssignExpr(Assign expr);
         R visitBinaryExpr(Binary expr);
@@ -11,13 +12,15 @@ public abstract class Expr {
         R visitUnaryExpr(Unary expr);
         R visitVariableExpr(Variable expr);
     }
-    public static class Assign extends Expr {
-        public final Token name;
+    public static final class Assign extends Expr {
+        public final String name;
         public final Expr value;
+        public final long position;
 
-        public Assign(Token name, Expr value) {
+        public Assign(String name, Expr value, long position) {
             this.name = name;
             this.value = value;
+            this.position = position;
         }
 
         @Override
@@ -25,15 +28,17 @@ public abstract class Expr {
         return visitor.visitAssignExpr(this);
         }
     }
-    public static class Binary extends Expr {
+    public static final class Binary extends Expr {
         public final Expr left;
-        public final Token operator;
+        public final TokenType operator;
         public final Expr right;
+        public final long position;
 
-        public Binary(Expr left, Token operator, Expr right) {
+        public Binary(Expr left, TokenType operator, Expr right, long position) {
             this.left = left;
             this.operator = operator;
             this.right = right;
+            this.position = position;
         }
 
         @Override
@@ -41,7 +46,7 @@ public abstract class Expr {
         return visitor.visitBinaryExpr(this);
         }
     }
-    public static class Grouping extends Expr {
+    public static final class Grouping extends Expr {
         public final Expr expression;
 
         public Grouping(Expr expression) {
@@ -53,7 +58,7 @@ public abstract class Expr {
         return visitor.visitGroupingExpr(this);
         }
     }
-    public static class Literal extends Expr {
+    public static final class Literal extends Expr {
         public final Object value;
 
         public Literal(Object value) {
@@ -65,15 +70,17 @@ public abstract class Expr {
         return visitor.visitLiteralExpr(this);
         }
     }
-    public static class Logical extends Expr {
+    public static final class Logical extends Expr {
         public final Expr left;
-        public final Token operator;
+        public final TokenType operator;
         public final Expr right;
+        public final long position;
 
-        public Logical(Expr left, Token operator, Expr right) {
+        public Logical(Expr left, TokenType operator, Expr right, long position) {
             this.left = left;
             this.operator = operator;
             this.right = right;
+            this.position = position;
         }
 
         @Override
@@ -81,13 +88,15 @@ public abstract class Expr {
         return visitor.visitLogicalExpr(this);
         }
     }
-    public static class Unary extends Expr {
-        public final Token operator;
+    public static final class Unary extends Expr {
+        public final TokenType operator;
         public final Expr right;
+        public final long position;
 
-        public Unary(Token operator, Expr right) {
+        public Unary(TokenType operator, Expr right, long position) {
             this.operator = operator;
             this.right = right;
+            this.position = position;
         }
 
         @Override
@@ -95,11 +104,13 @@ public abstract class Expr {
         return visitor.visitUnaryExpr(this);
         }
     }
-    public static class Variable extends Expr {
-        public final Token name;
+    public static final class Variable extends Expr {
+        public final String name;
+        public final long position;
 
-        public Variable(Token name) {
+        public Variable(String name, long position) {
             this.name = name;
+            this.position = position;
         }
 
         @Override
@@ -0,0 +1,484 @@
+package Lexor.parser.ast;
+
+import Lexor.lexer.Position;
+import Lexor.lexer.Token;
+import Lexor.lexer.TokenType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A whole program stored as parallel primitive arrays instead of linked node objects.
+ * Node {@code n} has a kind tag, up to three int operands, an index into the constant pool
+ * and a packed source position. Variable-length children (block bodies, declared and
+ * scanned names) live in a shared {@link #list} array as {@code (start, count)} ranges.
+ *
+ * <p>Operand meaning per kind:
+ * <pre>
+ *   IF          first=condition  second=then       third=else (-1 if absent)
+ *   WHEN        first=condition  second=body
+ *   BLOCK       first=list start second=count
+ *   EXPRESSION  first=expression
+ *   PRINT       first=expression
+ *   SCAN        first=list start second=count      (list holds NAME nodes)
+ *   DECLARE     first=list start second=count      third=type ordinal (list holds NAME, initializer pairs)
+ *   ASSIGN      first=value                        constant=name
+ *   BINARY      first=left       second=right      third=operator ordinal
+ *   GROUPING    first=expression
+ *   LITERAL                                        constant=value (-1 for NULL)
+ *   LOGICAL     first=left       second=right      third=operator ordinal
+ *   UNARY       first=operand                      third=operator ordinal
+ *   VARIABLE                                       constant=name
+ *   NAME                                           constant=name
+ * </pre>
+ */
+public final class FlatAst {
+    public static final byte IF = 1, WHEN = 2, BLOCK = 3, EXPRESSION = 4, PRINT = 5, SCAN = 6, DECLARE = 7;
+    public static final byte ASSIGN = 8, BINARY = 9, GROUPING = 10, LITERAL = 11, LOGICAL = 12, UNARY = 13,
+            VARIABLE = 14, NAME = 15;
+
+    private static final TokenType[] TOKEN_TYPES = TokenType.values();
+
+    private final byte[] kind;
+    private final int[] first;
+    private final int[] second;
+    private final int[] third;
+    private final int[] constant;
+    private final long[] position;
+    private final int[] list;
+    private final Object[] constants;
+    private final int rootStart;
+    private final int rootCount;
+
+    private FlatAst(Builder builder, int rootStart, int rootCount) {
+        int size = builder.size;
+        this.kind = Arrays.copyOf(builder.kind, size);
+        this.first = Arrays.copyOf(builder.first, size);
+        this.second = Arrays.copyOf(builder.second, size);
+        this.third = Arrays.copyOf(builder.third, size);
+        this.constant = Arrays.copyOf(builder.constant, size);
+        this.position = Arrays.copyOf(builder.position, size);
+        this.list = Arrays.copyOf(builder.list, builder.listSize);
+        this.constants = builder.constants.toArray();
+        this.rootStart = rootStart;
+        this.rootCount = rootCount;
+    }
+
+    // The arrays are never written after construction, so a copy can share all but the positions.
+    private FlatAst(FlatAst ast, long[] position) {
+        this.kind = ast.kind;
+        this.first = ast.first;
+        this.second = ast.second;
+        this.third = ast.third;
+        this.constant = ast.constant;
+        this.position = position;
+        this.list = ast.list;
+        this.constants = ast.constants;
+        this.rootStart = ast.rootStart;
+        this.rootCount = ast.rootCount;
+    }
+
+    public static FlatAst from(List<Stmt> statements) {
+        Builder builder = new Builder();
+        int[] roots = builder.roots(statements);
+        int start = builder.appendList(roots);
+        return new FlatAst(builder, start, roots.length);
+    }
+
+    /** The {@link #size} of {@code from(statements)}, counted without building it. */
+    public static int size(List<Stmt> statements) {
+        List<Object> pending = new ArrayList<>(statements);
+        int size = 0;
+        while (!pending.isEmpty()) {
+            Object node = pending.removeLast();
+            if (node != null) size++;
+            switch (node) {
+                case null -> {}
+                case Stmt.If stmt -> {
+                    pending.add(stmt.condition);
+                    pending.add(stmt.thenBranch);
+                    pending.add(stmt.elseBranch);
+                }
+                case Stmt.When stmt -> {
+                    pending.add(stmt.condition);
+                    pending.add(stmt.body);
+                }
+                case Stmt.Block stmt -> pending.addAll(stmt.statements);
+                case Stmt.Expression stmt -> pending.add(stmt.expression);
+                case Stmt.Print stmt -> pending.add(stmt.expression);
+                case Stmt.Scan stmt -> size += stmt.names.size();
+                case Stmt.Declare stmt -> {
+                    size += stmt.names.size();
+                    pending.addAll(stmt.initializer);
+                }
+                case Expr.Assign expr -> pending.add(expr.value);
+                case Expr.Binary expr -> {
+                    pending.add(expr.left);
+                    pending.add(expr.right);
+                }
+                case Expr.Grouping expr -> pending.add(expr.expression);
+                case Expr.Logical expr -> {
+                    pending.add(expr.left);
+                    pending.add(expr.right);
+                }
+                case Expr.Unary expr -> pending.add(expr.right);
+                case Expr.Literal expr -> {}
+                case Expr.Variable expr -> {}
+                default -> throw new IllegalArgumentException("Cannot flatten " + node.getClass().getSimpleName());
+            }
+        }
+        return size;
+    }
+
+    /** Rebuilds the linked nodes. Children are stored before their parent, so one pass in index order does it. */
+    public List<Stmt> toStatements() {
+        Object[] nodes = new Object[kind.length];
+        for (int node = 0; node < nodes.length; node++) nodes[node] = rebuild(node, nodes);
+        List<Stmt> statements = new ArrayList<>(rootCount);
+        for (int i = 0; i < rootCount; i++) statements.add((Stmt) child(nodes, list[rootStart + i]));
+        return statements;
+    }
+
+    /** A copy of this program moved {@code lines} lines down (or up, when negative) in its source. */
+    public FlatAst shiftLines(int lines) {
+        long[] shifted = position.clone();
+        for (int node = 0; node < shifted.length; node++) {
+            long at = shifted[node];
+            if (at != Position.NONE) shifted[node] = Position.of(Position.line(at) + lines, Position.column(at));
+        }
+        return new FlatAst(this, shifted);
+    }
+
+    public int size() {
+        return kind.length;
+    }
+
+    public int rootStart() {
+        return rootStart;
+    }
+
+    public int rootCount() {
+        return rootCount;
+    }
+
+    public byte kind(int node) {
+        return kind[node];
+    }
+
+    public int first(int node) {
+        return first[node];
+    }
+
+    public int second(int node) {
+        return second[node];
+    }
+
+    public int third(int node) {
+        return third[node];
+    }
+
+    public TokenType operator(int node) {
+        return TOKEN_TYPES[third[node]];
+    }
+
+    public Object constant(int node) {
+        int index = constant[node];
+        return index < 0 ? null : constants[index];
+    }
+
+    public String name(int node) {
+        return (String) constants[constant[node]];
+    }
+
+    public int list(int index) {
+        return list[index];
+    }
+
+    public long position(int node) {
+        return position[node];
+    }
+
+    public int line(int node) {
+        return Position.line(position[node]);
+    }
+
+    public int column(int node) {
+        return Position.column(position[node]);
+    }
+
+    /** Rebuilds the token of a named or operator node, e.g. for an error message. */
+    public Token token(int node) {
+        return switch (kind[node]) {
+            case BINARY, LOGICAL, UNARY -> Position.operator(operator(node), position[node]);
+            default -> Position.name(name(node), position[node]);
+        };
+    }
+
+    private Object rebuild(int node, Object[] nodes) {
+        return switch (kind[node]) {
+            case IF -> new Stmt.If((Expr) child(nodes, first[node]), (Stmt) child(nodes, second[node]), (Stmt) child(nodes, third[node]));
+            case WHEN -> new Stmt.When((Expr) child(nodes, first[node]), (Stmt) child(nodes, second[node]));
+            case BLOCK -> {
+                List<Stmt> statements = new ArrayList<>(second[node]);
+                for (int i = 0; i < second[node]; i++) statements.add((Stmt) child(nodes, list[first[node] + i]));
+                yield new Stmt.Block(statements);
+            }
+            case EXPRESSION -> new Stmt.Expression((Expr) child(nodes, first[node]));
+            case PRINT -> new Stmt.Print((Expr) child(nodes, first[node]));
+            case SCAN -> {
+                List<Token> names = new ArrayList<>(second[node]);
+                for (int i = 0; i < second[node]; i++) names.add((Token) child(nodes, list[first[node] + i]));
+                yield new Stmt.Scan(names);
+            }
+            case DECLARE -> {
+                List<Token> names = new ArrayList<>(second[node]);
+                List<Expr> initializers = new ArrayList<>(second[node]);
+                for (int i = 0; i < second[node]; i++) {
+                    names.add((Token) nodes[list[first[node] + 2 * i]]);
+                    initializers.add((Expr) child(nodes, list[first[node] + 2 * i + 1]));
+                }
+                yield new Stmt.Declare(names, initializers, TOKEN_TYPES[third[node]]);
+            }
+            case ASSIGN -> new Expr.Assign(name(node), (Expr) child(nodes, first[node]), position[node]);
+            case BINARY -> new Expr.Binary((Expr) child(nodes, first[node]), operator(node), (Expr) child(nodes, second[node]), position[node]);
+            case GROUPING -> new Expr.Grouping((Expr) child(nodes, first[node]));
+            case LITERAL -> new Expr.Literal(constant(node));
+            case LOGICAL -> new Expr.Logical((Expr) child(nodes, first[node]), operator(node), (Expr) child(nodes, second[node]), position[node]);
+            case UNARY -> new Expr.Unary(operator(node), (Expr) child(nodes, first[node]), position[node]);
+            case VARIABLE -> new Expr.Variable(name(node), position[node]);
+            default -> token(node);
+        };
+    }
+
+    private static Object child(Object[] nodes, int node) {
+        return node < 0 ? null : nodes[node];
+    }
+
+    private static final class Builder {
+        private byte[] kind = new byte[64];
+        private int[] first = new int[64];
+        private int[] second = new int[64];
+        private int[] third = new int[64];
+        private int[] constant = new int[64];
+        private long[] position = new long[64];
+        private int size = 0;
+        private int[] list = new int[64];
+        private int listSize = 0;
+        private final List<Object> constants = new ArrayList<>();
+        private final Map<Object, Integer> constantIndex = new HashMap<>();
+        // Nodes still to visit, next one on top, so nesting depth is bounded only by the heap.
+        // A node comes up once to push its children above it and once more, expanded, to be
+        // added from their indices, which by then are on top of the built stack.
+        private Object[] pending = new Object[32];
+        private boolean[] expanded = new boolean[32];
+        private int pendingCount = 0;
+        private int[] built = new int[32];
+        private int builtCount = 0;
+
+        int[] roots(List<Stmt> statements) {
+            pushAll(statements);
+            while (pendingCount > 0) {
+                int top = --pendingCount;
+                Object node = pending[top];
+                pending[top] = null;
+                if (expanded[top]) {
+                    built(add(node));
+                } else {
+                    expand(node);
+                }
+            }
+            int[] roots = new int[statements.size()];
+            for (int i = roots.length - 1; i >= 0; i--) roots[i] = pop();
+            return roots;
+        }
+
+        // Adds a leaf at once; pushes any other node back, expanded, under its children.
+        private void expand(Object node) {
+            switch (node) {
+                case null -> built(-1);
+                case Expr.Literal expr -> built(add(expr));
+                case Expr.Variable expr -> built(add(expr));
+                case Stmt.Scan stmt -> built(add(stmt));
+                case Stmt.If stmt -> {
+                    push(stmt, true);
+                    push(stmt.elseBranch, false);
+                    push(stmt.thenBranch, false);
+                    push(stmt.condition, false);
+                }
+                case Stmt.When stmt -> {
+                    push(stmt, true);
+                    push(stmt.body, false);
+                    push(stmt.condition, false);
+                }
+                case Stmt.Block stmt -> {
+                    push(stmt, true);
+                    pushAll(stmt.statements);
+                }
+                case Stmt.Expression stmt -> {
+                    push(stmt, true);
+                    push(stmt.expression, false);
+                }
+                case Stmt.Print stmt -> {
+                    push(stmt, true);
+                    push(stmt.expression, false);
+                }
+                case Stmt.Declare stmt -> {
+                    push(stmt, true);
+                    pushAll(stmt.initializer);
+                }
+                case Expr.Assign expr -> {
+                    push(expr, true);
+                    push(expr.value, false);
+                }
+                case Expr.Binary expr -> {
+                    push(expr, true);
+                    push(expr.right, false);
+                    push(expr.left, false);
+                }
+                case Expr.Grouping expr -> {
+                    push(expr, true);
+                    push(expr.expression, false);
+                }
+                case Expr.Logical expr -> {
+                    push(expr, true);
+                    push(expr.right, false);
+                    push(expr.left, false);
+                }
+                case Expr.Unary expr -> {
+                    push(expr, true);
+                    push(expr.right, false);
+                }
+                default -> throw new IllegalArgumentException("Cannot flatten " + node.getClass().getSimpleName());
+            }
+        }
+
+        private int add(Object node) {
+            switch (node) {
+                case Stmt.If stmt -> {
+                    int elseBranch = pop(), thenBranch = pop(), condition = pop();
+                    return node(IF, condition, thenBranch, elseBranch, -1, Position.NONE);
+                }
+                case Stmt.When stmt -> {
+                    int body = pop(), condition = pop();
+                    return node(WHEN, condition, body, -1, -1, Position.NONE);
+                }
+                case Stmt.Block stmt -> {
+                    int[] children = new int[stmt.statements.size()];
+                    for (int i = children.length - 1; i >= 0; i--) children[i] = pop();
+                    return node(BLOCK, appendList(children), children.length, -1, -1, Position.NONE);
+                }
+                case Stmt.Expression stmt -> {
+                    return node(EXPRESSION, pop(), -1, -1, -1, Position.NONE);
+                }
+                case Stmt.Print stmt -> {
+                    return node(PRINT, pop(), -1, -1, -1, Position.NONE);
+                }
+                case Stmt.Scan stmt -> {
+                    int[] names = new int[stmt.names.size()];
+                    for (int i = 0; i < names.length; i++) names[i] = name(stmt.names.get(i));
+                    return node(SCAN, appendList(names), names.length, -1, -1, Position.NONE);
+                }
+                case Stmt.Declare stmt -> {
+                    int[] pairs = new int[stmt.names.size() * 2];
+                    for (int i = stmt.names.size() - 1; i >= 0; i--) pairs[2 * i + 1] = pop();
+                    for (int i = 0; i < stmt.names.size(); i++) pairs[2 * i] = name(stmt.names.get(i));
+                    return node(DECLARE, appendList(pairs), stmt.names.size(), stmt.type.ordinal(), -1, Position.NONE);
+                }
+                case Expr.Assign expr -> {
+                    return node(ASSIGN, pop(), -1, -1, constant(expr.name), expr.position);
+                }
+                case Expr.Binary expr -> {
+                    int right = pop(), left = pop();
+                    return node(BINARY, left, right, expr.operator.ordinal(), -1, expr.position);
+                }
+                case Expr.Grouping expr -> {
+                    return node(GROUPING, pop(), -1, -1, -1, Position.NONE);
+                }
+                case Expr.Literal expr -> {
+                    return node(LITERAL, -1, -1, -1, constant(expr.value), Position.NONE);
+                }
+                case Expr.Logical expr -> {
+                    int right = pop(), left = pop();
+                    return node(LOGICAL, left, right, expr.operator.ordinal(), -1, expr.position);
+                }
+                case Expr.Unary expr -> {
+                    return node(UNARY, pop(), -1, expr.operator.ordinal(), -1, expr.position);
+                }
+                case Expr.Variable expr -> {
+                    return node(VARIABLE, -1, -1, -1, constant(expr.name), expr.position);
+                }
+                default -> throw new IllegalArgumentException("Cannot flatten " + node.getClass().getSimpleName());
+            }
+        }
+
+        private void pushAll(List<?> nodes) {
+            for (int i = nodes.size() - 1; i >= 0; i--) push(nodes.get(i), false);
+        }
+
+        private void push(Object node, boolean childrenPushed) {
+            if (pendingCount == pending.length) {
+                pending = Arrays.copyOf(pending, pendingCount * 2);
+                expanded = Arrays.copyOf(expanded, pendingCount * 2);
+            }
+            pending[pendingCount] = node;
+            expanded[pendingCount] = childrenPushed;
+            pendingCount++;
+        }
+
+        private void built(int node) {
+            if (builtCount == built.length) built = Arrays.copyOf(built, builtCount * 2);
+            built[builtCount++] = node;
+        }
+
+        private int pop() {
+            return built[--builtCount];
+        }
+
+        int node(byte type, int a, int b, int c, int constantIndex, long at) {
+            if (size == kind.length) {
+                int capacity = size * 2;
+                kind = Arrays.copyOf(kind, capacity);
+                first = Arrays.copyOf(first, capacity);
+                second = Arrays.copyOf(second, capacity);
+                third = Arrays.copyOf(third, capacity);
+                constant = Arrays.copyOf(constant, capacity);
+                position = Arrays.copyOf(position, capacity);
+            }
+            kind[size] = type;
+            first[size] = a;
+            second[size] = b;
+            third[size] = c;
+            constant[size] = constantIndex;
+            position[size] = at;
+            return size++;
+        }
+
+        int constant(Object value) {
+            if (value == null) return -1;
+            Integer index = constantIndex.get(value);
+            if (index == null) {
+                index = constants.size();
+                constants.add(value);
+                constantIndex.put(value, index);
+            }
+            return index;
+        }
+
+        int appendList(int[] nodes) {
+            if (listSize + nodes.length > list.length) {
+                list = Arrays.copyOf(list, Math.max(list.length * 2, listSize + nodes.length));
+            }
+            System.arraycopy(nodes, 0, list, listSize, nodes.length);
+            int start = listSize;
+            listSize += nodes.length;
+            return start;
+        }
+
+        int name(Token token) {
+            return node(NAME, -1, -1, -1, constant(token.lexeme()), Position.of(token));
+        }
+    }
+}
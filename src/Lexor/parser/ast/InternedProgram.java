@@ -0,0 +1,82 @@
+package Lexor.parser.ast;
+
+import Lexor.err.RuntimeError;
+import Lexor.lexer.Position;
+import Lexor.lexer.Token;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A program whose expressions are shared canonical subtrees (see {@link AstInterner}),
+ * together with the source positions that were stripped from them.
+ */
+public final class InternedProgram {
+    private final List<Stmt> statements;
+    private final Map<Stmt, Positions> positions;
+
+    InternedProgram(List<Stmt> statements, Map<Stmt, Positions> positions) {
+        this.statements = statements;
+        this.positions = positions;
+    }
+
+    public List<Stmt> statements() {
+        return statements;
+    }
+
+    /**
+     * Puts the position back on an error raised by {@code node} while executing
+     * {@code statement}. A canonical node that occurs more than once in the statement gets the
+     * position of its first occurrence, which is the one that fails unless an assignment
+     * between them changed its operands.
+     */
+    public RuntimeError locate(Stmt statement, Expr node, RuntimeError error) {
+        Token token = error.getToken();
+        if (node == null || token == null || token.line() != 0) return error;
+        Positions table = positions.get(statement);
+        if (table == null) return error;
+        for (int i = 0; i < table.nodes.length; i++) {
+            if (table.nodes[i] == node) {
+                long packed = table.packed[i];
+                Token located = new Token(token.type(), token.lexeme(), token.literal(), Position.line(packed), Position.column(packed));
+                return new RuntimeError(located, error.getMessage());
+            }
+        }
+        return error;
+    }
+
+    static final class Positions {
+        private final Expr[] nodes;
+        private final long[] packed;
+
+        private Positions(Expr[] nodes, long[] packed) {
+            this.nodes = nodes;
+            this.packed = packed;
+        }
+
+        static final class Builder {
+            private final List<Expr> nodes = new ArrayList<>();
+            private long[] packed = new long[8];
+
+            // Keeps the first occurrence of a node.
+            void add(Expr node, long position) {
+                for (Expr recorded : nodes) {
+                    if (recorded == node) return;
+                }
+                if (nodes.size() == packed.length) packed = Arrays.copyOf(packed, packed.length * 2);
+                packed[nodes.size()] = position;
+                nodes.add(node);
+            }
+
+            boolean isEmpty() {
+                return nodes.isEmpty();
+            }
+
+            Positions build() {
+                return new Positions(nodes.toArray(new Expr[0]), Arrays.copyOf(packed, nodes.size()));
+            }
+        }
+    }
+}
@@ -4,7 +4,8 @@ import Lexor.lexer.TokenType;
 import java.util.List;
 import Lexor.lexer.Token;
 
-public abstract class Stmt {
+public sealed abstract class Stmt
+        permits Stmt.If, Stmt.When, Stmt.Block, Stmt.Expression, Stmt.Print, Stmt.Scan, Stmt.Declare {
     public interface Visitor<R> {
         R visitIfStmt(If stmt);
         R visitWhenStmt(When stmt);
@@ -14,7 +15,7 @@ public abstract class Stmt {
         R visitScanStmt(Scan stmt);
         R visitDeclareStmt(Declare stmt);
     }
-    public static class If extends Stmt {
+    public static final class If extends Stmt {
         public final Expr condition;
         public final Stmt thenBranch;
         public final Stmt elseBranch;
@@ -30,7 +31,7 @@ public abstract class Stmt {
             visitor.visitIfStmt(this);
         }
     }
-    public static class When extends Stmt {
+    public static final class When extends Stmt {
         public final Expr condition;
         public final Stmt body;
 
@@ -44,7 +45,7 @@ public abstract class Stmt {
             visitor.visitWhenStmt(this);
         }
     }
-    public static class Block extends Stmt {
+    public static final class Block extends Stmt {
         public final List<Stmt> statements;
 
         public Block(List<Stmt> statements) {
@@ -56,7 +57,7 @@ public abstract class Stmt {
             visitor.visitBlockStmt(this);
         }
     }
-    public static class Expression extends Stmt {
+    public static final class Expression extends Stmt {
         public final Expr expression;
 
         public Expression(Expr expression) {
@@ -68,7 +69,7 @@ public abstract class Stmt {
             visitor.visitExpressionStmt(this);
         }
     }
-    public static class Print extends Stmt {
+    public static final class Print extends Stmt {
         public final Expr expression;
 
         public Print(Expr expression) {
@@ -80,7 +81,7 @@ public abstract class Stmt {
             visitor.visitPrintStmt(this);
         }
     }
-    public static class Scan extends Stmt {
+    public static final class Scan extends Stmt {
         public final List<Token> names;
 
         public Scan(List<Token> names) {
@@ -92,7 +93,7 @@ public abstract class Stmt {
             visitor.visitScanStmt(this);
         }
     }
-    public static class Declare extends Stmt {
+    public static final class Declare extends Stmt {
         public final List<Token> names;
         public final List<Expr> initializer;
         public final TokenType type;
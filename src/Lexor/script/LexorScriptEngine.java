@@ -0,0 +1,205 @@
+package Lexor.script;
+
+import Lexor.LexorEngine;
+import Lexor.err.Error;
+import Lexor.io.WriterSink;
+
+import javax.script.AbstractScriptEngine;
+import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineFactory;
+import javax.script.ScriptException;
+import javax.script.SimpleBindings;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * LEXOR through {@code javax.script}. {@link #compile} parses a script once into a
+ * {@link CompiledScript} that can be evaluated any number of times, from any thread. Bindings
+ * are the script's top-level variables: a DECLAREd variable whose name is bound starts with the
+ * bound value, converted to its type ({@code Long} to INT when it fits, any number to FLOAT, a
+ * one-character string to CHAR), and after the script every top-level variable is bound in the
+ * engine scope to its last value as an {@code Integer}, {@code Double}, {@code Character},
+ * {@code Boolean} or {@code String}. SCAN reads from the context's reader and PRINT writes to
+ * its writer. Errors are thrown as {@link ScriptException}s; evaluation returns null.
+ * Evaluations may run at once, even in one context: bindings are read and written back while
+ * holding their lock, so hosts that touch them during a run should lock them too.
+ */
+public class LexorScriptEngine extends AbstractScriptEngine implements Compilable {
+    private final ScriptEngineFactory factory;
+    private final LexorEngine engine;
+
+    public LexorScriptEngine() {
+        this(new LexorScriptEngineFactory(), new LexorEngine());
+    }
+
+    /** Runs scripts on {@code engine}, e.g. one made with {@link Lexor.interpreter.Limits}. */
+    public LexorScriptEngine(LexorEngine engine) {
+        this(new LexorScriptEngineFactory(), engine);
+    }
+
+    LexorScriptEngine(ScriptEngineFactory factory) {
+        this(factory, new LexorEngine());
+    }
+
+    private LexorScriptEngine(ScriptEngineFactory factory, LexorEngine engine) {
+        this.factory = factory;
+        this.engine = engine;
+    }
+
+    @Override
+    public CompiledScript compile(String script) throws ScriptException {
+        LexorEngine.Program program = engine.prepare(script);
+        if (program.hadError()) throw exception(program.errors());
+        return new Compiled(program);
+    }
+
+    @Override
+    public CompiledScript compile(Reader script) throws ScriptException {
+        return compile(read(script));
+    }
+
+    @Override
+    public Object eval(String script, ScriptContext context) throws ScriptException {
+        return compile(script).eval(context);
+    }
+
+    @Override
+    public Object eval(Reader reader, ScriptContext context) throws ScriptException {
+        return eval(read(reader), context);
+    }
+
+    @Override
+    public Bindings createBindings() {
+        return new SimpleBindings();
+    }
+
+    @Override
+    public ScriptEngineFactory getFactory() {
+        return factory;
+    }
+
+    private final class Compiled extends CompiledScript {
+        private final LexorEngine.Program program;
+
+        Compiled(LexorEngine.Program program) {
+            this.program = program;
+        }
+
+        @Override
+        public Object eval(ScriptContext context) throws ScriptException {
+            Map<String, Object> bindings = new HashMap<>();
+            Bindings global = context.getBindings(ScriptContext.GLOBAL_SCOPE);
+            if (global != null) {
+                synchronized (global) {
+                    bindings.putAll(global);
+                }
+            }
+            Bindings local = context.getBindings(ScriptContext.ENGINE_SCOPE);
+            synchronized (local) {
+                bindings.putAll(local);
+            }
+            // Collected apart and written back under the lock: evaluations may share one context.
+            Map<String, Object> globals = new HashMap<>();
+            WriterSink output = new WriterSink(context.getWriter() == null ? Writer.nullWriter() : context.getWriter());
+            InputStream input = context.getReader() == null ? InputStream.nullInputStream() : new ReaderStream(context.getReader());
+            LexorEngine.Result result;
+            try {
+                result = engine.run(program, input, output, bindings, globals);
+            } catch (RuntimeException e) {
+                throw (ScriptException) new ScriptException(e.toString()).initCause(e);
+            } finally {
+                synchronized (local) {
+                    local.putAll(globals);
+                }
+            }
+            if (result.exitCode() != 0) throw exception(result.errors());
+            return null;
+        }
+
+        @Override
+        public ScriptEngine getEngine() {
+            return LexorScriptEngine.this;
+        }
+    }
+
+    private static ScriptException exception(List<Error> errors) {
+        Error first = errors.getFirst();
+        StringBuilder message = new StringBuilder();
+        for (Error error : errors) {
+            if (!message.isEmpty()) message.append('\n');
+            message.append(error.errorType()).append(" ERROR: ").append(error.message());
+        }
+        // Line 0 is an error with no place in the source, such as a limit.
+        return first.line() > 0
+                ? new ScriptException(message.toString(), null, first.line(), first.column())
+                : new ScriptException(message.toString());
+    }
+
+    private static String read(Reader reader) throws ScriptException {
+        StringBuilder text = new StringBuilder();
+        char[] chunk = new char[8192];
+        try {
+            for (int n; (n = reader.read(chunk)) >= 0; ) text.append(chunk, 0, n);
+        } catch (IOException e) {
+            throw (ScriptException) new ScriptException(e.toString()).initCause(e);
+        }
+        return text.toString();
+    }
+
+    // SCAN input is bytes; encodes the context's reader as UTF-8 as far as SCAN reads it.
+    private static final class ReaderStream extends InputStream {
+        private final Reader reader;
+        private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        private final CharBuffer chars = CharBuffer.allocate(1024).flip();
+        private final ByteBuffer bytes = ByteBuffer.allocate(4096).flip();
+        private boolean ended = false;
+
+        ReaderStream(Reader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] target, int offset, int length) throws IOException {
+            if (length == 0) return 0;
+            while (!bytes.hasRemaining()) {
+                if (ended && !chars.hasRemaining()) return -1;
+                fill();
+            }
+            int n = Math.min(length, bytes.remaining());
+            bytes.get(target, offset, n);
+            return n;
+        }
+
+        private void fill() throws IOException {
+            chars.compact();
+            int n = ended ? -1 : reader.read(chars);
+            chars.flip();
+            if (n < 0) ended = true;
+            bytes.clear();
+            encoder.encode(chars, bytes, ended);
+            bytes.flip();
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package Lexor.script;
+
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineFactory;
+import java.util.List;
+
+/** Lets {@code new ScriptEngineManager().getEngineByName("lexor")} find {@link LexorScriptEngine}. */
+public class LexorScriptEngineFactory implements ScriptEngineFactory {
+    static final String VERSION = "1.0";
+
+    @Override
+    public String getEngineName() {
+        return "LEXOR Interpreter";
+    }
+
+    @Override
+    public String getEngineVersion() {
+        return VERSION;
+    }
+
+    @Override
+    public List<String> getExtensions() {
+        return List.of("lxr");
+    }
+
+    @Override
+    public List<String> getMimeTypes() {
+        return List.of("text/x-lexor");
+    }
+
+    @Override
+    public List<String> getNames() {
+        return List.of("lexor", "LEXOR");
+    }
+
+    @Override
+    public String getLanguageName() {
+        return "LEXOR";
+    }
+
+    @Override
+    public String getLanguageVersion() {
+        return VERSION;
+    }
+
+    @Override
+    public Object getParameter(String key) {
+        return switch (key) {
+            case ScriptEngine.ENGINE -> getEngineName();
+            case ScriptEngine.ENGINE_VERSION -> getEngineVersion();
+            case ScriptEngine.NAME -> getNames().getFirst();
+            case ScriptEngine.LANGUAGE -> getLanguageName();
+            case ScriptEngine.LANGUAGE_VERSION -> getLanguageVersion();
+            // Compiled scripts are shared freely; every evaluation has its own variables.
+            case "THREADING" -> "MULTITHREADED";
+            default -> null;
+        };
+    }
+
+    /** Null: LEXOR has no objects or methods, so there is no call to spell. */
+    @Override
+    public String getMethodCallSyntax(String object, String method, String... arguments) {
+        return null;
+    }
+
+    // Quotes, brackets and line breaks go between the string literals as [x] escapes and $.
+    @Override
+    public String getOutputStatement(String toDisplay) {
+        StringBuilder statement = new StringBuilder("PRINT: ");
+        boolean quoted = false;
+        for (int i = 0; i < toDisplay.length(); i++) {
+            char c = toDisplay.charAt(i);
+            boolean plain = c != '"' && c != '[' && c != ']' && c != '\n' && c != '\t';
+            if (plain != quoted) {
+                if (quoted || i > 0) statement.append(quoted ? "\" & " : " & ");
+                if (plain) statement.append('"');
+                quoted = plain;
+            } else if (!plain) {
+                statement.append(" & ");
+            }
+            switch (c) {
+                case '\n' -> statement.append('$');
+                case '\t' -> statement.append("[t]");
+                case '"', '[', ']' -> statement.append('[').append(c).append(']');
+                default -> statement.append(c);
+            }
+        }
+        if (quoted) statement.append('"');
+        return toDisplay.isEmpty() ? "PRINT: \"\"" : statement.toString();
+    }
+
+    @Override
+    public String getProgram(String... statements) {
+        StringBuilder program = new StringBuilder("SCRIPT AREA\nSTART SCRIPT\n");
+        for (String statement : statements) program.append(statement).append('\n');
+        return program.append("END SCRIPT\n").toString();
+    }
+
+    @Override
+    public ScriptEngine getScriptEngine() {
+        return new LexorScriptEngine(this);
+    }
+}
@@ -0,0 +1,95 @@
+package Lexor.util;
+
+import Lexor.err.ErrorManager;
+import Lexor.interpreter.Interpreter;
+import Lexor.lexer.Lexer;
+import Lexor.parser.Parser;
+import Lexor.parser.ast.Stmt;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.List;
+
+/**
+ * Times the tree interpreter on loop-heavy scripts with visitor dispatch and with
+ * pattern-matching switch dispatch. Each script is parsed once; the warm-up rounds let the
+ * JIT settle before the measured rounds are averaged.
+ */
+public class DispatchBenchmark {
+    private static final int WARMUP = 10;
+    private static final int ROUNDS = 20;
+
+    private static final String COUNTING_LOOP = """
+            SCRIPT AREA
+            START SCRIPT
+            DECLARE INT i = 0, sum = 0
+            REPEAT WHEN (i < 200000)
+            START REPEAT
+                sum = sum + i % 7 * 3 - (i / 5)
+                i = i + 1
+            END REPEAT
+            PRINT: sum
+            END SCRIPT
+            """;
+
+    private static final String NESTED_LOOPS = """
+            SCRIPT AREA
+            START SCRIPT
+            DECLARE INT i = 0, j = 0, hits = 0
+            REPEAT WHEN (i < 400)
+            START REPEAT
+                j = 0
+                REPEAT WHEN (j < 400)
+                START REPEAT
+                    IF ((i + j) % 3 == 0 AND NOT (j > i))
+                    START IF
+                        hits = hits + 1
+                    END IF
+                    j = j + 1
+                END REPEAT
+                i = i + 1
+            END REPEAT
+            PRINT: hits
+            END SCRIPT
+            """;
+
+    static void main(String[] args) {
+        run("counting loop", COUNTING_LOOP);
+        run("nested loops", NESTED_LOOPS);
+    }
+
+    private static void run(String name, String source) {
+        ErrorManager errorManager = new ErrorManager();
+        List<Stmt> statements = new Parser(new Lexer(source, errorManager).scanTokens(), errorManager).parse();
+        if (errorManager.hadError()) throw new IllegalStateException(name + " does not parse.");
+
+        Interpreter.Dispatch[] styles = Interpreter.Dispatch.values();
+        long[] nanos = new long[styles.length];
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            for (int i = 0; i < WARMUP; i++) {
+                for (Interpreter.Dispatch dispatch : styles) execute(statements, dispatch);
+            }
+            // Rounds alternate between the styles so neither one profits from running last.
+            for (int i = 0; i < ROUNDS; i++) {
+                for (int s = 0; s < styles.length; s++) {
+                    long start = System.nanoTime();
+                    execute(statements, styles[s]);
+                    nanos[s] += System.nanoTime() - start;
+                }
+            }
+        } finally {
+            System.setOut(out);
+        }
+        for (int s = 0; s < styles.length; s++) {
+            System.out.printf("%-14s %-8s %8.2f ms/run%n", name, styles[s], nanos[s] / 1e6 / ROUNDS);
+        }
+    }
+
+    private static void execute(List<Stmt> statements, Interpreter.Dispatch dispatch) {
+        ErrorManager errorManager = new ErrorManager();
+        new Interpreter(errorManager, dispatch).interpret(statements);
+        if (errorManager.hadError()) throw new IllegalStateException("Benchmark script failed.");
+    }
+}
@@ -13,17 +13,18 @@ public class GenerateAst {
             System.exit(64);
         }
         String outputDir = args[0];
-        defineAst(outputDir, "Expr", Arrays.asList(
-                "Assign:Token name, Expr value",
-                "Binary:Expr left, Token operator, Expr right",
+        defineAst(outputDir, "Expr", true, Arrays.asList(
+                "Assign:String name, Expr value, long position",
+                "Binary:Expr left, TokenType operator, Expr right, long position",
                 "Grouping:Expr expression",
                 "Literal:Object value",
-                "Logical:Expr left, Token operator, Expr right",
+                "Logical:Expr left, TokenType operator, Expr right, long position",
 //                "Ternary:Expr condition, Expr thenBranch, Expr elseBranch",
-                "Unary:Token operator, Expr right",
-                "Variable:Token name"
+                "Unary:TokenType operator, Expr right, long position",
+                "Variable:String name, long position"
         ));
-        defineAst(outputDir, "Stmt", Arrays.asList(
+        // Statements are run for their effect only: their visitors return nothing.
+        defineAst(outputDir, "Stmt", false, Arrays.asList(
                 "If: Expr condition, Stmt thenBranch, Stmt elseBranch",
                 "When: Expr condition, Stmt body",
                 "Block: List<Stmt> statements",
@@ -34,30 +35,43 @@ public class GenerateAst {
         ));
     }
 
-    private static void defineAst(String outputDir, String baseName, List<String> types) throws IOException{
+    private static void defineAst(String outputDir, String baseName, boolean returnsValue, List<String> types) throws IOException{
         String path = outputDir + "/" + baseName + ".java";
         try (PrintWriter writer = new PrintWriter(path, StandardCharsets.UTF_8)) {
             writer.println("package Lexor.parser.ast;");
             writer.println("import Lexor.lexer.TokenType;");
-            writer.println("import java.util.List;");
-            writer.println("import Lexor.lexer.Token;");
-//            writer.println("import Lexor.parser.Expr;");
             writer.println();
-            writer.println("public abstract class " + baseName + " {");
+            if (types.stream().anyMatch(type -> type.contains("List<"))) {
+                writer.println("import java.util.List;");
+                writer.println("import Lexor.lexer.Token;");
+                writer.println();
+            }
+//            writer.println("import Lexor.parser.Expr;");
+            writer.println("public sealed abstract class " + baseName);
+            writer.println("        permits " + permits(baseName, types) + " {");
 
             defineVisitor(writer, baseName, types);
 
             for(String type : types){
                 String className = type.split(":")[0].trim();
                 String fields = type.split(":")[1].trim();
-                defineType(writer, baseName, className, fields);
+                defineType(writer, baseName, className, fields, returnsValue);
             }
 
-            writer.println("    public abstract <R> R accept(Visitor<R> visitor);");
+            writer.println("    public abstract <R> " + (returnsValue ? "R" : "void") + " accept(Visitor<R> visitor);");
             writer.println("}");
         }
     }
 
+    private static String permits(String baseName, List<String> types) {
+        StringBuilder permits = new StringBuilder();
+        for(String type : types){
+            if (!permits.isEmpty()) permits.append(", ");
+            permits.append(baseName).append('.').append(type.split(":")[0].trim());
+        }
+        return permits.toString();
+    }
+
     private static void defineVisitor(PrintWriter writer, String baseName, List<String> types) {
         writer.println("    public interface Visitor<R> {");
 
@@ -69,8 +83,9 @@ public class GenerateAst {
         writer.println("    }");
     }
 
-    private static void defineType(PrintWriter writer, String baseName, String className, String fieldList){
-        writer.println("    public static class " + className + " extends " + baseName + " {");
+    private static void defineType(PrintWriter writer, String baseName, String className, String fieldList,
+                                   boolean returnsValue){
+        writer.println("    public static final class " + className + " extends " + baseName + " {");
         String[] fields = fieldList.split(",");
         for (String field : fields) {
             field = field.trim();
@@ -88,8 +103,13 @@ public class GenerateAst {
 
         writer.println();
         writer.println("        @Override");
-        writer.println("        public <R> R accept(Visitor<R> visitor) {");
-        writer.println("        return visitor.visit" + className + baseName + "(this);");
+        if (returnsValue) {
+            writer.println("        public <R> R accept(Visitor<R> visitor) {");
+            writer.println("        return visitor.visit" + className + baseName + "(this);");
+        } else {
+            writer.println("        public <R> void accept(Visitor<R> visitor) {");
+            writer.println("            visitor.visit" + className + baseName + "(this);");
+        }
         writer.println("        }");
 
         writer.println("    }");
@@ -0,0 +1,73 @@
+package Lexor.util;
+
+import Lexor.LexorEngine;
+import Lexor.ScriptScheduler;
+import Lexor.io.MemorySink;
+
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Measures how long short scripts take to finish while heavy loops occupy every worker, with
+ * time slicing and with slices so long that every run keeps its worker until it is done.
+ */
+public class SchedulerBenchmark {
+    private static final int HEAVY = 8;
+    private static final int SHORT = 400;
+
+    private static final String HEAVY_LOOP = """
+            SCRIPT AREA
+            START SCRIPT
+            DECLARE INT i = 0, sum = 0
+            REPEAT WHEN (i < 3000000)
+            START REPEAT
+                sum = sum + i % 7
+                i = i + 1
+            END REPEAT
+            PRINT: sum
+            END SCRIPT
+            """;
+
+    private static final String SHORT_SCRIPT = """
+            SCRIPT AREA
+            START SCRIPT
+            DECLARE INT x = 6
+            PRINT: x * 7
+            END SCRIPT
+            """;
+
+    static void main(String[] args) throws Exception {
+        int workers = Runtime.getRuntime().availableProcessors();
+        run("warm-up", workers, Duration.ofMillis(2));
+        run("sliced 2 ms", workers, Duration.ofMillis(2));
+        run("unsliced", workers, Duration.ofDays(1));
+    }
+
+    private static void run(String name, int workers, Duration slice) throws Exception {
+        LexorEngine engine = new LexorEngine();
+        long[] latencies = new long[SHORT];
+        try (ScriptScheduler scheduler = new ScriptScheduler(engine, workers, slice)) {
+            List<CompletableFuture<?>> heavy = new ArrayList<>();
+            for (int i = 0; i < HEAVY; i++) {
+                heavy.add(scheduler.submit(HEAVY_LOOP, InputStream.nullInputStream(), new MemorySink()));
+            }
+            Thread.sleep(20);
+            List<CompletableFuture<?>> shorts = new ArrayList<>();
+            for (int i = 0; i < SHORT; i++) {
+                int index = i;
+                long submitted = System.nanoTime();
+                shorts.add(scheduler.submit(SHORT_SCRIPT, InputStream.nullInputStream(), new MemorySink())
+                        .thenRun(() -> latencies[index] = System.nanoTime() - submitted));
+            }
+            CompletableFuture.allOf(shorts.toArray(CompletableFuture[]::new)).join();
+            CompletableFuture.allOf(heavy.toArray(CompletableFuture[]::new)).join();
+        }
+        Arrays.sort(latencies);
+        System.out.printf("%-12s p50 %8.2f ms   p99 %8.2f ms%n", name,
+                latencies[SHORT / 2] / 1e6, latencies[SHORT * 99 / 100] / 1e6);
+    }
+}
@@ -0,0 +1,69 @@
+package Lexor.util;
+
+import Lexor.Coordinator;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Measures how long {@code lexor hello.lxr} takes in a fresh JVM, to its first byte of output and
+ * to its exit, without and with a start-up archive trained by {@code lexor --train}. It has to
+ * be run from a jar, with the same JVM options as the runs it measures.
+ */
+public class StartupBenchmark {
+    private static final int RUNS = 20;
+
+    private static final String HELLO = """
+            SCRIPT AREA
+            START SCRIPT
+            DECLARE STRING greeting = "Hello, World!"
+            PRINT: greeting
+            END SCRIPT
+            """;
+
+    static void main(String[] args) throws Exception {
+        Path directory = Files.createTempDirectory("lexor-startup");
+        Path script = Files.writeString(directory.resolve("hello.lxr"), HELLO);
+        Path archive = directory.resolve(Runtime.version().feature() >= 25 ? "lexor.aot" : "lexor.jsa");
+
+        List<String> train = new ArrayList<>(Coordinator.localWorkerCommand());
+        train.addAll(List.of("--train", archive.toString()));
+        if (new ProcessBuilder(train).inheritIO().start().waitFor() != 0) {
+            System.err.println("Training failed.");
+            return;
+        }
+        String option = (archive.toString().endsWith(".aot") ? "-XX:AOTCache=" : "-XX:SharedArchiveFile=") + archive;
+
+        measure("warm-up", null, script);
+        measure("no archive", null, script);
+        measure("archive", option, script);
+    }
+
+    private static void measure(String name, String archiveOption, Path script) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>(Coordinator.localWorkerCommand());
+        if (archiveOption != null) command.add(1, archiveOption);
+        command.add(script.toString());
+        long[] firstByte = new long[RUNS];
+        long[] exit = new long[RUNS];
+        for (int i = 0; i < RUNS; i++) {
+            long start = System.nanoTime();
+            Process process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+            try (InputStream output = process.getInputStream()) {
+                output.read();
+                firstByte[i] = System.nanoTime() - start;
+                output.transferTo(OutputStream.nullOutputStream());
+            }
+            process.waitFor();
+            exit[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(firstByte);
+        Arrays.sort(exit);
+        System.out.printf("%-12s first byte %7.1f ms   exit %7.1f ms%n", name, firstByte[RUNS / 2] / 1e6, exit[RUNS / 2] / 1e6);
+    }
+}